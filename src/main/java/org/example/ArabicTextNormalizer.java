@@ -0,0 +1,71 @@
+package org.example;
+
+/**
+ * Normalizes Arabic (and mixed Arabic/Latin) text so that spelling variants of the
+ * same question map to the same key.
+ *
+ * In one pass it collapses whitespace, drops tatweel and diacritics, unifies the
+ * alef, yaa, taa marbuta, waw-hamza and yaa-hamza variants, and lowercases Latin letters.
+ */
+public final class ArabicTextNormalizer {
+
+    private static final char TATWEEL = 'ـ';
+
+    private ArabicTextNormalizer() {
+    }
+
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+                continue;
+            }
+            if (c == TATWEEL || isDiacritic(c)) {
+                continue;
+            }
+
+            if (pendingSpace) {
+                normalized.append(' ');
+                pendingSpace = false;
+            }
+            normalized.append(normalizeLetter(c));
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Harakat, tanween, shadda, sukun and the superscript alef
+     */
+    private static boolean isDiacritic(char c) {
+        return (c >= 'ً' && c <= 'ْ') || c == 'ٰ';
+    }
+
+    private static char normalizeLetter(char c) {
+        switch (c) {
+            case 'أ':
+            case 'إ':
+            case 'آ':
+            case 'ٱ':
+                return 'ا';
+            case 'ى':
+                return 'ي';
+            case 'ة':
+                return 'ه';
+            case 'ؤ':
+                return 'و';
+            case 'ئ':
+                return 'ي';
+            default:
+                return Character.toLowerCase(c);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits Arabic (and mixed Arabic/Latin) text into index terms.
+ *
+ * Text goes through {@link ArabicTextNormalizer} first. Tokens are runs of letters and
+ * digits, keeping inner '-', '_' and '.' so codes such as "X-200" or "v2.1" stay whole.
+ * Arabic-Indic digits become ASCII, the definite article and its attached particles are
+ * stripped, and common stopwords are dropped.
+ */
+public final class ArabicTokenizer {
+
+    private static final Set<String> STOPWORDS = Set.of(
+            "في", "من", "علي", "الي", "عن", "مع", "هذا", "هذه", "ذلك", "تلك", "التي", "الذي",
+            "هو", "هي", "ان", "او", "ما", "ماذا", "كيف", "هل", "لا", "لم", "لن", "كان", "كل",
+            "بين", "ثم", "قد", "عند", "حتي", "بعد", "قبل", "اي", "و",
+            "the", "a", "an", "of", "to", "in", "and", "or", "is", "are", "for", "on", "with", "what", "how");
+
+    // Longest first, so "وال" wins over "ال"
+    private static final String[] ARTICLE_PREFIXES = {"وال", "بال", "كال", "فال", "لل", "ال"};
+
+    private ArabicTokenizer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        String normalized = ArabicTextNormalizer.normalize(text);
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+
+        for (int i = 0; i <= normalized.length(); i++) {
+            char c = i < normalized.length() ? normalized.charAt(i) : ' ';
+
+            if (Character.isLetter(c)) {
+                token.append(c);
+            } else if (Character.isDigit(c)) {
+                token.append((char) ('0' + Character.digit(c, 10)));
+            } else if ((c == '-' || c == '_' || c == '.') && token.length() > 0
+                    && i + 1 < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i + 1))) {
+                token.append(c);
+            } else if (token.length() > 0) {
+                addToken(tokens, token.toString());
+                token.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    private static void addToken(List<String> tokens, String token) {
+        if (STOPWORDS.contains(token)) {
+            return;
+        }
+        for (String prefix : ARTICLE_PREFIXES) {
+            if (token.startsWith(prefix) && token.length() - prefix.length() >= 2) {
+                token = token.substring(prefix.length());
+                break;
+            }
+        }
+        if (token.length() > 1 || Character.isDigit(token.charAt(0))) {
+            tokens.add(token);
+        }
+    }
+}
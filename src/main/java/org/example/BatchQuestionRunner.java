@@ -0,0 +1,470 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Answers a file of questions offline, e.g. an evaluation set, and writes one JSON line
+ * per answer.
+ *
+ * Retrieval and generation run as two stages with their own workers, joined by a short
+ * queue: retrieval workers stay a few questions ahead so a generation worker never waits
+ * on Milvus or the embedder, and concurrent query embeddings are coalesced by the
+ * retriever's batcher. The generation workers keep that many requests open at Ollama, so
+ * the job is bound by Ollama's throughput; set them to OLLAMA_NUM_PARALLEL.
+ *
+ * Questions are read one per line; a line may also be a JSON object {"id": ..., "question": ...}.
+ * Without an id, the line number is the id. Each result line holds the {@link RAGSystem.RAGResponse}
+ * fields, the id and the time spent in each stage, and is flushed as soon as it is written,
+ * in the order answers finish. Running again with the same output file resumes the job:
+ * questions with a complete answer in it are skipped and failed ones are asked again, so
+ * the last line for an id is its result. The answer caches are not used, so every
+ * question is really answered.
+ *
+ * Usage: BatchQuestionRunner questions.txt [--output results.jsonl] [--retrieval-workers 4]
+ *        [--generation-workers 2] [--local] [--compress]
+ */
+public class BatchQuestionRunner {
+
+    public static final int DEFAULT_RETRIEVAL_WORKERS = 4;
+    public static final int DEFAULT_GENERATION_WORKERS = Generator.DEFAULT_MAX_CONCURRENT;
+    public static final Path DEFAULT_OUTPUT = Paths.get("data", "batch-results.jsonl");
+
+    // Retrieved questions waiting for generation, per generation worker
+    private static final int HANDOFF_PER_WORKER = 2;
+    private static final int PROGRESS_EVERY = 25;
+    // How often a blocked stage checks whether the other one has died
+    private static final long HANDOFF_POLL_MILLIS = 500;
+    private static final String NO_INFORMATION = "لا توجد معلومات كافية في السياق للإجابة على هذا السؤال";
+
+    /**
+     * A question and its id from the questions file
+     */
+    public record Question(String id, String question) {
+    }
+
+    /**
+     * What a run did; skipped questions had a complete answer from an earlier run
+     */
+    public record Summary(int total, int skipped, int answered, int failed, long millis) {
+
+        public double questionsPerSecond() {
+            return millis == 0 ? 0 : (answered + failed) * 1000.0 / millis;
+        }
+    }
+
+    // error is null unless retrieval failed
+    private record Retrieved(Question question, List<String> docs, List<String> context, String error,
+                             long retrievalMillis, long retrievedAt) {
+    }
+
+    // Tells a generation worker that retrieval is finished
+    private static final Retrieved END = new Retrieved(null, null, null, null, 0, 0);
+
+    private final Function<String, Retriever.Retrieval> retrieve;
+    private final Function<Retriever.Retrieval, List<String>> contextOf;
+    private final BiFunction<String, List<String>, Generator.StreamedAnswer> generate;
+    private final int retrievalWorkers;
+    private final int generationWorkers;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public BatchQuestionRunner(Retriever retriever, Generator generator) {
+        this(retriever, generator, null, DEFAULT_RETRIEVAL_WORKERS, DEFAULT_GENERATION_WORKERS);
+    }
+
+    /**
+     * @param compressor shortens each retrieved context before generation, or null
+     * @param generationWorkers questions generated at once; the generator's limiter must
+     *                          admit that many, or the extra ones fail as busy
+     */
+    public BatchQuestionRunner(Retriever retriever, Generator generator, ContextCompressor compressor,
+                               int retrievalWorkers, int generationWorkers) {
+        this(retriever::retrieveHybrid, retrieval -> compressor == null
+                        ? retrieval.texts()
+                        : compress(retriever, compressor, retrieval),
+                (question, context) -> generator.streamWithContext(question, context, token -> { }),
+                retrievalWorkers, generationWorkers);
+    }
+
+    BatchQuestionRunner(Function<String, Retriever.Retrieval> retrieve,
+                        Function<Retriever.Retrieval, List<String>> contextOf,
+                        BiFunction<String, List<String>, Generator.StreamedAnswer> generate,
+                        int retrievalWorkers, int generationWorkers) {
+        if (retrievalWorkers < 1 || generationWorkers < 1) {
+            throw new IllegalArgumentException("Each stage needs at least one worker");
+        }
+        this.retrieve = retrieve;
+        this.contextOf = contextOf;
+        this.generate = generate;
+        this.retrievalWorkers = retrievalWorkers;
+        this.generationWorkers = generationWorkers;
+    }
+
+    /**
+     * Answer the questions not yet answered completely in the output file, appending to it
+     * @throws IOException if the output could not be written; the run stops at the first
+     *                     such error and the answers written so far are kept
+     */
+    public Summary run(Path questionsFile, Path outputFile) throws IOException {
+        long start = System.currentTimeMillis();
+        List<Question> questions = readQuestions(questionsFile);
+        Set<String> done = completedIds(outputFile);
+        List<Question> pending = questions.stream().filter(q -> !done.contains(q.id())).toList();
+        int skipped = questions.size() - pending.size();
+
+        System.out.printf("📝 %d questions, %d already answered, %d to go with %d retrieval and %d generation workers%n",
+                questions.size(), skipped, pending.size(), retrievalWorkers, generationWorkers);
+        if (pending.isEmpty()) {
+            return new Summary(questions.size(), skipped, 0, 0, 0);
+        }
+
+        if (outputFile.getParent() != null) {
+            Files.createDirectories(outputFile.getParent());
+        }
+        BlockingQueue<Retrieved> handoff = new ArrayBlockingQueue<>(generationWorkers * HANDOFF_PER_WORKER);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger answered = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+        AtomicLong retrievalMillis = new AtomicLong();
+        AtomicLong waitMillis = new AtomicLong();
+        AtomicLong generationMillis = new AtomicLong();
+        // First error that stopped a worker; the other workers stop when it is set
+        AtomicReference<Exception> stopped = new AtomicReference<>();
+
+        try (BufferedWriter out = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+
+            List<Thread> retrievers = new ArrayList<>();
+            for (int i = 0; i < retrievalWorkers; i++) {
+                retrievers.add(startWorker("batch-retrieval-" + i, stopped, () -> {
+                    int index;
+                    while (stopped.get() == null && (index = next.getAndIncrement()) < pending.size()) {
+                        Retrieved retrieved = retrieve(pending.get(index));
+                        retrievalMillis.addAndGet(retrieved.retrievalMillis());
+                        put(handoff, retrieved, stopped); // Waits while generation is behind
+                    }
+                }));
+            }
+
+            List<Thread> generators = new ArrayList<>();
+            for (int i = 0; i < generationWorkers; i++) {
+                generators.add(startWorker("batch-generation-" + i, stopped, () -> {
+                    Retrieved retrieved;
+                    while ((retrieved = take(handoff, stopped)) != END) {
+                        long generationStart = System.currentTimeMillis();
+                        RAGSystem.RAGResponse response = generate(retrieved);
+                        long generationTime = System.currentTimeMillis() - generationStart;
+                        long waitTime = generationStart - retrieved.retrievedAt();
+                        waitMillis.addAndGet(waitTime);
+                        generationMillis.addAndGet(generationTime);
+
+                        ObjectNode line = objectMapper.createObjectNode().put("id", retrieved.question().id());
+                        line.setAll(response.toJson(objectMapper));
+                        line.put("retrievalMillis", retrieved.retrievalMillis())
+                                .put("waitMillis", waitTime)
+                                .put("generationMillis", generationTime);
+                        write(out, line);
+
+                        (response.isComplete() ? answered : failed).incrementAndGet();
+                        int finished = written.incrementAndGet();
+                        if (finished % PROGRESS_EVERY == 0 || finished == pending.size()) {
+                            printProgress(finished, pending.size(), failed.get(), System.currentTimeMillis() - start);
+                        }
+                    }
+                }));
+            }
+
+            join(retrievers);
+            for (int i = 0; i < generationWorkers; i++) {
+                put(handoff, END, stopped);
+            }
+            join(generators);
+
+            if (stopped.get() != null) {
+                System.err.printf("❌ Batch stopped after %d answers, run again to resume: %s%n",
+                        written.get(), stopped.get().getMessage());
+                throw stopped.get() instanceof IOException e ? e : new IOException(stopped.get());
+            }
+        }
+
+        int finished = answered.get() + failed.get();
+        Summary summary = new Summary(questions.size(), skipped, answered.get(), failed.get(),
+                System.currentTimeMillis() - start);
+        System.out.printf("✅ Batch finished: %d answered, %d failed in %.1f s (%.2f questions/s) -> %s%n",
+                summary.answered(), summary.failed(), summary.millis() / 1000.0, summary.questionsPerSecond(), outputFile);
+        if (finished > 0) {
+            System.out.printf("⏱️ Average per question: retrieval %d ms, waiting for generation %d ms, generation %d ms%n",
+                    retrievalMillis.get() / finished, waitMillis.get() / finished, generationMillis.get() / finished);
+        }
+        return summary;
+    }
+
+    private Retrieved retrieve(Question question) {
+        long start = System.currentTimeMillis();
+        List<String> docs = List.of();
+        List<String> context = List.of();
+        String error = null;
+        try {
+            Retriever.Retrieval retrieval = retrieve.apply(question.question());
+            if (retrieval.failed()) {
+                error = "search failed";
+            } else {
+                docs = retrieval.texts();
+                context = docs.isEmpty() ? docs : contextOf.apply(retrieval);
+            }
+        } catch (Exception e) {
+            error = String.valueOf(e.getMessage());
+        }
+        if (error != null) {
+            System.err.println("❌ Retrieval failed for question " + question.id() + ": " + error);
+            docs = List.of();
+            context = List.of();
+        }
+        long end = System.currentTimeMillis();
+        return new Retrieved(question, docs, context, error, end - start, end);
+    }
+
+    private RAGSystem.RAGResponse generate(Retrieved retrieved) {
+        String query = retrieved.question().question();
+        if (retrieved.error() != null) {
+            // Not complete, so a resumed run asks it again
+            return RAGSystem.RAGResponse.failed(query, List.of(), "❌ Retrieval failed: " + retrieved.error());
+        }
+        if (retrieved.docs().isEmpty()) {
+            return new RAGSystem.RAGResponse(query, retrieved.docs(), NO_INFORMATION);
+        }
+        try {
+            Generator.StreamedAnswer answer = generate.apply(query, retrieved.context());
+            if (!answer.complete()) {
+                return RAGSystem.RAGResponse.failed(query, retrieved.docs(), answer.text());
+            }
+            return new RAGSystem.RAGResponse(query, retrieved.docs(), answer.text(),
+                    answer.timeToFirstTokenMillis(), answer.tokensPerSecond(), answer.promptTokens());
+        } catch (Exception e) {
+            System.err.println("❌ Generation failed for question " + retrieved.question().id() + ": " + e.getMessage());
+            return RAGSystem.RAGResponse.failed(query, retrieved.docs(), "❌ Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Questions from a text file, one per line; blank lines and lines starting with # are skipped
+     */
+    public List<Question> readQuestions(Path questionsFile) throws IOException {
+        List<Question> questions = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        List<String> lines = Files.readAllLines(questionsFile, StandardCharsets.UTF_8);
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String id = String.valueOf(i + 1);
+            String question = line;
+            if (line.startsWith("{")) {
+                try {
+                    JsonNode json = objectMapper.readTree(line);
+                    id = json.path("id").asText(id);
+                    question = json.path("question").asText("");
+                } catch (IOException e) {
+                    System.err.println("⚠️ Skipping line " + (i + 1) + ", not valid JSON: " + e.getMessage());
+                    continue;
+                }
+            }
+            if (question.isBlank()) {
+                System.err.println("⚠️ Skipping line " + (i + 1) + ", no question");
+            } else if (!ids.add(id)) {
+                System.err.println("⚠️ Skipping line " + (i + 1) + ", duplicate id " + id);
+            } else {
+                questions.add(new Question(id, question));
+            }
+        }
+        return questions;
+    }
+
+    /**
+     * Ids with a complete answer in an earlier run's output. A last line cut off by an
+     * interruption is removed, so appending continues on a fresh line.
+     */
+    private Set<String> completedIds(Path outputFile) throws IOException {
+        Set<String> done = new HashSet<>();
+        if (!Files.exists(outputFile)) {
+            return done;
+        }
+
+        // Bytes, not a String: the cut may fall inside a multi-byte character
+        byte[] content = Files.readAllBytes(outputFile);
+        int end = content.length;
+        while (end > 0 && content[end - 1] != '\n') {
+            end--;
+        }
+        if (end < content.length) {
+            try (FileChannel channel = FileChannel.open(outputFile, StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+            }
+            System.out.println("✂️ Removed an unfinished last line from " + outputFile);
+        }
+
+        for (String line : new String(content, 0, end, StandardCharsets.UTF_8).split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                JsonNode json = objectMapper.readTree(line);
+                String id = json.path("id").asText(null);
+                if (id != null && json.path("complete").asBoolean(false)) {
+                    done.add(id);
+                }
+            } catch (IOException e) {
+                System.err.println("⚠️ Ignoring an unreadable line in " + outputFile);
+            }
+        }
+        return done;
+    }
+
+    private void write(BufferedWriter out, ObjectNode line) throws IOException {
+        String json = objectMapper.writeValueAsString(line);
+        synchronized (out) {
+            out.write(json);
+            out.write('\n');
+            out.flush(); // Finished answers survive an interruption
+        }
+    }
+
+    private static void printProgress(int finished, int total, int failed, long elapsedMillis) {
+        double perSecond = finished * 1000.0 / Math.max(1, elapsedMillis);
+        long remainingSeconds = (long) ((total - finished) / Math.max(perSecond, 1e-9));
+        System.out.printf("📊 %d/%d done (%d failed), %.2f questions/s, about %d min %d s left%n",
+                finished, total, failed, perSecond, remainingSeconds / 60, remainingSeconds % 60);
+    }
+
+    private static List<String> compress(Retriever retriever, ContextCompressor compressor,
+                                         Retriever.Retrieval retrieval) {
+        float[] queryEmbedding = retrieval.queryEmbedding();
+        if (queryEmbedding == null) {
+            return retrieval.texts(); // A lexical match skipped the embedding; keep it cheap
+        }
+        return compressor.compress(queryEmbedding, retrieval.texts()).chunks();
+    }
+
+    private interface Work {
+        void run() throws Exception;
+    }
+
+    /**
+     * A worker that records the error it dies of in stopped, so the other stage stops too
+     * instead of waiting on the handoff forever
+     */
+    private static Thread startWorker(String name, AtomicReference<Exception> stopped, Work work) {
+        Thread thread = new Thread(() -> {
+            try {
+                work.run();
+            } catch (InterruptedException e) {
+                stopped.compareAndSet(null, e);
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                stopped.compareAndSet(null, e);
+                System.err.println("❌ " + name + " stopped: " + e.getMessage());
+            }
+        }, name);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Waits for room in the queue; gives up once the run has stopped
+     */
+    private static void put(BlockingQueue<Retrieved> queue, Retrieved item, AtomicReference<Exception> stopped) {
+        try {
+            while (stopped.get() == null && !queue.offer(item, HANDOFF_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                // Generation is behind
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the next question; END once the run has stopped
+     */
+    private static Retrieved take(BlockingQueue<Retrieved> queue, AtomicReference<Exception> stopped)
+            throws InterruptedException {
+        Retrieved item = null;
+        while (stopped.get() == null && (item = queue.poll(HANDOFF_POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+            // Retrieval is behind
+        }
+        return item == null ? END : item;
+    }
+
+    private static void join(List<Thread> threads) {
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> arguments = Arrays.asList(args);
+        if (arguments.isEmpty() || arguments.get(0).startsWith("--")) {
+            System.err.println("Usage: BatchQuestionRunner questions.txt [--output results.jsonl] "
+                    + "[--retrieval-workers 4] [--generation-workers 2] [--local] [--compress]");
+            return;
+        }
+        Path questionsFile = Paths.get(arguments.get(0));
+        Path outputFile = Paths.get(option(arguments, "--output", DEFAULT_OUTPUT.toString()));
+        int retrievalWorkers = Integer.parseInt(option(arguments, "--retrieval-workers",
+                String.valueOf(DEFAULT_RETRIEVAL_WORKERS)));
+        int generationWorkers = Integer.parseInt(option(arguments, "--generation-workers",
+                String.valueOf(DEFAULT_GENERATION_WORKERS)));
+
+        // --local searches the on-disk segment store instead of Milvus
+        Retriever retriever = arguments.contains("--local") ? Retriever.openLocal() : new Retriever();
+        // Every generation worker holds a slot, none waits in the limiter's queue
+        Generator generator = new Generator(Generator.DEFAULT_OLLAMA_URL, Generator.DEFAULT_MODEL,
+                generationWorkers, generationWorkers);
+        ContextCompressor compressor = arguments.contains("--compress")
+                ? new ContextCompressor(retriever::embedTexts, generator.getTokenEstimator())
+                : null;
+
+        try {
+            new BatchQuestionRunner(retriever, generator, compressor, retrievalWorkers, generationWorkers)
+                    .run(questionsFile, outputFile);
+            System.out.println("🚦 " + generator.getLimiter());
+        } finally {
+            retriever.close();
+        }
+    }
+
+    private static String option(List<String> arguments, String name, String fallback) {
+        int index = arguments.indexOf(name);
+        return index >= 0 && index + 1 < arguments.size() ? arguments.get(index + 1) : fallback;
+    }
+}
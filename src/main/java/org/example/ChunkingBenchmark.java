@@ -0,0 +1,254 @@
+package org.example;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Throughput and allocation benchmark for the chunking core.
+ *
+ * Compares {@link DocumentLoader#chunkText(String, int, int)} with the previous
+ * regex-based implementation on a corpus built by repeating a sample file
+ * (data/sample.txt by default) and reports MB/s and bytes allocated per input MB.
+ *
+ * Usage: ChunkingBenchmark [file] [corpusMB] [iterations]
+ */
+public class ChunkingBenchmark {
+
+    private static final int MAX_CHUNK_SIZE = 500;
+    private static final int OVERLAP = 50;
+    private static final int WARMUP_ITERATIONS = 5;
+
+    public static void main(String[] args) throws Exception {
+        String filePath = args.length > 0 ? args[0] : "data/sample.txt";
+        int corpusMb = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        String sample = Files.readString(Paths.get(filePath));
+        String corpus = buildCorpus(sample, corpusMb);
+        double megabytes = corpus.getBytes(StandardCharsets.UTF_8).length / (1024.0 * 1024.0);
+
+        System.out.printf("📊 Chunking benchmark: %s repeated to %.1f MB, %d iterations%n",
+                filePath, megabytes, iterations);
+
+        List<String> legacyChunks = LegacyChunker.splitText(corpus, MAX_CHUNK_SIZE, OVERLAP);
+        List<String> chunks = DocumentLoader.chunkText(corpus, MAX_CHUNK_SIZE, OVERLAP);
+        if (!legacyChunks.equals(chunks)) {
+            System.err.println("❌ Chunk output differs from the legacy implementation");
+            return;
+        }
+        System.out.println("✅ Output identical (" + chunks.size() + " chunks)");
+
+        Result legacy = measure("legacy (regex)",
+                () -> LegacyChunker.splitText(corpus, MAX_CHUNK_SIZE, OVERLAP), megabytes, iterations);
+        Result current = measure("single-pass",
+                () -> DocumentLoader.chunkText(corpus, MAX_CHUNK_SIZE, OVERLAP), megabytes, iterations);
+
+        System.out.println("━".repeat(60));
+        System.out.printf("%-16s %12s %20s%n", "implementation", "MB/s", "allocated MB / MB");
+        legacy.print();
+        current.print();
+        System.out.println("━".repeat(60));
+        System.out.printf("Speedup: %.2fx, allocation: %.2fx less%n",
+                current.mbPerSecond / legacy.mbPerSecond,
+                legacy.allocatedPerMb / current.allocatedPerMb);
+    }
+
+    /**
+     * Repeat the sample with blank lines in between until the corpus reaches the target size
+     */
+    private static String buildCorpus(String sample, int targetMb) {
+        long targetBytes = targetMb * 1024L * 1024L;
+        int sampleBytes = Math.max(1, sample.getBytes(StandardCharsets.UTF_8).length);
+
+        StringBuilder corpus = new StringBuilder();
+        for (long bytes = 0; bytes < targetBytes; bytes += sampleBytes + 2) {
+            corpus.append(sample).append("\n\n");
+        }
+        return corpus.toString();
+    }
+
+    private static Result measure(String name, Supplier<List<String>> run, double megabytes, int iterations) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            run.get();
+        }
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        int chunks = 0;
+        for (int i = 0; i < iterations; i++) {
+            chunks += run.get().size();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        double totalMb = megabytes * iterations;
+        return new Result(name,
+                totalMb / (elapsed / 1e9),
+                allocated / (1024.0 * 1024.0) / totalMb,
+                chunks / iterations);
+    }
+
+    /**
+     * Bytes allocated by the current thread, or -1 if the JVM does not report it
+     */
+    private static long allocatedBytes() {
+        var threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean hotspot) {
+            return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private record Result(String name, double mbPerSecond, double allocatedPerMb, int chunks) {
+        void print() {
+            System.out.printf("%-16s %12.1f %20.2f%n", name, mbPerSecond, allocatedPerMb);
+        }
+    }
+
+    /**
+     * The previous chunking implementation, kept as the benchmark baseline
+     */
+    static final class LegacyChunker {
+
+        private static final Pattern ARABIC_SENTENCE_END = Pattern.compile("[.!?؟।।]\\s+");
+        private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n\\s*\\n");
+
+        static List<String> splitText(String text, int maxChunkSize, int overlap) {
+            if (text == null || text.trim().isEmpty()) {
+                return new ArrayList<>();
+            }
+
+            text = cleanText(text);
+
+            List<String> chunks = new ArrayList<>();
+            List<String> paragraphs = splitByParagraphs(text);
+            StringBuilder currentChunk = new StringBuilder();
+
+            for (String paragraph : paragraphs) {
+                if (paragraph.length() > maxChunkSize) {
+                    if (currentChunk.length() > 0) {
+                        chunks.add(currentChunk.toString().trim());
+                        currentChunk = new StringBuilder();
+                    }
+                    chunks.addAll(splitParagraphBySentences(paragraph, maxChunkSize, overlap));
+                } else if (currentChunk.length() + paragraph.length() > maxChunkSize) {
+                    if (currentChunk.length() > 0) {
+                        chunks.add(currentChunk.toString().trim());
+                    }
+                    currentChunk = new StringBuilder();
+                    if (overlap > 0 && chunks.size() > 0) {
+                        String lastChunk = chunks.get(chunks.size() - 1);
+                        if (lastChunk.length() > overlap) {
+                            currentChunk.append(lastChunk.substring(lastChunk.length() - overlap));
+                            currentChunk.append(" ");
+                        }
+                    }
+                    currentChunk.append(paragraph);
+                } else {
+                    if (currentChunk.length() > 0) {
+                        currentChunk.append("\n\n");
+                    }
+                    currentChunk.append(paragraph);
+                }
+            }
+
+            if (currentChunk.length() > 0) {
+                chunks.add(currentChunk.toString().trim());
+            }
+
+            chunks.removeIf(chunk -> chunk.trim().length() < 10);
+            return chunks;
+        }
+
+        private static List<String> splitByParagraphs(String text) {
+            List<String> paragraphs = new ArrayList<>();
+            for (String paragraph : PARAGRAPH_BREAK.split(text)) {
+                paragraph = paragraph.trim();
+                if (!paragraph.isEmpty()) {
+                    paragraphs.add(paragraph);
+                }
+            }
+            return paragraphs;
+        }
+
+        private static String cleanText(String text) {
+            return text
+                    .replaceAll("\\s{3,}", "\n\n")
+                    .replaceAll("\\r\\n|\\r", "\n")
+                    .replaceAll("\\n{4,}", "\n\n\n")
+                    .replaceAll(" {2,}", " ")
+                    .trim();
+        }
+
+        private static List<String> splitParagraphBySentences(String paragraph, int maxChunkSize, int overlap) {
+            List<String> chunks = new ArrayList<>();
+            String[] sentences = ARABIC_SENTENCE_END.split(paragraph);
+
+            if (sentences.length <= 1) {
+                return splitByWords(paragraph, maxChunkSize, overlap);
+            }
+
+            StringBuilder currentChunk = new StringBuilder();
+            for (String sentence : sentences) {
+                sentence = sentence.trim();
+                if (sentence.isEmpty()) continue;
+
+                if (sentence.length() > maxChunkSize) {
+                    if (currentChunk.length() > 0) {
+                        chunks.add(currentChunk.toString().trim());
+                        currentChunk = new StringBuilder();
+                    }
+                    chunks.addAll(splitByWords(sentence, maxChunkSize, overlap));
+                } else if (currentChunk.length() + sentence.length() > maxChunkSize) {
+                    if (currentChunk.length() > 0) {
+                        chunks.add(currentChunk.toString().trim());
+                        currentChunk = new StringBuilder();
+                    }
+                    currentChunk.append(sentence).append(". ");
+                } else {
+                    currentChunk.append(sentence).append(". ");
+                }
+            }
+
+            if (currentChunk.length() > 0) {
+                chunks.add(currentChunk.toString().trim());
+            }
+            return chunks;
+        }
+
+        private static List<String> splitByWords(String text, int maxChunkSize, int overlap) {
+            List<String> chunks = new ArrayList<>();
+            String[] words = text.split("\\s+");
+            StringBuilder currentChunk = new StringBuilder();
+
+            for (String word : words) {
+                if (currentChunk.length() + word.length() + 1 > maxChunkSize) {
+                    if (currentChunk.length() > 0) {
+                        chunks.add(currentChunk.toString().trim());
+                        currentChunk = new StringBuilder();
+
+                        if (overlap > 0) {
+                            String[] prevWords = chunks.get(chunks.size() - 1).split("\\s+");
+                            int overlapWords = Math.min(overlap / 10, prevWords.length);
+                            for (int i = Math.max(0, prevWords.length - overlapWords); i < prevWords.length; i++) {
+                                currentChunk.append(prevWords[i]).append(" ");
+                            }
+                        }
+                    }
+                }
+                currentChunk.append(word).append(" ");
+            }
+
+            if (currentChunk.length() > 0) {
+                chunks.add(currentChunk.toString().trim());
+            }
+            return chunks;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Counter bumped whenever ingestion changes a collection, so that caches of answers
+ * derived from it can tell when they are stale.
+ *
+ * It lives in a small file next to the other data files because ingestion
+ * ({@link MilvusEmbedAndInsert}) usually runs in a different process from the one
+ * answering questions. Reading it costs one small file read.
+ */
+public final class CollectionVersion {
+
+    public static final Path DEFAULT_PATH = Paths.get("data", "collection-version");
+
+    private final Path path;
+
+    public CollectionVersion() {
+        this(DEFAULT_PATH);
+    }
+
+    public CollectionVersion(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Version of a local store, kept in the store's own directory
+     */
+    public static CollectionVersion forStore(Path storeDirectory) {
+        return new CollectionVersion(storeDirectory.resolve(DEFAULT_PATH.getFileName()));
+    }
+
+    /**
+     * The current version: 0 before the first change, -1 if the file cannot be read
+     */
+    public long current() {
+        try {
+            return Long.parseLong(Files.readString(path, StandardCharsets.UTF_8).trim());
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("⚠️ Could not read collection version " + path + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Record a change to the collection
+     * @return the new version, or -1 if it could not be written
+     */
+    public long bump() {
+        synchronized (CollectionVersion.class) {
+            long next = Math.max(0, current()) + 1;
+            try {
+                if (path.toAbsolutePath().getParent() != null) {
+                    Files.createDirectories(path.toAbsolutePath().getParent());
+                }
+                Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+                Files.writeString(temp, Long.toString(next), StandardCharsets.UTF_8);
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return next;
+            } catch (IOException e) {
+                System.err.println("⚠️ Could not update collection version " + path + ": " + e.getMessage());
+                return -1;
+            }
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+}
@@ -0,0 +1,200 @@
+package org.example;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded number of concurrent calls with a bounded FIFO waiting queue.
+ *
+ * A caller that finds every slot busy waits in the queue without holding a thread
+ * ({@link #acquire()} returns a future); once the queue is full further calls are
+ * rejected at once with a RejectedExecutionException rather than piling up behind the
+ * backend. Queue time is recorded per permit and summed up in the statistics.
+ */
+public final class ConcurrencyLimiter {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueued;
+
+    // Guarded by this
+    private final ArrayDeque<Waiter> waiting = new ArrayDeque<>();
+    private int active;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+
+    private record Waiter(CompletableFuture<Permit> future, long enqueuedAt) {
+    }
+
+    /**
+     * One slot, held until closed. Closing more than once releases only once.
+     */
+    public final class Permit implements AutoCloseable {
+        private final long queueNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long queueNanos) {
+            this.queueNanos = queueNanos;
+        }
+
+        public long getQueueMillis() {
+            return queueNanos / 1_000_000;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                release();
+            }
+        }
+    }
+
+    public ConcurrencyLimiter(String name, int maxConcurrent, int maxQueued) {
+        if (maxConcurrent < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1 and maxQueued not negative");
+        }
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * A permit, now if a slot is free, otherwise when one is released. The future fails
+     * with RejectedExecutionException if the queue is full. Cancelling a pending future
+     * leaves the queue.
+     */
+    public CompletableFuture<Permit> acquire() {
+        Waiter waiter;
+        synchronized (this) {
+            if (active < maxConcurrent) {
+                active++;
+                admitted.incrementAndGet();
+                return CompletableFuture.completedFuture(new Permit(0));
+            }
+            if (waiting.size() >= maxQueued) {
+                rejected.incrementAndGet();
+                return CompletableFuture.failedFuture(new RejectedExecutionException(
+                        name + " busy: " + maxConcurrent + " running, " + maxQueued + " waiting"));
+            }
+            waiter = new Waiter(new CompletableFuture<>(), System.nanoTime());
+            waiting.add(waiter);
+        }
+
+        waiter.future().whenComplete((permit, error) -> {
+            if (waiter.future().isCancelled()) {
+                synchronized (this) {
+                    waiting.remove(waiter);
+                }
+            }
+        });
+        return waiter.future();
+    }
+
+    /**
+     * Blocking {@link #acquire()}, for callers that run on their own thread anyway
+     *
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public Permit acquireBlocking() throws InterruptedException {
+        CompletableFuture<Permit> pending = acquire();
+        try {
+            return pending.get();
+        } catch (ExecutionException e) {
+            throw (RejectedExecutionException) e.getCause();
+        } catch (InterruptedException e) {
+            if (!pending.cancel(false)) {
+                // Granted just now; give the slot back
+                pending.thenAccept(Permit::close);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Start task once a slot is free and hold the slot until its stage completes
+     */
+    public <T> CompletableFuture<T> submit(Supplier<? extends CompletionStage<T>> task) {
+        return acquire().thenCompose(permit -> {
+            CompletionStage<T> stage;
+            try {
+                stage = task.get();
+            } catch (RuntimeException e) {
+                permit.close();
+                return CompletableFuture.failedFuture(e);
+            }
+            return stage.whenComplete((result, error) -> permit.close());
+        });
+    }
+
+    /**
+     * Hand the slot to the longest waiting caller, or free it. The waiter's dependent
+     * stages run on the releasing thread.
+     */
+    private void release() {
+        while (true) {
+            Waiter next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    active--;
+                    return;
+                }
+            }
+
+            long queueNanos = System.nanoTime() - next.enqueuedAt();
+            if (next.future().complete(new Permit(queueNanos))) {
+                admitted.incrementAndGet();
+                queued.incrementAndGet();
+                totalQueueNanos.addAndGet(queueNanos);
+                maxQueueNanos.accumulateAndGet(queueNanos, Math::max);
+                return;
+            }
+            // Cancelled meanwhile, try the next one
+        }
+    }
+
+    public synchronized int getActive() {
+        return active;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Average queue time over the admitted calls that had to wait
+     */
+    public double getAverageQueueMillis() {
+        long count = queued.get();
+        return count == 0 ? 0 : totalQueueNanos.get() / 1e6 / count;
+    }
+
+    public double getMaxQueueMillis() {
+        return maxQueueNanos.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d running, %d waiting, %d admitted (%d queued, avg %.0f ms, max %.0f ms), %d rejected",
+                name, getActive(), getWaiting(), getAdmitted(), queued.get(),
+                getAverageQueueMillis(), getMaxQueueMillis(), getRejected());
+    }
+}
@@ -0,0 +1,181 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extractive compression of retrieved chunks: keeps the sentences closest to the
+ * question and drops the rest before they cost prefill time in the LLM.
+ *
+ * Chunks are split with the sentence rules of {@link DocumentLoader} and at blank lines.
+ * Sentences repeated by the chunk overlap are embedded once, all in a single call. The
+ * best sentences by cosine similarity to the query embedding are kept up to the token
+ * budget, in their original order within each chunk. Chunks left without sentences are
+ * dropped. Context that already fits the budget is passed through without an embedding call.
+ */
+public class ContextCompressor {
+
+    public static final int DEFAULT_TOKEN_BUDGET = 300;
+
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n\\s*\\n");
+
+    /**
+     * Compressed chunks and their size before and after, in estimated tokens
+     */
+    public record Compressed(List<String> chunks, int originalTokens, int compressedTokens, long millis) {
+
+        public double ratio() {
+            return originalTokens == 0 ? 1 : (double) compressedTokens / originalTokens;
+        }
+    }
+
+    private record Sentence(int chunk, int position, String text, int tokens) {
+    }
+
+    private final Function<List<String>, List<float[]>> embedAll;
+    private final TokenEstimator estimator;
+    private final int tokenBudget;
+
+    public ContextCompressor(Function<List<String>, List<float[]>> embedAll, TokenEstimator estimator) {
+        this(embedAll, estimator, DEFAULT_TOKEN_BUDGET);
+    }
+
+    /**
+     * @param embedAll embeds texts with the model that produced the query embedding
+     */
+    public ContextCompressor(Function<List<String>, List<float[]>> embedAll, TokenEstimator estimator,
+                             int tokenBudget) {
+        this.embedAll = embedAll;
+        this.estimator = estimator;
+        this.tokenBudget = tokenBudget;
+    }
+
+    public Compressed compress(float[] queryEmbedding, List<String> chunks) {
+        long start = System.nanoTime();
+
+        List<Sentence> sentences = new ArrayList<>();
+        Map<String, String> unique = new LinkedHashMap<>(); // normalized -> first occurrence
+        int originalTokens = 0;
+        for (int c = 0; c < chunks.size(); c++) {
+            originalTokens += estimator.estimate(chunks.get(c));
+            for (String text : splitSentences(chunks.get(c))) {
+                sentences.add(new Sentence(c, sentences.size(), text, estimator.estimate(text)));
+                unique.putIfAbsent(ArabicTextNormalizer.normalize(text), text);
+            }
+        }
+        if (originalTokens <= tokenBudget || sentences.size() < 2) {
+            return new Compressed(chunks, originalTokens, originalTokens, elapsedMillis(start));
+        }
+
+        List<float[]> embeddings;
+        try {
+            embeddings = embedAll.apply(new ArrayList<>(unique.values()));
+            if (embeddings.size() != unique.size()) {
+                throw new IllegalStateException("Expected " + unique.size() + " embeddings, got " + embeddings.size());
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ Could not embed sentences, using the context uncompressed: " + e.getMessage());
+            return new Compressed(chunks, originalTokens, originalTokens, elapsedMillis(start));
+        }
+
+        float[] query = HnswVectorStore.normalize(queryEmbedding);
+        Map<String, Double> scoreByKey = new HashMap<>();
+        int index = 0;
+        for (String key : unique.keySet()) {
+            scoreByKey.put(key, dot(query, HnswVectorStore.normalize(embeddings.get(index++))));
+        }
+        double[] scores = new double[sentences.size()];
+        for (Sentence sentence : sentences) {
+            scores[sentence.position()] = scoreByKey.get(ArabicTextNormalizer.normalize(sentence.text()));
+        }
+
+        // Best sentences first; a repeated sentence is kept only once
+        List<Sentence> ranked = new ArrayList<>(sentences);
+        ranked.sort(Comparator.comparingDouble((Sentence sentence) -> scores[sentence.position()]).reversed());
+        boolean[] keep = new boolean[sentences.size()];
+        Set<String> keptKeys = new HashSet<>();
+        int tokens = 0;
+        for (Sentence sentence : ranked) {
+            String key = ArabicTextNormalizer.normalize(sentence.text());
+            if (keptKeys.contains(key)) {
+                continue;
+            }
+            if (tokens + sentence.tokens() <= tokenBudget || keptKeys.isEmpty()) {
+                keep[sentence.position()] = true;
+                keptKeys.add(key);
+                tokens += sentence.tokens();
+            }
+        }
+
+        List<String> compressed = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int currentChunk = -1;
+        for (Sentence sentence : sentences) {
+            if (!keep[sentence.position()]) {
+                continue;
+            }
+            if (sentence.chunk() != currentChunk && current.length() > 0) {
+                compressed.add(current.toString());
+                current.setLength(0);
+            }
+            currentChunk = sentence.chunk();
+            if (current.length() > 0) {
+                current.append(' ');
+            }
+            current.append(sentence.text());
+        }
+        if (current.length() > 0) {
+            compressed.add(current.toString());
+        }
+        return new Compressed(compressed, originalTokens, tokens, elapsedMillis(start));
+    }
+
+    public int getTokenBudget() {
+        return tokenBudget;
+    }
+
+    /**
+     * Sentences of a chunk, each with its closing punctuation
+     */
+    static List<String> splitSentences(String chunk) {
+        List<String> sentences = new ArrayList<>();
+        for (String paragraph : PARAGRAPH_BREAK.split(chunk)) {
+            Matcher matcher = DocumentLoader.ARABIC_SENTENCE_END.matcher(paragraph);
+            int from = 0;
+            while (matcher.find()) {
+                addSentence(sentences, paragraph.substring(from, matcher.start() + 1));
+                from = matcher.end();
+            }
+            addSentence(sentences, paragraph.substring(from));
+        }
+        return sentences;
+    }
+
+    private static void addSentence(List<String> sentences, String sentence) {
+        String trimmed = sentence.strip();
+        if (!trimmed.isEmpty()) {
+            sentences.add(trimmed);
+        }
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
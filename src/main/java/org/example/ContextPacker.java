@@ -0,0 +1,118 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fits retrieved chunks into a prompt token budget.
+ *
+ * Chunks come in score order, best first. Consecutive chunks of one document share the
+ * overlap that {@link DocumentLoader#splitText} adds, and those repeated spans are cut
+ * from the later chunk. Whole chunks are then added in score order while they fit; one
+ * that does not fit is skipped in favour of smaller ones further down. Only a best chunk
+ * that alone exceeds the budget is shortened, at a word boundary.
+ */
+public class ContextPacker {
+
+    public static final int DEFAULT_TOKEN_BUDGET = 1024;
+
+    // Shorter common affixes are ordinary coincidences, not chunk overlap
+    private static final int MIN_OVERLAP_CHARS = 20;
+
+    /**
+     * The chunks that went into the prompt and what packing did
+     */
+    public record Packed(List<String> chunks, int tokens, int droppedChunks, int overlapCharsRemoved) {
+    }
+
+    private final TokenEstimator estimator;
+    private final int tokenBudget;
+
+    public ContextPacker(TokenEstimator estimator) {
+        this(estimator, DEFAULT_TOKEN_BUDGET);
+    }
+
+    public ContextPacker(TokenEstimator estimator, int tokenBudget) {
+        this.estimator = estimator;
+        this.tokenBudget = tokenBudget;
+    }
+
+    public Packed pack(List<String> chunks) {
+        List<String> packed = new ArrayList<>();
+        int tokens = 0;
+        int dropped = 0;
+        int overlapRemoved = 0;
+
+        for (String chunk : chunks) {
+            String original = chunk.strip();
+            String text = original;
+            for (String kept : packed) {
+                text = kept.contains(text) ? "" : withoutOverlap(kept, text);
+                if (text.isEmpty()) {
+                    break;
+                }
+            }
+            overlapRemoved += original.length() - text.length();
+            if (text.isEmpty()) {
+                continue;
+            }
+
+            int cost = estimator.estimate(text);
+            if (tokens + cost <= tokenBudget) {
+                packed.add(text);
+                tokens += cost;
+            } else if (packed.isEmpty()) {
+                text = shortenTo(text, tokenBudget);
+                packed.add(text);
+                tokens += estimator.estimate(text);
+            } else {
+                dropped++;
+            }
+        }
+        return new Packed(packed, tokens, dropped, overlapRemoved);
+    }
+
+    public int getTokenBudget() {
+        return tokenBudget;
+    }
+
+    /**
+     * text without a prefix that repeats the end of kept, and without a suffix that
+     * repeats its start
+     */
+    static String withoutOverlap(String kept, String text) {
+        int prefix = overlap(kept, text);
+        if (prefix > 0) {
+            text = text.substring(prefix).strip();
+        }
+        int suffix = overlap(text, kept);
+        if (suffix > 0) {
+            text = text.substring(0, text.length() - suffix).strip();
+        }
+        return text;
+    }
+
+    /**
+     * Length of the longest suffix of first that is also a prefix of second, if long enough
+     */
+    private static int overlap(String first, String second) {
+        for (int length = Math.min(first.length(), second.length()); length >= MIN_OVERLAP_CHARS; length--) {
+            if (first.regionMatches(first.length() - length, second, 0, length)) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Longest prefix of whole words within the budget
+     */
+    private String shortenTo(String text, int budget) {
+        int end = text.length();
+        while (end > 0 && estimator.estimate(text.subSequence(0, end)) > budget) {
+            int space = text.lastIndexOf(' ', end - 1);
+            end = space > 0 ? space : (int) (end * 0.9);
+        }
+        return text.substring(0, end).strip();
+    }
+}
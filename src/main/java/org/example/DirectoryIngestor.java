@@ -0,0 +1,210 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks a directory tree and extracts and chunks every supported file in parallel.
+ *
+ * Files are split across a fork-join pool; each worker streams its chunks into a
+ * bounded queue that is exposed as a single continuous {@code Stream<String>}, so
+ * chunking overlaps with whatever consumes the stream (e.g. embedding and insertion).
+ */
+public class DirectoryIngestor implements AutoCloseable {
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    private static final int FILES_PER_TASK = 4;
+
+    // Marks the end of the chunk queue
+    private static final String END = new String("<end-of-chunks>");
+
+    private final Path root;
+    private final int maxChunkSize;
+    private final int overlap;
+    private final TextExtractors extractors;
+    private final ForkJoinPool pool;
+    private final IngestionProgress progress;
+
+    public DirectoryIngestor(Path root, int maxChunkSize, int overlap) {
+        this(root, maxChunkSize, overlap, Runtime.getRuntime().availableProcessors(), new TextExtractors());
+    }
+
+    public DirectoryIngestor(Path root, int maxChunkSize, int overlap, int parallelism, TextExtractors extractors) {
+        this.root = root;
+        this.maxChunkSize = maxChunkSize;
+        this.overlap = overlap;
+        this.extractors = extractors;
+        this.pool = new ForkJoinPool(parallelism);
+        this.progress = new IngestionProgress();
+    }
+
+    /**
+     * Start chunking all supported files under the root directory.
+     * Chunks arrive in no particular order; close the stream to stop early. Each call
+     * walks the directory again; {@link #getProgress()} counts across all calls.
+     */
+    public Stream<String> streamChunks() {
+        List<Path> files = listFiles();
+        System.out.println("📂 Found " + files.size() + " supported files under " + root
+                + " (" + pool.getParallelism() + " workers)");
+
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(DEFAULT_QUEUE_CAPACITY);
+        // Per stream, so closing one stream does not stop the next
+        AtomicBoolean stopped = new AtomicBoolean();
+        ChunkFilesTask task = new ChunkFilesTask(files, 0, files.size(), queue, stopped);
+
+        pool.execute(() -> {
+            try {
+                task.invoke();
+            } finally {
+                putQuietly(queue, END);
+            }
+        });
+
+        Iterator<String> iterator = new Iterator<>() {
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = queue.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        next = END;
+                    }
+                }
+                return next != END;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String chunk = next;
+                next = null;
+                return chunk;
+            }
+        };
+
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    // Stop the workers and unblock any that wait for queue space
+                    stopped.set(true);
+                    queue.clear();
+                });
+    }
+
+    public IngestionProgress getProgress() {
+        return progress;
+    }
+
+    private List<Path> listFiles() {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> extractors.forFile(path) != null)
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error walking " + root + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Extract and chunk one file, pushing every chunk into the queue
+     */
+    private void chunkFile(Path file, BlockingQueue<String> queue, AtomicBoolean stopped) {
+        TextExtractor extractor = extractors.forFile(file);
+
+        try (Reader reader = extractor.open(file)) {
+            DocumentLoader.ChunkIterator chunks = DocumentLoader.chunkIterator(reader, maxChunkSize, overlap);
+            while (!stopped.get() && chunks.hasNext()) {
+                queue.put(chunks.next());
+                progress.chunkProduced();
+            }
+            progress.fileDone();
+
+        } catch (IOException | RuntimeException e) {
+            // Includes parser errors (e.g. from jsoup), so one bad file never ends the walk unnoticed
+            progress.fileFailed();
+            System.err.println("❌ Error reading " + file + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void putQuietly(BlockingQueue<String> queue, String value) {
+        try {
+            queue.put(value);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Splits the file list in halves until a task holds only a few files
+     */
+    private class ChunkFilesTask extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final int from;
+        private final int to;
+        private final BlockingQueue<String> queue;
+        private final AtomicBoolean stopped;
+
+        ChunkFilesTask(List<Path> files, int from, int to, BlockingQueue<String> queue, AtomicBoolean stopped) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+            this.queue = queue;
+            this.stopped = stopped;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= FILES_PER_TASK) {
+                for (int i = from; i < to && !stopped.get(); i++) {
+                    chunkFile(files.get(i), queue, stopped);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkFilesTask(files, from, middle, queue, stopped),
+                    new ChunkFilesTask(files, middle, to, queue, stopped));
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+        try {
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        progress.close();
+        System.out.println("📊 Ingestion summary - " + progress);
+    }
+}
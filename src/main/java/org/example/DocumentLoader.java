@@ -1,21 +1,37 @@
 package org.example;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Improved DocumentLoader with better text chunking strategies
  */
 public class DocumentLoader {
 
-    // Arabic sentence endings
-    private static final Pattern ARABIC_SENTENCE_END = Pattern.compile("[.!?؟।।]\\s+");
+    // Arabic sentence endings, also used by ContextCompressor
+    static final Pattern ARABIC_SENTENCE_END = Pattern.compile("[.!?؟।।]\\s+");
+
+    // A paragraph longer than this is handed to the chunker in pieces, cut at whitespace
+    static final int MAX_PARAGRAPH_CHARS = 1 << 16;
 
     /**
      * Load text file content
@@ -47,167 +63,529 @@ public class DocumentLoader {
             return new ArrayList<>();
         }
 
-        // Clean the text first
-        text = cleanText(text);
+        List<String> chunks = chunkText(text, maxChunkSize, overlap);
+
+        System.out.println("✅ Split text into " + chunks.size() + " chunks");
+        return chunks;
+    }
 
+    /**
+     * Same as {@link #splitText(String, int, int)} without logging, for bulk callers.
+     * The text is normalized and split into paragraphs in a single pass; only the
+     * current paragraph and the chunk being built are copied.
+     */
+    static List<String> chunkText(String text, int maxChunkSize, int overlap) {
         List<String> chunks = new ArrayList<>();
+        if (text == null) {
+            return chunks;
+        }
+
+        ParagraphScanner scanner = new ParagraphScanner(text, maxChunkSize);
+        ChunkAssembler assembler = new ChunkAssembler(maxChunkSize, overlap, chunks::add);
+
+        while (scanner.nextParagraph()) {
+            assembler.accept(scanner.paragraph(), scanner.start(), scanner.end());
+        }
+        assembler.finish();
+
+        return chunks;
+    }
+
+    /**
+     * Stream the chunks of a file without loading it into memory.
+     * The file is read through a memory-mapped window and chunks are produced lazily,
+     * with the same output as {@link #splitText(String, int, int)} on the whole file.
+     * Close the returned stream to release the file.
+     * @throws UncheckedIOException if the file is missing or cannot be opened; an empty
+     *         stream would look like an empty document to incremental ingestion
+     */
+    public static Stream<String> streamChunks(String filePath, int maxChunkSize, int overlap) {
+        Path path = Paths.get(filePath);
+
+        try {
+            ChunkIterator iterator = chunkIterator(new MappedTextReader(path), maxChunkSize, overlap);
+            System.out.println("✅ Streaming file: " + filePath + " (" + Files.size(path) + " bytes)");
+
+            return StreamSupport.stream(
+                    Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+                    false).onClose(iterator::close);
+
+        } catch (NoSuchFileException e) {
+            System.err.println("File not found: " + filePath);
+            throw new UncheckedIOException("File not found: " + filePath, e);
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+            throw new UncheckedIOException("Error reading " + filePath + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Lazily chunk any character source. Only the current paragraph, or a
+     * {@value #MAX_PARAGRAPH_CHARS}-character piece of a longer one, is held in memory.
+     */
+    public static ChunkIterator chunkIterator(Reader reader, int maxChunkSize, int overlap) {
+        return new ChunkIterator(reader, maxChunkSize, overlap);
+    }
+
+    /**
+     * Split large paragraph by sentences
+     */
+    private static void splitParagraphBySentences(CharSequence text, int start, int end,
+                                                  int maxChunkSize, int overlap, Consumer<String> chunks) {
+        // Split by sentences (Arabic and English)
+        Matcher matcher = ARABIC_SENTENCE_END.matcher(text).region(start, end);
+        boolean found = matcher.find();
+
+        if (!found) {
+            // Fallback to word splitting if no sentences found
+            splitByWords(text, start, end, maxChunkSize, overlap, chunks);
+            return;
+        }
+
+        StringBuilder currentChunk = new StringBuilder();
+        int sentenceStart = start;
+
+        while (true) {
+            int sentenceEnd = found ? matcher.start() : end;
+            int from = trimStart(text, sentenceStart, sentenceEnd);
+            int to = trimEnd(text, from, sentenceEnd);
+            int length = to - from;
 
-        // Try to split by paragraphs first
-        List<String> paragraphs = splitByParagraphs(text);
+            // If single sentence is too long, split it by words
+            if (length > maxChunkSize) {
+                if (currentChunk.length() > 0) {
+                    chunks.accept(trimmed(currentChunk));
+                    currentChunk.setLength(0);
+                }
+                splitByWords(text, from, to, maxChunkSize, overlap, chunks);
+            }
+            // If adding sentence exceeds limit
+            else if (length > 0 && currentChunk.length() + length > maxChunkSize) {
+                if (currentChunk.length() > 0) {
+                    chunks.accept(trimmed(currentChunk));
+                    currentChunk.setLength(0);
+                }
+                currentChunk.append(text, from, to).append(". ");
+            }
+            // Add sentence to current chunk
+            else if (length > 0) {
+                currentChunk.append(text, from, to).append(". ");
+            }
 
+            if (!found) break;
+            sentenceStart = matcher.end();
+            found = matcher.find();
+        }
+
+        if (currentChunk.length() > 0) {
+            chunks.accept(trimmed(currentChunk));
+        }
+    }
+
+    /**
+     * Fallback: split by words when sentences are too long.
+     * The start offset of every word in the current chunk is tracked, so the overlap
+     * is carried over by offset instead of re-splitting the previous chunk.
+     */
+    private static void splitByWords(CharSequence text, int start, int end,
+                                     int maxChunkSize, int overlap, Consumer<String> chunks) {
         StringBuilder currentChunk = new StringBuilder();
+        WordOffsets words = new WordOffsets();
+
+        int i = start;
+        while (i < end) {
+            while (i < end && isRegexWhitespace(text.charAt(i))) i++;
+            if (i == end) break;
+            int wordStart = i;
+            while (i < end && !isRegexWhitespace(text.charAt(i))) i++;
+
+            if (currentChunk.length() + (i - wordStart) + 1 > maxChunkSize && currentChunk.length() > 0) {
+                String chunk = trimmed(currentChunk);
+                chunks.accept(chunk);
+
+                // Add overlap
+                words.keepOverlap(currentChunk, chunk, overlap);
+            }
+            words.add(currentChunk.length());
+            currentChunk.append(text, wordStart, i).append(' ');
+        }
+
+        if (currentChunk.length() > 0) {
+            chunks.accept(trimmed(currentChunk));
+        }
+    }
+
+    /**
+     * Start offsets of the words in a chunk being built as "word word ... "
+     */
+    private static final class WordOffsets {
+        private int[] starts = new int[64];
+        private int count;
+
+        void add(int start) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+            }
+            starts[count++] = start;
+        }
+
+        /**
+         * Reduce the chunk to its last overlap / 10 words (rough estimate)
+         */
+        void keepOverlap(StringBuilder currentChunk, String emitted, int overlap) {
+            int lastChar = currentChunk.length() - 2; // before the trailing space
+
+            if (overlap <= 0) {
+                currentChunk.setLength(0);
+                count = 0;
+            } else if (count > 0 && currentChunk.charAt(0) > ' ' && lastChar >= 0 && currentChunk.charAt(lastChar) > ' ') {
+                // Trimming did not change the chunk, so its words are exactly the tracked ones
+                int keep = Math.min(overlap / 10, count);
+                int from = keep == 0 ? currentChunk.length() : starts[count - keep];
+                currentChunk.delete(0, from);
+                for (int w = 0; w < keep; w++) {
+                    starts[w] = starts[count - keep + w] - from;
+                }
+                count = keep;
+            } else {
+                // Control characters were trimmed from the chunk edges: use the emitted words
+                String[] prevWords = emitted.split("\\s+");
+                int keep = Math.min(overlap / 10, prevWords.length);
+                currentChunk.setLength(0);
+                count = 0;
+                for (int w = prevWords.length - keep; w < prevWords.length; w++) {
+                    add(currentChunk.length());
+                    currentChunk.append(prevWords[w]).append(' ');
+                }
+            }
+        }
+    }
+
+    /**
+     * Same result as {@code builder.toString().trim()} with a single copy
+     */
+    private static String trimmed(CharSequence builder) {
+        int from = trimStart(builder, 0, builder.length());
+        int to = trimEnd(builder, from, builder.length());
+        return builder.subSequence(from, to).toString();
+    }
+
+    private static int trimStart(CharSequence text, int from, int to) {
+        while (from < to && text.charAt(from) <= ' ') from++;
+        return from;
+    }
+
+    private static int trimEnd(CharSequence text, int from, int to) {
+        while (to > from && text.charAt(to - 1) <= ' ') to--;
+        return to;
+    }
+
+    /**
+     * Same character class as {@code \s} in java.util.regex
+     */
+    private static boolean isRegexWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Paragraph -> sentence -> word chunking state, fed one paragraph at a time.
+     * Shared by the in-memory and the streaming paths so both produce identical chunks.
+     */
+    private static final class ChunkAssembler {
+        private final int maxChunkSize;
+        private final int overlap;
+        private final Consumer<String> sink;
+        private final Consumer<String> emitter = this::emit;
+
+        private final StringBuilder currentChunk = new StringBuilder();
+        private String lastChunk;
+
+        ChunkAssembler(int maxChunkSize, int overlap, Consumer<String> sink) {
+            this.maxChunkSize = maxChunkSize;
+            this.overlap = overlap;
+            this.sink = sink;
+        }
+
+        /**
+         * Accept the paragraph text[start, end), already trimmed and non-empty
+         */
+        void accept(CharSequence text, int start, int end) {
+            int length = end - start;
 
-        for (String paragraph : paragraphs) {
             // If paragraph alone is too big, split it further
-            if (paragraph.length() > maxChunkSize) {
+            if (length > maxChunkSize) {
                 // Save current chunk if not empty
                 if (currentChunk.length() > 0) {
-                    chunks.add(currentChunk.toString().trim());
-                    currentChunk = new StringBuilder();
+                    emit(trimmed(currentChunk));
+                    currentChunk.setLength(0);
                 }
 
                 // Split large paragraph by sentences
-                chunks.addAll(splitParagraphBySentences(paragraph, maxChunkSize, overlap));
+                splitParagraphBySentences(text, start, end, maxChunkSize, overlap, emitter);
             }
             // If adding this paragraph exceeds limit
-            else if (currentChunk.length() + paragraph.length() > maxChunkSize) {
+            else if (currentChunk.length() + length > maxChunkSize) {
                 // Save current chunk
                 if (currentChunk.length() > 0) {
-                    chunks.add(currentChunk.toString().trim());
+                    emit(trimmed(currentChunk));
                 }
 
                 // Start new chunk with overlap if needed
-                currentChunk = new StringBuilder();
-                if (overlap > 0 && chunks.size() > 0) {
-                    String lastChunk = chunks.get(chunks.size() - 1);
+                currentChunk.setLength(0);
+                if (overlap > 0 && lastChunk != null) {
                     if (lastChunk.length() > overlap) {
-                        currentChunk.append(lastChunk.substring(lastChunk.length() - overlap));
-                        currentChunk.append(" ");
+                        currentChunk.append(lastChunk, lastChunk.length() - overlap, lastChunk.length());
+                        currentChunk.append(' ');
                     }
                 }
-                currentChunk.append(paragraph);
+                currentChunk.append(text, start, end);
             }
             // Add paragraph to current chunk
             else {
                 if (currentChunk.length() > 0) {
                     currentChunk.append("\n\n");
                 }
-                currentChunk.append(paragraph);
+                currentChunk.append(text, start, end);
             }
         }
 
-        // Add final chunk if not empty
-        if (currentChunk.length() > 0) {
-            chunks.add(currentChunk.toString().trim());
+        void finish() {
+            // Add final chunk if not empty
+            if (currentChunk.length() > 0) {
+                emit(trimmed(currentChunk));
+                currentChunk.setLength(0);
+            }
         }
 
-        // Filter out very short chunks
-        chunks.removeIf(chunk -> chunk.trim().length() < 10);
+        private void emit(String chunk) {
+            // Overlap is always taken from the previous chunk, even a very short one
+            lastChunk = chunk;
 
-        System.out.println("✅ Split text into " + chunks.size() + " chunks");
-        return chunks;
+            // Filter out very short chunks (chunks are already trimmed)
+            if (chunk.length() >= 10) {
+                sink.accept(chunk);
+            }
+        }
     }
 
     /**
-     * Clean text from unwanted characters and normalize
+     * Lazy chunk iterator over a character source
      */
-    private static String cleanText(String text) {
-        if (text == null) return "";
+    public static final class ChunkIterator implements Iterator<String>, Closeable {
+        private final Reader reader;
+        private final ParagraphScanner scanner;
+        private final ChunkAssembler assembler;
+        private final ArrayDeque<String> pending = new ArrayDeque<>();
+        private boolean finished;
+
+        private ChunkIterator(Reader reader, int maxChunkSize, int overlap) {
+            this.reader = reader;
+            this.scanner = new ParagraphScanner(reader, maxChunkSize);
+            this.assembler = new ChunkAssembler(maxChunkSize, overlap, pending::add);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (pending.isEmpty() && !finished) {
+                if (scanner.nextParagraph()) {
+                    assembler.accept(scanner.paragraph(), scanner.start(), scanner.end());
+                } else {
+                    assembler.finish();
+                    finished = true;
+                }
+            }
+            return !pending.isEmpty();
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return pending.poll();
+        }
 
-        return text
-                // Remove excessive whitespace
-                .replaceAll("\\s{3,}", "\n\n")
-                // Normalize line breaks
-                .replaceAll("\\r\\n|\\r", "\n")
-                // Remove excessive line breaks
-                .replaceAll("\\n{4,}", "\n\n\n")
-                // Clean up spaces
-                .replaceAll(" {2,}", " ")
-                .trim();
+        @Override
+        public void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                System.err.println("Error closing reader: " + e.getMessage());
+            }
+        }
     }
 
     /**
-     * Split large paragraph by sentences
+     * Single-pass text normalizer and paragraph splitter.
+     *
+     * Every maximal run of whitespace is normalized as it is read: runs of three or more
+     * characters and blank lines become paragraph breaks, \r\n and \r become \n, and a
+     * double space becomes one. The current paragraph is kept in a reusable buffer and
+     * exposed as trimmed offsets, so no intermediate copy of the document is made.
+     *
+     * A paragraph that reaches the size cap is returned early at the next whitespace, or
+     * mid-word at twice the cap, so a file without blank lines is not held in memory whole.
+     * The cap is above the chunk size, so every piece is split by sentences on its own.
      */
-    private static List<String> splitParagraphBySentences(String paragraph, int maxChunkSize, int overlap) {
-        List<String> chunks = new ArrayList<>();
+    private static final class ParagraphScanner {
+        private final CharSequence text;
+        private final Reader reader;
+        private final char[] buffer;
+        private int position;
+        private int limit;
+        private boolean endOfInput;
+
+        private final StringBuilder paragraph = new StringBuilder();
+        private int start;
+        private int end;
+        private char pendingChar;
+        private boolean hasPendingChar;
+
+        private final char[] run = new char[2];
+        private int runLength;
+        private final int cap;
+
+        ParagraphScanner(CharSequence text, int maxChunkSize) {
+            this.text = text;
+            this.reader = null;
+            this.buffer = null;
+            this.limit = text.length();
+            this.cap = capFor(maxChunkSize);
+        }
 
-        // Split by sentences (Arabic and English)
-        String[] sentences = ARABIC_SENTENCE_END.split(paragraph);
+        ParagraphScanner(Reader reader, int maxChunkSize) {
+            this.text = null;
+            this.reader = reader;
+            this.buffer = new char[8192];
+            this.cap = capFor(maxChunkSize);
+        }
 
-        if (sentences.length <= 1) {
-            // Fallback to word splitting if no sentences found
-            return splitByWords(paragraph, maxChunkSize, overlap);
+        private static int capFor(int maxChunkSize) {
+            return Math.max(MAX_PARAGRAPH_CHARS, maxChunkSize + 1);
         }
 
-        StringBuilder currentChunk = new StringBuilder();
+        CharSequence paragraph() { return paragraph; }
+        int start() { return start; }
+        int end() { return end; }
+
+        /**
+         * Advance to the next non-empty paragraph.
+         * @return false at end of input
+         */
+        boolean nextParagraph() {
+            paragraph.setLength(0);
+            if (hasPendingChar) {
+                paragraph.append(pendingChar);
+                hasPendingChar = false;
+            }
 
-        for (String sentence : sentences) {
-            sentence = sentence.trim();
-            if (sentence.isEmpty()) continue;
+            while (!endOfInput) {
+                int c = read();
+                if (c < 0) {
+                    endOfInput = true;
+                    break;
+                }
 
-            // If single sentence is too long, split it by words
-            if (sentence.length() > maxChunkSize) {
-                if (currentChunk.length() > 0) {
-                    chunks.add(currentChunk.toString().trim());
-                    currentChunk = new StringBuilder();
+                char ch = (char) c;
+                if (isRegexWhitespace(ch)) {
+                    if (runLength < run.length) {
+                        run[runLength] = ch;
+                    }
+                    runLength++;
+                    continue;
                 }
-                chunks.addAll(splitByWords(sentence, maxChunkSize, overlap));
-            }
-            // If adding sentence exceeds limit
-            else if (currentChunk.length() + sentence.length() > maxChunkSize) {
-                if (currentChunk.length() > 0) {
-                    chunks.add(currentChunk.toString().trim());
-                    currentChunk = new StringBuilder();
+
+                boolean full = runLength > 0 ? paragraph.length() >= cap
+                        : paragraph.length() >= 2 * cap && !Character.isLowSurrogate(ch);
+                if (full) {
+                    runLength = 0; // The whitespace at the cut is dropped by trimming anyway
                 }
-                currentChunk.append(sentence).append(". ");
-            }
-            // Add sentence to current chunk
-            else {
-                currentChunk.append(sentence).append(". ");
+                if ((full || endRun()) && setBounds()) {
+                    // The first character of the next paragraph or piece
+                    pendingChar = ch;
+                    hasPendingChar = true;
+                    return true;
+                }
+                paragraph.append(ch);
             }
+
+            // A trailing whitespace run is dropped by trimming
+            runLength = 0;
+            return setBounds();
         }
 
-        if (currentChunk.length() > 0) {
-            chunks.add(currentChunk.toString().trim());
+        /**
+         * Trim the buffered paragraph; on an empty paragraph the buffer is reset
+         */
+        private boolean setBounds() {
+            start = trimStart(paragraph, 0, paragraph.length());
+            end = trimEnd(paragraph, start, paragraph.length());
+            if (start == end) {
+                paragraph.setLength(0);
+                return false;
+            }
+            return true;
         }
 
-        return chunks;
-    }
+        /**
+         * Close the current whitespace run.
+         * @return true if the run is a paragraph break, otherwise its normalized form is appended
+         */
+        private boolean endRun() {
+            int length = runLength;
+            runLength = 0;
 
-    /**
-     * Fallback: split by words when sentences are too long
-     */
-    private static List<String> splitByWords(String text, int maxChunkSize, int overlap) {
-        List<String> chunks = new ArrayList<>();
-        String[] words = text.split("\\s+");
+            if (length == 0) {
+                return false;
+            }
+            // Three or more whitespace characters become a blank line
+            if (length >= 3) {
+                return true;
+            }
 
-        StringBuilder currentChunk = new StringBuilder();
+            if (length == 1) {
+                paragraph.append(run[0] == '\r' ? '\n' : run[0]);
+                return false;
+            }
 
-        for (String word : words) {
-            if (currentChunk.length() + word.length() + 1 > maxChunkSize) {
-                if (currentChunk.length() > 0) {
-                    chunks.add(currentChunk.toString().trim());
-                    currentChunk = new StringBuilder();
-
-                    // Add overlap
-                    if (overlap > 0) {
-                        String[] prevWords = chunks.get(chunks.size() - 1).split("\\s+");
-                        int overlapWords = Math.min(overlap / 10, prevWords.length); // Rough estimate
-                        for (int i = Math.max(0, prevWords.length - overlapWords); i < prevWords.length; i++) {
-                            currentChunk.append(prevWords[i]).append(" ");
-                        }
-                    }
-                }
+            // \r\n -> \n, remaining \r -> \n, then two spaces -> one
+            if (run[0] == '\r' && run[1] == '\n') {
+                paragraph.append('\n');
+                return false;
             }
-            currentChunk.append(word).append(" ");
-        }
+            char first = run[0] == '\r' ? '\n' : run[0];
+            char second = run[1] == '\r' ? '\n' : run[1];
 
-        if (currentChunk.length() > 0) {
-            chunks.add(currentChunk.toString().trim());
+            if (first == '\n' && second == '\n') {
+                return true;
+            }
+            if (first == ' ' && second == ' ') {
+                paragraph.append(' ');
+            } else {
+                paragraph.append(first).append(second);
+            }
+            return false;
         }
 
-        return chunks;
+        private int read() {
+            if (text != null) {
+                return position < limit ? text.charAt(position++) : -1;
+            }
+
+            if (position == limit) {
+                try {
+                    limit = reader.read(buffer, 0, buffer.length);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Error reading text: " + e.getMessage(), e);
+                }
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
     }
 
 
@@ -230,5 +608,16 @@ public class DocumentLoader {
             System.out.println((i + 1) + ". " + chunks.get(i));
             System.out.println("   Length: " + chunks.get(i).length() + " characters\n");
         }
+
+        // Streaming mode must produce exactly the same chunks
+        String filePath = "data/sample.txt";
+        List<String> inMemory = splitText(loadTextFile(filePath), 500, 50);
+        List<String> streamed;
+        try (Stream<String> stream = streamChunks(filePath, 500, 50)) {
+            streamed = stream.toList();
+        }
+        System.out.println(inMemory.equals(streamed)
+                ? "✅ Streaming chunker matches splitText (" + streamed.size() + " chunks)"
+                : "❌ Streaming chunker differs from splitText");
     }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Dot product of a heap query with a vector stored off-heap, using SIMD when the
+ * jdk.incubator.vector module is available and a scalar loop otherwise.
+ */
+final class DotProduct {
+
+    private static final boolean SIMD = simdAvailable();
+
+    private DotProduct() {
+    }
+
+    static float dot(ByteBuffer vectors, int byteOffset, float[] query) {
+        return SIMD ? SimdDotProduct.dot(vectors, byteOffset, query) : scalarDot(vectors, byteOffset, query);
+    }
+
+    static float scalarDot(ByteBuffer vectors, int byteOffset, float[] query) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int bound = query.length - 3; i < bound; i += 4) {
+            int offset = byteOffset + i * Float.BYTES;
+            s0 += vectors.getFloat(offset) * query[i];
+            s1 += vectors.getFloat(offset + 4) * query[i + 1];
+            s2 += vectors.getFloat(offset + 8) * query[i + 2];
+            s3 += vectors.getFloat(offset + 12) * query[i + 3];
+        }
+        for (; i < query.length; i++) {
+            s0 += vectors.getFloat(byteOffset + i * Float.BYTES) * query[i];
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    /**
+     * Weighted sum of signed int8 codes, used for asymmetric scoring of quantized vectors
+     */
+    static float dotInt8(ByteBuffer codes, int byteOffset, float[] weights) {
+        return SIMD ? SimdDotProduct.dotInt8(codes, byteOffset, weights) : scalarDotInt8(codes, byteOffset, weights);
+    }
+
+    static float scalarDotInt8(ByteBuffer codes, int byteOffset, float[] weights) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int bound = weights.length - 3; i < bound; i += 4) {
+            s0 += codes.get(byteOffset + i) * weights[i];
+            s1 += codes.get(byteOffset + i + 1) * weights[i + 1];
+            s2 += codes.get(byteOffset + i + 2) * weights[i + 2];
+            s3 += codes.get(byteOffset + i + 3) * weights[i + 3];
+        }
+        for (; i < weights.length; i++) {
+            s0 += codes.get(byteOffset + i) * weights[i];
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    static String implementation() {
+        return SIMD ? "SIMD (" + SimdDotProduct.lanes() + " float lanes)" : "scalar";
+    }
+
+    private static boolean simdAvailable() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            ByteBuffer probe = ByteBuffer.allocateDirect(4 * Float.BYTES).order(ByteOrder.nativeOrder());
+            SimdDotProduct.dot(probe, 0, new float[4]);
+            SimdDotProduct.dotInt8(probe, 0, new float[4]);
+            return true;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+}
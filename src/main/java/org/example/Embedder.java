@@ -5,63 +5,62 @@ import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
-public class Embedder {
+public class Embedder implements AutoCloseable {
     private final EmbeddingModel embeddingModel;
+    private final EmbeddingCache cache; // null when caching is disabled
 
     public Embedder() {
-        this.embeddingModel = OllamaEmbeddingModel.builder()
-                .baseUrl("http://localhost:11434")
-                .modelName("nomic-embed-text")
-                .build();
+        this("nomic-embed-text");
     }
 
     public Embedder(String modelName) {
+        this(modelName, null);
+    }
+
+    /**
+     * @param cache persistent cache consulted before the model, or null for none
+     */
+    public Embedder(String modelName, EmbeddingCache cache) {
         this.embeddingModel = OllamaEmbeddingModel.builder()
                 .baseUrl("http://localhost:11434")
                 .modelName(modelName)
                 .build();
+        this.cache = cache;
     }
 
+    /**
+     * @return a read-only list view of the embedding, nothing is boxed up front
+     */
     public List<Float> embedText(String text) {
+        return embedVector(text);
+    }
+
+    public List<List<Float>> embedTexts(List<String> texts) {
+        return new ArrayList<>(embedVectors(texts));
+    }
+
+    public EmbeddingVector embedVector(String text) {
         try {
-            var response = embeddingModel.embed(text);
-            Embedding embedding = response.content();
-            float[] vectorArray = embedding.vector();
-
-            // تحويل float[] إلى List<Float>
-            List<Float> result = new java.util.ArrayList<>();
-            for (float value : vectorArray) {
-                result.add(value);
-            }
-            return result;
+            return EmbeddingVector.of(embedArray(text));
         } catch (Exception e) {
             System.err.println("Error embedding text: " + e.getMessage());
             throw new RuntimeException("Failed to embed text", e);
         }
     }
 
-    public List<List<Float>> embedTexts(List<String> texts) {
+    public List<EmbeddingVector> embedVectors(List<String> texts) {
         try {
-            // تحويل String إلى TextSegment
-            List<TextSegment> textSegments = texts.stream()
-                    .map(TextSegment::from)
-                    .collect(Collectors.toList());
-
-            var response = embeddingModel.embedAll(textSegments);
-            return response.content().stream()
-                    .map(embedding -> {
-                        float[] vectorArray = embedding.vector();
-                        List<Float> result = new ArrayList<>();
-                        for (float value : vectorArray) {
-                            result.add(value);
-                        }
-                        return result;
-                    })
-                    .collect(Collectors.toList());
+            List<float[]> arrays = embedArrays(texts);
+            List<EmbeddingVector> vectors = new ArrayList<>(arrays.size());
+            for (float[] vectorArray : arrays) {
+                vectors.add(EmbeddingVector.of(vectorArray));
+            }
+            return vectors;
         } catch (Exception e) {
             System.err.println("Error embedding texts: " + e.getMessage());
             throw new RuntimeException("Failed to embed texts", e);
@@ -71,9 +70,7 @@ public class Embedder {
     // دالة مساعدة للحصول على float[] مباشرة (أسرع للاستخدام مع Milvus)
     public float[] embedTextAsArray(String text) {
         try {
-            var response = embeddingModel.embed(text);
-            Embedding embedding = response.content();
-            return embedding.vector();
+            return embedArray(text);
         } catch (Exception e) {
             System.err.println("Error embedding text: " + e.getMessage());
             throw new RuntimeException("Failed to embed text", e);
@@ -82,21 +79,74 @@ public class Embedder {
 
     public List<float[]> embedTextsAsArrays(List<String> texts) {
         try {
-            // تحويل String إلى TextSegment
-            List<TextSegment> textSegments = texts.stream()
-                    .map(TextSegment::from)
-                    .collect(Collectors.toList());
-
-            var response = embeddingModel.embedAll(textSegments);
-            return response.content().stream()
-                    .map(Embedding::vector)
-                    .collect(Collectors.toList());
+            return embedArrays(texts);
         } catch (Exception e) {
             System.err.println("Error embedding texts: " + e.getMessage());
             throw new RuntimeException("Failed to embed texts", e);
         }
     }
 
+    private float[] embedArray(String text) throws IOException {
+        float[] vector = cache == null ? null : cache.get(text);
+        if (vector == null) {
+            vector = embeddingModel.embed(text).content().vector();
+            if (cache != null) {
+                cache.put(text, vector);
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * Embed a batch, sending only the cache misses to the model in one embedAll call
+     */
+    private List<float[]> embedArrays(List<String> texts) throws IOException {
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        List<Integer> missing = new ArrayList<>();
+
+        for (int i = 0; i < texts.size(); i++) {
+            float[] vector = cache == null ? null : cache.get(texts.get(i));
+            vectors.add(vector);
+            if (vector == null) {
+                missing.add(i);
+            }
+        }
+        if (missing.isEmpty()) {
+            return vectors;
+        }
+
+        // تحويل String إلى TextSegment
+        List<TextSegment> textSegments = missing.stream()
+                .map(i -> TextSegment.from(texts.get(i)))
+                .collect(Collectors.toList());
+
+        List<Embedding> embeddings = embeddingModel.embedAll(textSegments).content();
+        if (embeddings.size() != missing.size()) {
+            throw new IllegalStateException("Expected " + missing.size() + " embeddings, got " + embeddings.size());
+        }
+
+        for (int j = 0; j < missing.size(); j++) {
+            int i = missing.get(j);
+            float[] vector = embeddings.get(j).vector();
+            vectors.set(i, vector);
+            if (cache != null) {
+                cache.put(texts.get(i), vector);
+            }
+        }
+        return vectors;
+    }
+
+    @Override
+    public void close() {
+        if (cache != null) {
+            try {
+                cache.close();
+            } catch (IOException e) {
+                System.err.println("Error closing embedding cache: " + e.getMessage());
+            }
+        }
+    }
+
     public static void main(String[] args) {
         System.out.println("Testing Embedder...");
 
@@ -0,0 +1,190 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent single-text embedding requests into embedAll batches.
+ *
+ * A dispatcher thread collects requests until the batch is full or the oldest request
+ * has waited maxWait, then sends them as one call and completes each caller's future.
+ * At most maxInFlight batches are outstanding; while they are busy new requests keep
+ * accumulating, so batches grow with the load instead of the number of HTTP requests.
+ */
+public class EmbeddingBatcher implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 32;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 5;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private final Embedder embedder;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final Semaphore inFlight;
+    private final BlockingQueue<Request> pending = new LinkedBlockingQueue<>();
+    private final ExecutorService senders;
+    private final Thread dispatcher;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private volatile boolean closed;
+
+    public EmbeddingBatcher(Embedder embedder) {
+        this(embedder, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_WAIT_MILLIS, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public EmbeddingBatcher(Embedder embedder, int maxBatchSize, long maxWaitMillis, int maxInFlight) {
+        if (maxBatchSize < 1 || maxWaitMillis < 0 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Batch size and in-flight limit must be positive");
+        }
+        this.embedder = embedder;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.senders = Executors.newFixedThreadPool(maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "embedding-batch-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.dispatcher = new Thread(this::dispatch, "embedding-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Queue a text for the next batch
+     */
+    public CompletableFuture<float[]> submit(String text) {
+        CompletableFuture<float[]> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IllegalStateException("Embedding batcher is closed"));
+            return future;
+        }
+        requests.incrementAndGet();
+        Request request = new Request(text, future);
+        pending.add(request);
+
+        // Lost a race with close(), nobody will pick the request up
+        if (closed && pending.remove(request)) {
+            future.completeExceptionally(new IllegalStateException("Embedding batcher is closed"));
+        }
+        return future;
+    }
+
+    /**
+     * Blocking variant with the same contract as {@link Embedder#embedTextAsArray(String)}
+     */
+    public float[] embed(String text) {
+        try {
+            return submit(text).join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Failed to embed text", e.getCause());
+        }
+    }
+
+    private void dispatch() {
+        List<Request> batch = List.of();
+        try {
+            while (!closed) {
+                batch = new ArrayList<>(maxBatchSize);
+                batch.add(pending.take());
+
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    Request next = pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                // Requests that arrive while we wait for a permit join the next batch
+                inFlight.acquire();
+                List<Request> ready = batch;
+                try {
+                    senders.execute(() -> send(ready));
+                } catch (RejectedExecutionException e) {
+                    // close() shut the senders down after we got the permit
+                    inFlight.release();
+                    failClosed(ready);
+                    return;
+                }
+                batch = List.of();
+            }
+        } catch (InterruptedException e) {
+            failClosed(batch);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void failClosed(List<Request> batch) {
+        for (Request request : batch) {
+            request.future().completeExceptionally(new IllegalStateException("Embedding batcher is closed"));
+        }
+    }
+
+    private void send(List<Request> batch) {
+        try {
+            // Identical texts in one batch are embedded once
+            Map<String, List<CompletableFuture<float[]>>> byText = new LinkedHashMap<>();
+            for (Request request : batch) {
+                byText.computeIfAbsent(request.text(), text -> new ArrayList<>()).add(request.future());
+            }
+
+            List<String> texts = new ArrayList<>(byText.keySet());
+            List<float[]> vectors = embedder.embedTextsAsArrays(texts);
+            batches.incrementAndGet();
+
+            for (int i = 0; i < texts.size(); i++) {
+                for (CompletableFuture<float[]> future : byText.get(texts.get(i))) {
+                    future.complete(vectors.get(i));
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error embedding batch of " + batch.size() + " queries: " + e.getMessage());
+            for (Request request : batch) {
+                request.future().completeExceptionally(e);
+            }
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+        senders.shutdown();
+
+        Request request;
+        while ((request = pending.poll()) != null) {
+            request.future().completeExceptionally(new IllegalStateException("Embedding batcher is closed"));
+        }
+        System.out.println("🧮 Embedding batcher closed: " + requests.get() + " requests in "
+                + batches.get() + " batches");
+    }
+
+    private record Request(String text, CompletableFuture<float[]> future) {
+    }
+}
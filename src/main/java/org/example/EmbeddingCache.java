@@ -0,0 +1,299 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Disk-backed embedding cache for one model, keyed by the SHA-256 of the text.
+ *
+ * Vectors live in a fixed-size memory-mapped file of slots (key, last access, float[dim]),
+ * so lookups never parse anything and a warm cache survives restarts. An in-memory LRU
+ * index maps keys to slots; when all slots are used the least recently used one is reused.
+ *
+ * That index lives in one process only, so the file is locked while open: a second
+ * process gets an IOException from {@link #open} and should embed without a cache.
+ */
+public class EmbeddingCache implements AutoCloseable {
+
+    public static final String DEFAULT_DIRECTORY = "data/embedding-cache";
+    public static final int DEFAULT_CAPACITY = 50_000;
+
+    private static final int MAGIC = 0x454D4243; // "EMBC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int KEY_SIZE = 32;
+    private static final byte[] EMPTY_KEY = new byte[KEY_SIZE];
+
+    // Files open in this JVM; a second channel must not be opened on them, as closing it
+    // would release the first one's lock
+    private static final Set<Path> OPEN_FILES = ConcurrentHashMap.newKeySet();
+
+    private final Path file;
+    private final int capacity;
+    private FileChannel lockChannel;
+
+    // key (hex) -> slot, in access order so the eldest entry is the LRU victim
+    private final LinkedHashMap<String, Integer> slots = new LinkedHashMap<>(16, 0.75f, true);
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int dimension;
+    private int slotSize;
+    private long clock;
+
+    private long hits;
+    private long misses;
+    private boolean bypassed; // The file could not be mapped, nothing is cached
+    private boolean mismatchReported;
+
+    private EmbeddingCache(Path file, int capacity) {
+        this.file = file;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Open the cache for a model in the default directory
+     */
+    public static EmbeddingCache open(String modelName) throws IOException {
+        return open(Paths.get(DEFAULT_DIRECTORY), modelName, DEFAULT_CAPACITY);
+    }
+
+    public static EmbeddingCache open(Path directory, String modelName, int capacity) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        Files.createDirectories(directory);
+
+        String fileName = modelName.replaceAll("[^A-Za-z0-9._-]", "_") + ".bin";
+        EmbeddingCache cache = new EmbeddingCache(directory.resolve(fileName), capacity);
+        cache.lock();
+        try {
+            cache.load();
+        } catch (IOException | RuntimeException e) {
+            cache.unlock();
+            throw e;
+        }
+        return cache;
+    }
+
+    /**
+     * Lock a file next to the cache file, which itself may not exist yet
+     */
+    private void lock() throws IOException {
+        if (!OPEN_FILES.add(file.toAbsolutePath().normalize())) {
+            throw new IOException(file + " is already open in this process");
+        }
+        try {
+            lockChannel = FileChannel.open(file.resolveSibling(file.getFileName() + ".lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (lockChannel.tryLock() == null) {
+                lockChannel.close();
+                throw new IOException(file + " is in use by another process");
+            }
+        } catch (IOException e) {
+            OPEN_FILES.remove(file.toAbsolutePath().normalize());
+            throw e;
+        }
+    }
+
+    private void unlock() throws IOException {
+        try {
+            lockChannel.close(); // Releases the lock
+        } finally {
+            OPEN_FILES.remove(file.toAbsolutePath().normalize());
+        }
+    }
+
+    /**
+     * Map an existing cache file; a file with another layout is discarded.
+     * A new file is only created once the first vector tells us the dimension.
+     */
+    private void load() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            in.read(header, 0);
+        }
+        if (header.position() < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                || header.getInt(12) != capacity) {
+            System.out.println("⚠️ Discarding incompatible embedding cache " + file);
+            Files.delete(file);
+            return;
+        }
+
+        map(header.getInt(8));
+
+        // Rebuild the LRU order from the persisted access times
+        long[][] used = new long[capacity][];
+        int count = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (isEmpty(slot)) {
+                freeSlots.add(slot);
+            } else {
+                used[count++] = new long[]{buffer.getLong(offset(slot) + KEY_SIZE), slot};
+            }
+        }
+        Arrays.sort(used, 0, count, (a, b) -> Long.compare(a[0], b[0]));
+        for (int i = 0; i < count; i++) {
+            int slot = (int) used[i][1];
+            slots.put(readKey(slot), slot);
+            clock = Math.max(clock, used[i][0]);
+        }
+
+        System.out.println("📦 Embedding cache loaded: " + count + " vectors from " + file);
+    }
+
+    private void map(int dimension) throws IOException {
+        this.dimension = dimension;
+        this.slotSize = KEY_SIZE + Long.BYTES + dimension * Float.BYTES;
+
+        long size = HEADER_SIZE + (long) capacity * slotSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cache of " + capacity + " x " + dimension
+                    + " floats does not fit in one mapping");
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, dimension);
+        buffer.putInt(12, capacity);
+    }
+
+    /**
+     * @return the cached vector, or null on a miss
+     */
+    public synchronized float[] get(String text) {
+        Integer slot = buffer == null ? null : slots.get(IngestionManifest.hash(text));
+        if (slot == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+
+        int offset = offset(slot);
+        buffer.putLong(offset + KEY_SIZE, ++clock);
+
+        float[] vector = new float[dimension];
+        buffer.slice(offset + KEY_SIZE + Long.BYTES, dimension * Float.BYTES).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    /**
+     * Cache a vector. One of another dimension than the file is not cached, nor is anything
+     * if the file is too large to map; the embedding goes on without the cache.
+     */
+    public synchronized void put(String text, float[] vector) throws IOException {
+        if (bypassed) {
+            return;
+        }
+        if (buffer == null) {
+            try {
+                map(vector.length);
+            } catch (IllegalArgumentException e) {
+                bypass(e.getMessage());
+                return;
+            }
+            for (int slot = 0; slot < capacity; slot++) {
+                freeSlots.add(slot);
+            }
+        }
+        if (vector.length != dimension) {
+            if (!mismatchReported) {
+                mismatchReported = true;
+                System.err.println("⚠️ Not caching " + vector.length + "-dimension embeddings in " + file
+                        + ", which holds " + dimension);
+            }
+            return;
+        }
+
+        String key = IngestionManifest.hash(text);
+        Integer slot = slots.get(key);
+        if (slot == null) {
+            slot = freeSlots.isEmpty() ? evict() : freeSlots.poll();
+            slots.put(key, slot);
+        }
+
+        // Write the key last so a half-written slot is never attributed to any text
+        int offset = offset(slot);
+        buffer.put(offset, EMPTY_KEY);
+        buffer.slice(offset + KEY_SIZE + Long.BYTES, dimension * Float.BYTES).asFloatBuffer().put(vector);
+        buffer.putLong(offset + KEY_SIZE, ++clock);
+        buffer.put(offset, HexFormat.of().parseHex(key));
+    }
+
+    private void bypass(String reason) {
+        bypassed = true;
+        System.err.println("⚠️ Not caching embeddings in " + file + ": " + reason);
+    }
+
+    /**
+     * Drop the least recently used entry and return its slot
+     */
+    private int evict() {
+        Map.Entry<String, Integer> eldest = slots.entrySet().iterator().next();
+        slots.remove(eldest.getKey());
+        return eldest.getValue();
+    }
+
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private int offset(int slot) {
+        return HEADER_SIZE + slot * slotSize;
+    }
+
+    private boolean isEmpty(int slot) {
+        return buffer.slice(offset(slot), KEY_SIZE).equals(ByteBuffer.wrap(EMPTY_KEY));
+    }
+
+    private String readKey(int slot) {
+        byte[] key = new byte[KEY_SIZE];
+        buffer.get(offset(slot), key);
+        return HexFormat.of().formatHex(key);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        if (lockChannel.isOpen()) {
+            unlock();
+        }
+        System.out.println("📦 Embedding cache closed: " + slots.size() + " vectors, "
+                + hits + " hits, " + misses + " misses");
+    }
+}
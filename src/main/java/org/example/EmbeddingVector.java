@@ -0,0 +1,71 @@
+package org.example;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Read-only embedding backed by a primitive float[].
+ *
+ * It is a {@code List<Float>} so it can be handed straight to the Milvus SDK, but
+ * nothing is boxed until the SDK reads an element, and code that knows about the type
+ * uses {@link #getFloat(int)} or {@link #array()} without boxing at all.
+ */
+public final class EmbeddingVector extends AbstractList<Float> implements RandomAccess {
+
+    private final float[] values;
+
+    private EmbeddingVector(float[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Wrap an array without copying; the caller must not modify it afterwards
+     */
+    public static EmbeddingVector of(float[] values) {
+        return new EmbeddingVector(values);
+    }
+
+    public float getFloat(int index) {
+        return values[index];
+    }
+
+    /**
+     * The backing array, shared and not to be modified
+     */
+    public float[] array() {
+        return values;
+    }
+
+    public int dimension() {
+        return values.length;
+    }
+
+    @Override
+    public Float get(int index) {
+        return values[index];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other instanceof EmbeddingVector vector) {
+            return Arrays.equals(values, vector.values);
+        }
+        return super.equals(other);
+    }
+
+    @Override
+    public int hashCode() {
+        // Same value as AbstractList.hashCode, without boxing
+        int hash = 1;
+        for (float value : values) {
+            hash = 31 * hash + Float.hashCode(value);
+        }
+        return hash;
+    }
+}
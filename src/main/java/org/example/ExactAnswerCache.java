@@ -0,0 +1,146 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers to questions asked before with the same text, checked before retrieval.
+ *
+ * The key is the question normalized by {@link ArabicTextNormalizer}, without trailing
+ * question marks, so "ما هي الإضافة؟" and "ما هى الاضافة" hit the same entry. Entries
+ * expire after the TTL and are all dropped when {@link CollectionVersion} shows that
+ * ingestion changed the collection. The time the pipeline originally took is counted as
+ * saved on every hit.
+ */
+public class ExactAnswerCache {
+
+    public static final int DEFAULT_CAPACITY = 1_000;
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+
+    private record Entry(RAGSystem.RAGResponse response, long costMillis, long storedAt) {
+    }
+
+    private final long ttlNanos;
+    private final CollectionVersion version;
+
+    // Guarded by entries
+    private final Map<String, Entry> entries;
+    private long seenVersion;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong savedMillis = new AtomicLong();
+
+    public ExactAnswerCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_TTL, new CollectionVersion());
+    }
+
+    public ExactAnswerCache(int capacity, Duration ttl, CollectionVersion version) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.ttlNanos = ttl.toNanos();
+        this.version = version;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.seenVersion = version.current();
+    }
+
+    /**
+     * The stored response to this question, or null
+     */
+    public RAGSystem.RAGResponse get(String question) {
+        String key = keyOf(question);
+        long current = version.current();
+
+        synchronized (entries) {
+            if (current != seenVersion) {
+                entries.clear();
+                seenVersion = current;
+            }
+            Entry entry = current < 0 ? null : entries.get(key);
+            if (entry != null && System.nanoTime() - entry.storedAt() > ttlNanos) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            savedMillis.addAndGet(entry.costMillis());
+            return entry.response();
+        }
+    }
+
+    /**
+     * The collection version to pass to {@link #put}, read before retrieval
+     */
+    public long currentVersion() {
+        return version.current();
+    }
+
+    /**
+     * @param costMillis how long retrieval and generation took for this response
+     * @param builtAtVersion {@link #currentVersion()} from before retrieval; the response
+     *                       is dropped if the collection has changed since
+     */
+    public void put(String question, RAGSystem.RAGResponse response, long costMillis, long builtAtVersion) {
+        long current = version.current();
+        if (builtAtVersion < 0 || builtAtVersion != current) {
+            return;
+        }
+        synchronized (entries) {
+            if (current == seenVersion) {
+                entries.put(keyOf(question), new Entry(response, costMillis, System.nanoTime()));
+            }
+        }
+    }
+
+    static String keyOf(String question) {
+        String key = ArabicTextNormalizer.normalize(question);
+        int end = key.length();
+        while (end > 0 && "?؟!.".indexOf(key.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return key.substring(0, end).trim();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    /**
+     * Retrieval and generation time not spent thanks to hits
+     */
+    public long getSavedMillis() {
+        return savedMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses (%.1f%% hit rate), %d cached, %.1f s saved",
+                getHits(), getMisses(), getHitRate() * 100, size(), getSavedMillis() / 1000.0);
+    }
+}
@@ -0,0 +1,123 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Queries per second of exact search ({@link FlatVectorStore}) versus corpus size,
+ * compared with the approximate {@link HnswVectorStore} and its recall@k.
+ *
+ * Flat search cost grows linearly with the corpus while HNSW stays roughly flat, so the
+ * crossover row shows where an approximate index starts to pay off. HNSW is only built
+ * up to hnswMax vectors because its build dominates the run time.
+ *
+ * Run with --add-modules jdk.incubator.vector to measure the SIMD path.
+ *
+ * Usage: FlatIndexBenchmark [sizes, e.g. 1000,10000,100000] [dimension] [queries] [hnswMax]
+ */
+public class FlatIndexBenchmark {
+
+    private static final int TOP_K = 10;
+
+    public static void main(String[] args) {
+        String[] sizes = (args.length > 0 ? args[0] : "1000,10000,50000").split(",");
+        int dimension = args.length > 1 ? Integer.parseInt(args[1]) : 768;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int hnswMax = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+
+        System.out.printf("📊 Flat index benchmark: %d dimensions, %d queries, top-%d, dot product: %s, %d cores%n",
+                dimension, queries, TOP_K, DotProduct.implementation(), Runtime.getRuntime().availableProcessors());
+
+        Random random = new Random(42);
+        float[][] queryVectors = new float[queries][];
+        for (int i = 0; i < queries; i++) {
+            queryVectors[i] = randomVector(random, dimension);
+        }
+
+        System.out.println("━".repeat(72));
+        System.out.printf("%10s %14s %14s %14s %14s%n", "vectors", "flat q/s", "flat ms/q", "hnsw q/s", "hnsw recall");
+
+        Integer crossover = null;
+        for (String size : sizes) {
+            int count = Integer.parseInt(size.trim());
+            List<String> texts = new ArrayList<>(count);
+            List<EmbeddingVector> vectors = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                texts.add("document " + i);
+                vectors.add(EmbeddingVector.of(randomVector(random, dimension)));
+            }
+
+            try (FlatVectorStore flat = new FlatVectorStore()) {
+                flat.add(texts, vectors);
+                double flatQps = queriesPerSecond(flat, queryVectors);
+
+                String hnswQps = "-";
+                String recall = "-";
+                if (count <= hnswMax) {
+                    try (HnswVectorStore hnsw = new HnswVectorStore()) {
+                        hnsw.add(texts, vectors);
+                        double qps = queriesPerSecond(hnsw, queryVectors);
+                        hnswQps = String.format("%.0f", qps);
+                        recall = String.format("%.3f", recall(flat, hnsw, queryVectors));
+                        if (crossover == null && qps > flatQps) {
+                            crossover = count;
+                        }
+                    }
+                }
+
+                System.out.printf("%10d %14.0f %14.3f %14s %14s%n",
+                        count, flatQps, 1000 / flatQps, hnswQps, recall);
+            }
+        }
+        System.out.println("━".repeat(72));
+
+        if (crossover != null) {
+            System.out.println("➡️ HNSW is faster from " + crossover + " vectors; below that exact search wins");
+        } else {
+            System.out.println("➡️ Exact search was at least as fast at every measured HNSW size");
+        }
+    }
+
+    private static double queriesPerSecond(VectorStore store, float[][] queryVectors) {
+        for (int i = 0; i < Math.min(50, queryVectors.length); i++) {
+            store.search(queryVectors[i], TOP_K); // warm up
+        }
+        long start = System.nanoTime();
+        for (float[] query : queryVectors) {
+            store.search(query, TOP_K);
+        }
+        return queryVectors.length / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Fraction of the exact top-k that the approximate index also returns
+     */
+    private static double recall(VectorStore exact, VectorStore approximate, float[][] queryVectors) {
+        int found = 0;
+        int total = 0;
+        for (float[] query : queryVectors) {
+            Set<String> truth = new HashSet<>();
+            for (VectorStore.SearchHit hit : exact.search(query, TOP_K)) {
+                truth.add(hit.text());
+            }
+            for (VectorStore.SearchHit hit : approximate.search(query, TOP_K)) {
+                if (truth.contains(hit.text())) {
+                    found++;
+                }
+            }
+            total += truth.size();
+        }
+        return total == 0 ? 0 : (double) found / total;
+    }
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,241 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * Exact (brute-force) cosine search over vectors stored off-heap.
+ *
+ * Normalized vectors are packed into direct ByteBuffers of {@code blockVectors} vectors
+ * each, so the heap only holds the texts. A search scores every vector with
+ * {@link DotProduct} (SIMD when jdk.incubator.vector is present), scans the blocks in
+ * parallel and keeps the best k in primitive heaps. Recall is perfect by construction.
+ *
+ * Large collections need -XX:MaxDirectMemorySize above the vector data size
+ * (1M x 768 floats is about 3 GB).
+ */
+public class FlatVectorStore implements VectorStore {
+
+    public static final int DEFAULT_BLOCK_VECTORS = 4096;
+
+    private final int blockVectors;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock
+    private final List<ByteBuffer> blocks = new ArrayList<>();
+    private final List<String> texts = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private int dimension = -1;
+
+    public FlatVectorStore() {
+        this(DEFAULT_BLOCK_VECTORS);
+    }
+
+    /**
+     * @param blockVectors vectors per off-heap block, also the unit of parallel work
+     */
+    public FlatVectorStore(int blockVectors) {
+        if (blockVectors < 1) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.blockVectors = blockVectors;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return texts.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Long> add(List<String> documents, List<EmbeddingVector> vectors) {
+        if (documents.size() != vectors.size()) {
+            System.err.println("Mismatch between documents and embeddings count");
+            return null;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (dimension < 0 && !vectors.isEmpty()) {
+                dimension = vectors.get(0).dimension();
+            }
+            for (EmbeddingVector vector : vectors) {
+                if (vector.dimension() != dimension) {
+                    System.err.println("Error inserting batch: expected " + dimension
+                            + " dimensions, got " + vector.dimension());
+                    return null;
+                }
+            }
+
+            List<Long> ids = new ArrayList<>(documents.size());
+            for (int i = 0; i < documents.size(); i++) {
+                int id = texts.size();
+                int slot = id % blockVectors;
+                if (slot == 0) {
+                    blocks.add(ByteBuffer.allocateDirect(blockVectors * dimension * Float.BYTES)
+                            .order(ByteOrder.nativeOrder()));
+                }
+                blocks.get(id / blockVectors).asFloatBuffer()
+                        .put(slot * dimension, HnswVectorStore.normalize(vectors.get(i).array()));
+                texts.add(documents.get(i));
+                ids.add((long) id);
+            }
+            return ids;
+
+        } catch (OutOfMemoryError e) {
+            System.err.println("Error inserting batch: out of direct memory (" + e.getMessage() + ")");
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<SearchHit> search(float[] query, int topK) {
+        lock.readLock().lock();
+        try {
+            int size = texts.size();
+            if (size == 0 || topK < 1) {
+                return List.of();
+            }
+            if (query.length != dimension) {
+                System.err.println("❌ Query has " + query.length + " dimensions, index has " + dimension);
+                return SEARCH_FAILED;
+            }
+
+            float[] normalized = HnswVectorStore.normalize(query);
+            int blockCount = blocks.size();
+
+            TopK best = blockCount == 1
+                    ? scanBlock(0, normalized, topK, size)
+                    : IntStream.range(0, blockCount).parallel()
+                            .mapToObj(block -> scanBlock(block, normalized, topK, size))
+                            .reduce(TopK::merge)
+                            .orElseGet(() -> new TopK(topK));
+
+            return best.drain(texts);
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * All queries in one pass over the vectors, so each block is read from memory once
+     * per batch instead of once per query
+     */
+    @Override
+    public List<List<SearchHit>> searchBatch(List<float[]> queries, int topK) {
+        lock.readLock().lock();
+        try {
+            int size = texts.size();
+            if (size == 0 || topK < 1 || queries.isEmpty()) {
+                List<List<SearchHit>> empty = new ArrayList<>(queries.size());
+                queries.forEach(query -> empty.add(List.of()));
+                return empty;
+            }
+
+            float[][] normalized = new float[queries.size()][];
+            for (int q = 0; q < normalized.length; q++) {
+                if (queries.get(q).length != dimension) {
+                    System.err.println("❌ Query has " + queries.get(q).length + " dimensions, index has " + dimension);
+                    return VectorStore.super.searchBatch(queries, topK); // Per-query path reports each mismatch
+                }
+                normalized[q] = HnswVectorStore.normalize(queries.get(q));
+            }
+
+            TopK[] best = IntStream.range(0, blocks.size()).parallel()
+                    .mapToObj(block -> scanBlock(block, normalized, topK, size))
+                    .reduce((left, right) -> {
+                        for (int q = 0; q < left.length; q++) {
+                            left[q].merge(right[q]);
+                        }
+                        return left;
+                    })
+                    .orElseThrow();
+
+            List<List<SearchHit>> results = new ArrayList<>(best.length);
+            for (TopK heap : best) {
+                results.add(heap.drain(texts));
+            }
+            return results;
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private TopK[] scanBlock(int block, float[][] queries, int k, int size) {
+        ByteBuffer vectors = blocks.get(block);
+        int first = block * blockVectors;
+        int end = Math.min(size, first + blockVectors);
+        int stride = dimension * Float.BYTES;
+
+        TopK[] best = new TopK[queries.length];
+        for (int q = 0; q < queries.length; q++) {
+            best[q] = new TopK(k);
+        }
+        for (int id = first; id < end; id++) {
+            if (deleted.get(id)) {
+                continue;
+            }
+            int offset = (id - first) * stride;
+            for (int q = 0; q < queries.length; q++) {
+                best[q].offer(DotProduct.dot(vectors, offset, queries[q]), id);
+            }
+        }
+        return best;
+    }
+
+    private TopK scanBlock(int block, float[] query, int k, int size) {
+        ByteBuffer vectors = blocks.get(block);
+        int first = block * blockVectors;
+        int end = Math.min(size, first + blockVectors);
+        int stride = dimension * Float.BYTES;
+
+        TopK best = new TopK(k);
+        for (int id = first; id < end; id++) {
+            if (deleted.get(id)) {
+                continue;
+            }
+            best.offer(DotProduct.dot(vectors, (id - first) * stride, query), id);
+        }
+        return best;
+    }
+
+    @Override
+    public boolean delete(List<Long> ids) {
+        lock.writeLock().lock();
+        try {
+            for (long id : ids) {
+                if (id >= 0 && id < texts.size()) {
+                    deleted.set((int) id);
+                }
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            // Direct buffers are freed once unreachable
+            blocks.clear();
+            texts.clear();
+            deleted.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.example;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
@@ -8,7 +9,16 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Generator class for RAG - integrates with Ollama to generate responses
@@ -17,23 +27,64 @@ import java.util.List;
  */
 public class Generator {
 
+    /**
+     * A streamed answer with its timings; tokens are model tokens as counted by Ollama
+     * when it reports them, otherwise stream chunks. promptTokens is 0 if not reported.
+     */
+    public record StreamedAnswer(String text, boolean complete, long timeToFirstTokenMillis,
+                                 long totalMillis, int tokens, double tokensPerSecond, int promptTokens) {
+    }
+
+    public static final String DEFAULT_OLLAMA_URL = "http://localhost:11434/api/generate";
+    public static final String DEFAULT_MODEL = "llama3.2"; // أو أي model عندك
+
+    // Generations at once; Ollama serves OLLAMA_NUM_PARALLEL requests per model in parallel
+    // and more only share the same GPU, so everyone slows down together
+    public static final int DEFAULT_MAX_CONCURRENT = 2;
+    public static final int DEFAULT_MAX_QUEUED = 16;
+
+    private static final String BUSY_MESSAGE = "عذراً، الخادم مشغول حالياً بأسئلة أخرى. حاول مرة أخرى بعد قليل.";
+
     private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
     private final String ollamaUrl;
     private final String model;
+    private final ConcurrencyLimiter limiter;
+    private final TokenEstimator tokenEstimator;
+    private final ContextPacker contextPacker;
+    private volatile double prefillTokensPerSecond;
 
     public Generator() {
-        this.httpClient = HttpClient.newHttpClient();
-        this.objectMapper = new ObjectMapper();
-        this.ollamaUrl = "http://localhost:11434/api/generate";
-        this.model = "llama3.2"; // أو أي model عندك
+        this(DEFAULT_OLLAMA_URL, DEFAULT_MODEL);
     }
 
     public Generator(String ollamaUrl, String model) {
-        this.httpClient = HttpClient.newHttpClient();
+        this(ollamaUrl, model, DEFAULT_MAX_CONCURRENT, DEFAULT_MAX_QUEUED);
+    }
+
+    /**
+     * @param maxConcurrent generations sent to Ollama at once
+     * @param maxQueued generations waiting for a slot before new ones are turned away
+     */
+    public Generator(String ollamaUrl, String model, int maxConcurrent, int maxQueued) {
+        this(ollamaUrl, model, maxConcurrent, maxQueued, ContextPacker.DEFAULT_TOKEN_BUDGET);
+    }
+
+    /**
+     * @param contextTokens model tokens the retrieved context may take in the prompt
+     */
+    public Generator(String ollamaUrl, String model, int maxConcurrent, int maxQueued, int contextTokens) {
+        // Ollama speaks plain HTTP/1.1; skip the h2c upgrade attempt on every connection
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
         this.objectMapper = new ObjectMapper();
         this.ollamaUrl = ollamaUrl;
         this.model = model;
+        this.limiter = new ConcurrencyLimiter("Ollama generation", maxConcurrent, maxQueued);
+        this.tokenEstimator = new TokenEstimator();
+        this.contextPacker = new ContextPacker(tokenEstimator, contextTokens);
     }
 
     /**
@@ -43,14 +94,16 @@ public class Generator {
      * @return Generated response
      */
     public String generateWithContext(String query, List<String> context) {
-        if (context.isEmpty()) {
-            return generateDirectResponse(query + "\n(ملاحظة: لم يتم العثور على سياق مناسب في قاعدة البيانات)");
-        }
-
-        String contextText = String.join("\n\n", context);
-        String prompt = buildRAGPrompt(query, contextText);
+        return callOllama(promptFor(query, context));
+    }
 
-        return callOllama(prompt);
+    /**
+     * Non-blocking {@link #generateWithContext}: waits for a generation slot without
+     * holding a thread. Fails with RejectedExecutionException when too many generations
+     * are already waiting; any other failure gives the usual error answer.
+     */
+    public CompletableFuture<String> generateAsync(String query, List<String> context) {
+        return callOllamaAsync(promptFor(query, context));
     }
 
     /**
@@ -61,15 +114,53 @@ public class Generator {
     }
 
     /**
-     * Build RAG prompt template
+     * Like {@link #generateWithContext}, but hands each token to onToken as Ollama
+     * produces it. Returns once the answer is complete.
      */
-    private String buildRAGPrompt(String query, String context) {
-        // Limit context length to avoid exceeding model token limits
-        int maxContextLength = 2000; // you can adjust based on your model's token limit
-        if (context.length() > maxContextLength) {
-            context = context.substring(0, maxContextLength) + "... [context truncated]";
+    public StreamedAnswer streamWithContext(String query, List<String> context, Consumer<String> onToken) {
+        return streamOllama(promptFor(query, context), onToken);
+    }
+
+    public StreamedAnswer streamDirectResponse(String query, Consumer<String> onToken) {
+        return streamOllama(query, onToken);
+    }
+
+    /**
+     * Tokens of the answer as a Flow.Publisher. Generation starts for each subscriber
+     * when it subscribes, and a slow subscriber slows the reading of the stream. A failed
+     * generation completes the subscriber with an IOException.
+     */
+    public Flow.Publisher<String> publishWithContext(String query, List<String> context) {
+        String prompt = promptFor(query, context);
+        return subscriber -> {
+            SubmissionPublisher<String> publisher = new SubmissionPublisher<>();
+            publisher.subscribe(subscriber);
+            CompletableFuture.runAsync(() -> {
+                StreamedAnswer answer = streamOllama(prompt, publisher::submit);
+                if (answer.complete()) {
+                    publisher.close();
+                } else {
+                    publisher.closeExceptionally(new IOException(answer.text()));
+                }
+            });
+        };
+    }
+
+    private String promptFor(String query, List<String> context) {
+        if (context.isEmpty()) {
+            return query + "\n(ملاحظة: لم يتم العثور على سياق مناسب في قاعدة البيانات)";
         }
+        ContextPacker.Packed packed = contextPacker.pack(context);
+        System.out.printf("📦 Context: %d of %d chunks, ~%d tokens (budget %d), %d overlapping chars removed%n",
+                packed.chunks().size(), context.size(), packed.tokens(), contextPacker.getTokenBudget(),
+                packed.overlapCharsRemoved());
+        return buildRAGPrompt(query, String.join("\n\n", packed.chunks()));
+    }
 
+    /**
+     * Build RAG prompt template
+     */
+    private String buildRAGPrompt(String query, String context) {
         return String.format("""
         You are a smart assistant that answers questions in Arabic only, based strictly on the information provided below.
 
@@ -94,46 +185,177 @@ public class Generator {
      */
     private String callOllama(String prompt) {
         try {
-            // Build request body
-            ObjectNode requestBody = objectMapper.createObjectNode();
-            requestBody.put("model", model);
-            requestBody.put("prompt", prompt);
-            requestBody.put("stream", false);
-            requestBody.put("temperature", 0.7);
-
-            // Create HTTP request
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(ollamaUrl))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody.toString()))
-                    .build();
-
-            // Send request
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-            // Handle HTTP status
-            if (response.statusCode() != 200) {
-                return "خطأ في الاتصال مع نموذج اللغة (HTTP " + response.statusCode() + ")";
-            }
+            return callOllamaAsync(prompt).get();
+        } catch (ExecutionException e) {
+            System.err.println("⚠️ " + e.getCause().getMessage());
+            return BUSY_MESSAGE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "عذراً، تم إيقاف إنتاج الإجابة.";
+        }
+    }
 
+    private CompletableFuture<String> callOllamaAsync(String prompt) {
+        return limiter.submit(() -> httpClient
+                .sendAsync(buildRequest(prompt, false), HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> parseResponse(prompt, response))
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    System.err.println("Error calling Ollama: " + cause.getMessage());
+                    return "عذراً، حدث خطأ أثناء إنتاج الإجابة: " + cause.getMessage();
+                }));
+    }
+
+    private String parseResponse(String prompt, HttpResponse<String> response) {
+        // Handle HTTP status
+        if (response.statusCode() != 200) {
+            return "خطأ في الاتصال مع نموذج اللغة (HTTP " + response.statusCode() + ")";
+        }
+
+        try {
             // Parse response JSON safely
             ObjectNode responseJson = (ObjectNode) objectMapper.readTree(response.body());
 
             if (responseJson.hasNonNull("response")) {
+                observePrompt(prompt, responseJson);
                 return responseJson.get("response").asText().trim();
             } else if (responseJson.hasNonNull("error")) {
                 return "خطأ من نموذج اللغة: " + responseJson.get("error").asText();
             } else {
                 return "لم يتم استلام إجابة من نموذج اللغة.";
             }
-
-        } catch (IOException | InterruptedException e) {
-            Thread.currentThread().interrupt(); // Restore interrupt status if needed
-            System.err.println("Error calling Ollama: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Error parsing Ollama response: " + e.getMessage());
             return "عذراً، حدث خطأ أثناء إنتاج الإجابة: " + e.getMessage();
         }
     }
 
+    /**
+     * Call Ollama with "stream": true and parse its NDJSON reply line by line: one object
+     * per chunk with a "response" piece, the last one with "done" and the eval counters
+     */
+    private StreamedAnswer streamOllama(String prompt, Consumer<String> onToken) {
+        long start = System.nanoTime();
+        long firstToken = -1;
+        int chunks = 0;
+        StringBuilder text = new StringBuilder();
+
+        try (ConcurrencyLimiter.Permit permit = limiter.acquireBlocking()) {
+            if (permit.getQueueMillis() > 0) {
+                System.out.println("⏳ Waited " + permit.getQueueMillis() + " ms for a free generation slot");
+            }
+            HttpResponse<Stream<String>> response = httpClient.send(buildRequest(prompt, true),
+                    HttpResponse.BodyHandlers.ofLines());
+
+            try (Stream<String> lines = response.body()) {
+                if (response.statusCode() != 200) {
+                    return failed("خطأ في الاتصال مع نموذج اللغة (HTTP " + response.statusCode() + ")", start);
+                }
+
+                for (String line : (Iterable<String>) lines::iterator) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    ObjectNode chunk = (ObjectNode) objectMapper.readTree(line);
+
+                    if (chunk.hasNonNull("error")) {
+                        return failed("خطأ من نموذج اللغة: " + chunk.get("error").asText(), start);
+                    }
+                    String token = chunk.path("response").asText("");
+                    if (!token.isEmpty()) {
+                        if (firstToken < 0) {
+                            firstToken = System.nanoTime();
+                        }
+                        chunks++;
+                        text.append(token);
+                        onToken.accept(token);
+                    }
+
+                    if (chunk.path("done").asBoolean(false)) {
+                        long total = System.nanoTime() - start;
+                        int tokens = chunk.path("eval_count").asInt(chunks);
+                        long evalNanos = chunk.path("eval_duration").asLong(0);
+                        // Ollama's own eval time excludes prompt processing, like time after the first token
+                        long generationNanos = evalNanos > 0 ? evalNanos
+                                : System.nanoTime() - (firstToken < 0 ? start : firstToken);
+                        double tokensPerSecond = tokens * 1e9 / Math.max(1, generationNanos);
+                        int promptTokens = chunk.path("prompt_eval_count").asInt(0);
+                        observePrompt(prompt, chunk);
+                        return new StreamedAnswer(text.toString().trim(), true,
+                                firstToken < 0 ? -1 : (firstToken - start) / 1_000_000, total / 1_000_000,
+                                tokens, tokensPerSecond, promptTokens);
+                    }
+                }
+            }
+            return failed(text.isEmpty()
+                    ? "لم يتم استلام إجابة من نموذج اللغة."
+                    : text.toString().trim() + " [انقطع الاتصال قبل اكتمال الإجابة]", start);
+
+        } catch (RejectedExecutionException e) {
+            System.err.println("⚠️ " + e.getMessage());
+            return failed(BUSY_MESSAGE, start);
+        } catch (IOException e) {
+            System.err.println("Error streaming from Ollama: " + e.getMessage());
+            return failed("عذراً، حدث خطأ أثناء إنتاج الإجابة: " + e.getMessage(), start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed("عذراً، تم إيقاف إنتاج الإجابة.", start);
+        }
+    }
+
+    /**
+     * Running, waiting and rejected generations with their queue times
+     */
+    public ConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Calibrate the token estimate and the prefill rate from Ollama's prompt counters
+     */
+    private void observePrompt(String prompt, JsonNode counters) {
+        int promptTokens = counters.path("prompt_eval_count").asInt(0);
+        long promptNanos = counters.path("prompt_eval_duration").asLong(0);
+        tokenEstimator.observe(prompt, promptTokens);
+        if (promptTokens > 0 && promptNanos > 0) {
+            double rate = promptTokens * 1e9 / promptNanos;
+            double previous = prefillTokensPerSecond;
+            prefillTokensPerSecond = previous == 0 ? rate : previous + 0.2 * (rate - previous);
+        }
+    }
+
+    /**
+     * Prompt tokens Ollama processes per second, as seen recently; 0 before the first answer
+     */
+    public double getPrefillTokensPerSecond() {
+        return prefillTokensPerSecond;
+    }
+
+    /**
+     * Token estimate used to pack the context, calibrated by the prompts sent so far
+     */
+    public TokenEstimator getTokenEstimator() {
+        return tokenEstimator;
+    }
+
+    private static StreamedAnswer failed(String message, long start) {
+        return new StreamedAnswer(message, false, -1, (System.nanoTime() - start) / 1_000_000, 0, 0, 0);
+    }
+
+    private HttpRequest buildRequest(String prompt, boolean stream) {
+        ObjectNode requestBody = objectMapper.createObjectNode();
+        requestBody.put("model", model);
+        requestBody.put("prompt", prompt);
+        requestBody.put("stream", stream);
+        requestBody.put("temperature", 0.7);
+
+        return HttpRequest.newBuilder()
+                .uri(URI.create(ollamaUrl))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(requestBody.toString()))
+                .build();
+    }
+
     /**
      * Test method for the generator
      */
@@ -152,5 +374,15 @@ public class Generator {
 
         String ragResponse = generator.generateWithContext(" ما هو LangChain4j ؟ ", context);
         System.out.println("\nRAG Response: " + ragResponse);
+
+        // Test streaming generation
+        System.out.print("\nStreamed Response: ");
+        StreamedAnswer streamed = generator.streamWithContext(" ما هو LangChain4j ؟ ", context, token -> {
+            System.out.print(token);
+            System.out.flush();
+        });
+        System.out.printf("%n(first token %d ms, %d tokens, %.1f tokens/s, %d prompt tokens)%n",
+                streamed.timeToFirstTokenMillis(), streamed.tokens(), streamed.tokensPerSecond(),
+                streamed.promptTokens());
     }
 }
\ No newline at end of file
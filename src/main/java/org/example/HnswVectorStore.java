@@ -0,0 +1,719 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+/**
+ * Embedded, in-process HNSW index (Malkov &amp; Yashunin) implementing {@link VectorStore}.
+ *
+ * Vectors are normalized on insert so cosine similarity is a plain dot product.
+ * Inserts and searches run concurrently: each node keeps its neighbor lists in an
+ * AtomicReferenceArray of int[] that are replaced copy-on-write under the node's monitor,
+ * so searches never lock. {@link #add} builds batches in parallel across cores.
+ * Deleted documents stay in the graph for navigation but are never returned.
+ */
+public class HnswVectorStore implements VectorStore {
+
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 200;
+    public static final int DEFAULT_EF_SEARCH = 64;
+
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int m;
+    private final int maxLinksLevel0;
+    private final int efConstruction;
+    private final double levelFactor;
+    private volatile int efSearch;
+
+    // Nodes are published under growLock; readers only follow ids taken from published links
+    private final Object growLock = new Object();
+    private volatile Node[] nodes = new Node[INITIAL_CAPACITY];
+    private volatile int size;
+    private volatile int dimension = -1;
+
+    private final Object entryLock = new Object();
+    private volatile int entryPoint = -1;
+    private volatile int topLevel = -1;
+
+    private final ThreadLocal<VisitedSet> visited = ThreadLocal.withInitial(VisitedSet::new);
+
+    public HnswVectorStore() {
+        this(DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH);
+    }
+
+    /**
+     * @param m links per node on the upper levels (twice as many on level 0)
+     * @param efConstruction candidate list size while inserting, trades build time for recall
+     * @param efSearch candidate list size while searching, trades latency for recall
+     */
+    public HnswVectorStore(int m, int efConstruction, int efSearch) {
+        if (m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("m must be at least 2 and ef values positive");
+        }
+        this.m = m;
+        this.maxLinksLevel0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelFactor = 1 / Math.log(m);
+    }
+
+    public void setEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // ---------------------------------------------------------------- VectorStore
+
+    @Override
+    public List<Long> add(List<String> texts, List<EmbeddingVector> vectors) {
+        if (texts.size() != vectors.size()) {
+            System.err.println("Mismatch between documents and embeddings count");
+            return null;
+        }
+        try {
+            long[] ids = new long[texts.size()];
+            IntStream.range(0, texts.size()).parallel()
+                    .forEach(i -> ids[i] = insert(texts.get(i), vectors.get(i).array()));
+
+            List<Long> result = new ArrayList<>(ids.length);
+            for (long id : ids) {
+                result.add(id);
+            }
+            return result;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error inserting batch: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public List<SearchHit> search(float[] query, int topK) {
+        if (entryPoint < 0 || topK < 1) {
+            return List.of();
+        }
+        if (query.length != dimension) {
+            System.err.println("❌ Query has " + query.length + " dimensions, index has " + dimension);
+            return SEARCH_FAILED;
+        }
+
+        float[] normalized = normalize(query);
+        int ep;
+        int level;
+        synchronized (entryLock) {
+            ep = entryPoint;
+            level = topLevel;
+        }
+        for (; level > 0; level--) {
+            ep = greedyClosest(normalized, ep, level);
+        }
+
+        long[] candidates = searchLayer(normalized, ep, Math.max(efSearch, topK), 0);
+
+        List<SearchHit> hits = new ArrayList<>(topK);
+        for (int i = 0; i < candidates.length && hits.size() < topK; i++) {
+            int id = idOf(candidates[i]);
+            Node node = node(id);
+            if (!node.deleted) {
+                hits.add(new SearchHit(id, node.text, 1 - distanceOf(candidates[i])));
+            }
+        }
+        return hits;
+    }
+
+    @Override
+    public boolean delete(List<Long> ids) {
+        for (long id : ids) {
+            if (id >= 0 && id < size) {
+                node((int) id).deleted = true;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release, the index lives on the heap
+    }
+
+    // ---------------------------------------------------------------- insertion
+
+    private int insert(String text, float[] vector) {
+        checkDimension(vector.length);
+
+        Node node = new Node(normalize(vector), text, randomLevel());
+        int id = publish(node);
+
+        int ep;
+        int epLevel;
+        synchronized (entryLock) {
+            if (entryPoint < 0) {
+                entryPoint = id;
+                topLevel = node.level;
+                return id;
+            }
+            ep = entryPoint;
+            epLevel = topLevel;
+        }
+
+        for (int level = epLevel; level > node.level; level--) {
+            ep = greedyClosest(node.vector, ep, level);
+        }
+
+        for (int level = Math.min(node.level, epLevel); level >= 0; level--) {
+            long[] candidates = searchLayer(node.vector, ep, efConstruction, level);
+            int maxLinks = level == 0 ? maxLinksLevel0 : m;
+            int[] neighbors = selectNeighbors(node.vector, candidates, maxLinks);
+
+            node.links.set(level, neighbors);
+            for (int neighbor : neighbors) {
+                connect(neighbor, id, level, maxLinks);
+            }
+            ep = idOf(candidates[0]);
+        }
+
+        if (node.level > epLevel) {
+            synchronized (entryLock) {
+                if (node.level > topLevel) {
+                    topLevel = node.level;
+                    entryPoint = id;
+                }
+            }
+        }
+        return id;
+    }
+
+    private void checkDimension(int length) {
+        if (dimension < 0) {
+            synchronized (growLock) {
+                if (dimension < 0) {
+                    dimension = length;
+                }
+            }
+        }
+        if (length != dimension) {
+            throw new IllegalArgumentException("Expected " + dimension + " dimensions, got " + length);
+        }
+    }
+
+    private int publish(Node node) {
+        synchronized (growLock) {
+            int id = size;
+            if (id == nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            }
+            nodes[id] = node;
+            size = id + 1;
+            return id;
+        }
+    }
+
+    private int randomLevel() {
+        double uniform = 1 - ThreadLocalRandom.current().nextDouble(); // (0, 1]
+        return (int) (-Math.log(uniform) * levelFactor);
+    }
+
+    /**
+     * Add a back link from neighbor to id; a full list keeps its closest links, which is
+     * much cheaper than re-running the selection heuristic and measured the same recall
+     */
+    private void connect(int neighborId, int id, int level, int maxLinks) {
+        Node neighbor = node(neighborId);
+        synchronized (neighbor) {
+            int[] links = neighbor.links.get(level);
+            int[] updated;
+
+            if (links.length < maxLinks) {
+                updated = Arrays.copyOf(links, links.length + 1);
+                updated[links.length] = id;
+            } else {
+                long[] candidates = new long[links.length + 1];
+                for (int i = 0; i < links.length; i++) {
+                    candidates[i] = encode(distance(neighbor.vector, node(links[i]).vector), links[i]);
+                }
+                candidates[links.length] = encode(distance(neighbor.vector, node(id).vector), id);
+                Arrays.sort(candidates);
+                updated = new int[maxLinks];
+                for (int i = 0; i < maxLinks; i++) {
+                    updated[i] = idOf(candidates[i]);
+                }
+            }
+            neighbor.links.set(level, updated);
+        }
+    }
+
+    /**
+     * Neighbor selection heuristic: take candidates closest first, skipping those that are
+     * closer to an already selected neighbor than to the base; fill up with skipped ones.
+     * @param candidates encoded (distance, id) pairs sorted by distance
+     */
+    private int[] selectNeighbors(float[] base, long[] candidates, int maxLinks) {
+        if (candidates.length <= maxLinks) {
+            int[] all = new int[candidates.length];
+            for (int i = 0; i < candidates.length; i++) {
+                all[i] = idOf(candidates[i]);
+            }
+            return all;
+        }
+
+        int[] selected = new int[maxLinks];
+        int count = 0;
+        int[] skipped = new int[candidates.length];
+        int skippedCount = 0;
+
+        for (long candidate : candidates) {
+            if (count == maxLinks) {
+                break;
+            }
+            int id = idOf(candidate);
+            float distanceToBase = distanceOf(candidate);
+            float[] vector = node(id).vector;
+
+            boolean diverse = true;
+            for (int i = 0; i < count; i++) {
+                if (distance(vector, node(selected[i]).vector) < distanceToBase) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = id;
+            } else {
+                skipped[skippedCount++] = id;
+            }
+        }
+        for (int i = 0; i < skippedCount && count < maxLinks; i++) {
+            selected[count++] = skipped[i];
+        }
+        return count == maxLinks ? selected : Arrays.copyOf(selected, count);
+    }
+
+    // ---------------------------------------------------------------- graph search
+
+    private int greedyClosest(float[] query, int ep, int level) {
+        int current = ep;
+        float best = distance(query, node(current).vector);
+
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbor : node(current).links.get(level)) {
+                float d = distance(query, node(neighbor).vector);
+                if (d < best) {
+                    best = d;
+                    current = neighbor;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Beam search on one level
+     * @return encoded (distance, id) pairs of the ef closest nodes found, closest first
+     */
+    private long[] searchLayer(float[] query, int ep, int ef, int level) {
+        VisitedSet seen = visited.get();
+        seen.reset();
+
+        LongHeap candidates = new LongHeap(ef * 2);
+        LongHeap results = new LongHeap(ef + 1); // holds negated keys, so the top is the farthest
+
+        long start = encode(distance(query, node(ep).vector), ep);
+        seen.add(ep);
+        candidates.push(start);
+        results.push(-start);
+
+        while (!candidates.isEmpty()) {
+            long closest = candidates.pop();
+            if (results.size() >= ef && closest > -results.peek()) {
+                break;
+            }
+
+            for (int neighbor : node(idOf(closest)).links.get(level)) {
+                if (!seen.add(neighbor)) {
+                    continue;
+                }
+                long key = encode(distance(query, node(neighbor).vector), neighbor);
+                if (results.size() < ef || key < -results.peek()) {
+                    candidates.push(key);
+                    results.push(-key);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+
+        long[] sorted = new long[results.size()];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = -results.pop();
+        }
+        return sorted;
+    }
+
+    private Node node(int id) {
+        return nodes[id];
+    }
+
+    // ---------------------------------------------------------------- distances
+
+    /**
+     * Cosine distance of two normalized vectors, never negative
+     */
+    private static float distance(float[] a, float[] b) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int bound = a.length - 3; i < bound; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return Math.max(0f, 1f - (s0 + s1 + s2 + s3));
+    }
+
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float[] normalized = vector.clone();
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] *= scale;
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * Pack a non-negative distance and an id into one long that sorts by distance.
+     * Bit patterns of non-negative floats order like the floats themselves.
+     */
+    private static long encode(float distance, int id) {
+        return ((long) Float.floatToIntBits(distance) << 32) | id;
+    }
+
+    private static int idOf(long key) {
+        return (int) key;
+    }
+
+    private static float distanceOf(long key) {
+        return Float.intBitsToFloat((int) (key >>> 32));
+    }
+
+    // ---------------------------------------------------------------- persistence
+
+    /**
+     * Write the index to a file, replacing it atomically
+     */
+    public void save(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        int count = size;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(m);
+            out.writeInt(efConstruction);
+            out.writeInt(efSearch);
+            out.writeInt(dimension);
+            out.writeInt(count);
+            synchronized (entryLock) {
+                out.writeInt(entryPoint);
+                out.writeInt(topLevel);
+            }
+
+            for (int id = 0; id < count; id++) {
+                Node node = node(id);
+                byte[] text = node.text.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(text.length);
+                out.write(text);
+                out.writeBoolean(node.deleted);
+                for (float value : node.vector) {
+                    out.writeFloat(value);
+                }
+                out.writeInt(node.level);
+                for (int level = 0; level <= node.level; level++) {
+                    int[] links = node.links.get(level);
+                    out.writeInt(links.length);
+                    for (int link : links) {
+                        // Links to nodes added during the save point past the end
+                        out.writeInt(link < count ? link : -1);
+                    }
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("💾 HNSW index saved: " + count + " vectors to " + path);
+    }
+
+    public static HnswVectorStore load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an HNSW index file: " + path);
+            }
+            HnswVectorStore store = new HnswVectorStore(in.readInt(), in.readInt(), in.readInt());
+            store.dimension = in.readInt();
+            int count = in.readInt();
+            store.entryPoint = in.readInt();
+            store.topLevel = in.readInt();
+
+            Node[] nodes = new Node[Math.max(INITIAL_CAPACITY, count)];
+            for (int id = 0; id < count; id++) {
+                byte[] text = new byte[in.readInt()];
+                in.readFully(text);
+                boolean deleted = in.readBoolean();
+                float[] vector = new float[Math.max(0, store.dimension)];
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = in.readFloat();
+                }
+
+                Node node = new Node(vector, new String(text, StandardCharsets.UTF_8), in.readInt());
+                node.deleted = deleted;
+                for (int level = 0; level <= node.level; level++) {
+                    int[] links = new int[in.readInt()];
+                    int kept = 0;
+                    for (int i = 0; i < links.length; i++) {
+                        int link = in.readInt();
+                        if (link >= 0) {
+                            links[kept++] = link;
+                        }
+                    }
+                    node.links.set(level, kept == links.length ? links : Arrays.copyOf(links, kept));
+                }
+                nodes[id] = node;
+            }
+
+            store.nodes = nodes;
+            store.size = count;
+            System.out.println("📦 HNSW index loaded: " + count + " vectors from " + path);
+            return store;
+        }
+    }
+
+    // ---------------------------------------------------------------- helpers
+
+    private static final class Node {
+        final float[] vector;
+        final String text;
+        final int level;
+        final AtomicReferenceArray<int[]> links;
+        volatile boolean deleted;
+
+        Node(float[] vector, String text, int level) {
+            this.vector = vector;
+            this.text = text;
+            this.level = level;
+            this.links = new AtomicReferenceArray<>(level + 1);
+            for (int i = 0; i <= level; i++) {
+                links.set(i, new int[0]);
+            }
+        }
+    }
+
+    /**
+     * Per-thread visited marks, cleared in O(1) by bumping the epoch
+     */
+    private static final class VisitedSet {
+        private int[] marks = new int[INITIAL_CAPACITY];
+        private int epoch;
+
+        void reset() {
+            if (++epoch == 0) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        /**
+         * @return false if the id was already visited
+         */
+        boolean add(int id) {
+            if (id >= marks.length) {
+                marks = Arrays.copyOf(marks, Math.max(id + 1, marks.length * 2));
+            }
+            if (marks[id] == epoch) {
+                return false;
+            }
+            marks[id] = epoch;
+            return true;
+        }
+    }
+
+    /**
+     * Binary min-heap of primitive longs
+     */
+    private static final class LongHeap {
+        private long[] heap;
+        private int size;
+
+        LongHeap(int capacity) {
+            heap = new long[Math.max(2, capacity)];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long peek() {
+            return heap[0];
+        }
+
+        void push(long value) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= value) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        long pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (last <= heap[child]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return top;
+        }
+    }
+
+    /**
+     * Build an index over random vectors and report build rate, search latency and recall@10
+     * against exact search.
+     *
+     * Usage: HnswVectorStore [vectors] [dimension] [queries]
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int dim = args.length > 1 ? Integer.parseInt(args[1]) : 768;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+        int k = 10;
+
+        System.out.printf("📊 HNSW: %d vectors x %d dimensions, %d queries%n", count, dim, queries);
+
+        Random random = new Random(42);
+        List<EmbeddingVector> vectors = new ArrayList<>(count);
+        List<String> texts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            vectors.add(EmbeddingVector.of(randomVector(random, dim)));
+            texts.add("document " + i);
+        }
+
+        HnswVectorStore store = new HnswVectorStore();
+        long start = System.nanoTime();
+        List<Long> ids = store.add(texts, vectors);
+        double buildSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("✅ Built in %.1f s (%.0f vectors/s on %d cores)%n",
+                buildSeconds, count / buildSeconds, Runtime.getRuntime().availableProcessors());
+
+        float[][] queryVectors = new float[queries][];
+        for (int i = 0; i < queries; i++) {
+            queryVectors[i] = randomVector(random, dim);
+        }
+        for (float[] query : queryVectors) {
+            store.search(query, k); // warm up
+        }
+
+        long[] latencies = new long[queries];
+        for (int i = 0; i < queries; i++) {
+            long t = System.nanoTime();
+            store.search(queryVectors[i], k);
+            latencies[i] = System.nanoTime() - t;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("⏱️ Search latency: p50 %.3f ms, p99 %.3f ms%n",
+                latencies[queries / 2] / 1e6, latencies[queries * 99 / 100] / 1e6);
+
+        // Recall against brute force on a sample of the queries
+        int sample = Math.min(100, queries);
+        float[][] normalized = new float[count][];
+        for (int i = 0; i < count; i++) {
+            normalized[i] = normalize(vectors.get(i).array());
+        }
+        int found = 0;
+        for (int q = 0; q < sample; q++) {
+            float[] query = normalize(queryVectors[q]);
+            long[] exact = new long[count];
+            for (int i = 0; i < count; i++) {
+                exact[i] = encode(distance(query, normalized[i]), i);
+            }
+            Arrays.sort(exact);
+            List<Long> truth = new ArrayList<>();
+            for (int i = 0; i < k; i++) {
+                truth.add(ids.get(idOf(exact[i])));
+            }
+            for (SearchHit hit : store.search(queryVectors[q], k)) {
+                if (truth.contains(hit.id())) {
+                    found++;
+                }
+            }
+        }
+        System.out.printf("🎯 Recall@%d: %.3f (ef=%d)%n", k, found / (double) (sample * k), store.efSearch);
+
+        if (args.length > 3) {
+            try {
+                store.save(Paths.get(args[3]));
+            } catch (IOException e) {
+                System.err.println("❌ Failed to save index: " + e.getMessage());
+            }
+        }
+    }
+
+    private static float[] randomVector(Random random, int dim) {
+        float[] vector = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,57 @@
+package org.example;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * HTML pages parsed with jsoup. Block elements become paragraphs; scripts and styles are dropped.
+ */
+public class HtmlExtractor implements TextExtractor {
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("html", "htm");
+    }
+
+    @Override
+    public Reader open(Path file) throws IOException {
+        Document document = Jsoup.parse(file.toFile(), "UTF-8");
+        document.select("script, style, noscript, template").remove();
+
+        StringBuilder text = new StringBuilder();
+        if (!document.title().isBlank()) {
+            text.append(document.title()).append("\n\n");
+        }
+
+        NodeTraversor.traverse(new NodeVisitor() {
+            @Override
+            public void head(Node node, int depth) {
+                if (node instanceof TextNode textNode) {
+                    text.append(textNode.text());
+                } else if (node instanceof Element element && element.normalName().equals("br")) {
+                    text.append('\n');
+                }
+            }
+
+            @Override
+            public void tail(Node node, int depth) {
+                if (node instanceof Element element && element.isBlock()) {
+                    text.append("\n\n");
+                }
+            }
+        }, document.body());
+
+        return new StringReader(text.toString());
+    }
+}
@@ -0,0 +1,392 @@
+package org.example;
+
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.param.collection.DropCollectionParam;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Measures recall@k, latency and memory of Milvus index configurations on the real corpus
+ * and picks one, instead of guessing nlist and nprobe.
+ *
+ * The corpus is chunked and embedded as ingestion does (the embedding cache makes this
+ * cheap after an ingest) and copied into a scratch collection on the local Milvus
+ * standalone. Exact top-k from {@link FlatVectorStore} is the ground truth. Every index
+ * type and build parameter set in the sweep is built on the scratch collection and
+ * searched with a range of search parameters, one query at a time.
+ *
+ * The report marks the Pareto front over (recall, p99 latency, memory); memory is the
+ * estimated index size from the vector count and the index parameters. The chosen
+ * configuration is the fastest point on the front that reaches the target recall. With
+ * --apply the live collection's index is rebuilt with it and it is written to
+ * {@link IndexConfig#DEFAULT_PATH}; otherwise, or if the rebuild fails, it is written to
+ * {@link IndexConfig#PROPOSED_PATH} and the live index and its search parameters stay as they are.
+ *
+ * Usage: IndexAdvisor [corpus file or directory] [--queries file] [--k 3]
+ *                     [--target-recall 0.95] [--apply]
+ */
+public class IndexAdvisor {
+
+    private static final String SCRATCH_COLLECTION = "documents_index_advisor";
+    private static final String EMBEDDING_MODEL = "nomic-embed-text";
+    private static final int SAMPLE_QUERIES = 200;
+    private static final int INSERT_BATCH = 1000;
+    private static final int WARM_UP_QUERIES = 20;
+
+    /**
+     * One configuration measured against the ground truth
+     */
+    record Measurement(IndexConfig config, double recall, double p50Millis, double p99Millis,
+                       long memoryBytes, double buildSeconds) {
+
+        boolean dominates(Measurement other) {
+            boolean noWorse = recall >= other.recall && p99Millis <= other.p99Millis
+                    && memoryBytes <= other.memoryBytes;
+            boolean better = recall > other.recall || p99Millis < other.p99Millis
+                    || memoryBytes < other.memoryBytes;
+            return noWorse && better;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> arguments = Arrays.asList(args);
+        Path corpus = Paths.get(arguments.stream()
+                .filter(arg -> !arg.startsWith("--"))
+                .filter(arg -> !isOptionValue(arguments, arg))
+                .findFirst()
+                .orElse("data/sample.txt"));
+        String queryFile = option(arguments, "--queries", null);
+        int k = Integer.parseInt(option(arguments, "--k", "3"));
+        double targetRecall = Double.parseDouble(option(arguments, "--target-recall", "0.95"));
+        boolean apply = arguments.contains("--apply");
+
+        List<String> chunks = loadChunks(corpus);
+        if (chunks.isEmpty()) {
+            System.err.println("❌ No chunks in " + corpus);
+            return;
+        }
+        List<String> queries = queryFile != null ? loadQueries(Paths.get(queryFile)) : sampleQueries(chunks);
+        System.out.printf("🧭 Index advisor: %d chunks, %d queries, recall@%d target %.2f%n",
+                chunks.size(), queries.size(), k, targetRecall);
+
+        List<EmbeddingVector> vectors;
+        List<float[]> queryVectors;
+        try (Embedder embedder = createEmbedder()) {
+            vectors = new ArrayList<>(chunks.size());
+            for (int start = 0; start < chunks.size(); start += 100) {
+                vectors.addAll(embedder.embedVectors(chunks.subList(start, Math.min(start + 100, chunks.size()))));
+            }
+            queryVectors = embedder.embedTextsAsArrays(queries);
+        }
+        int dimension = vectors.get(0).dimension();
+
+        // Exact top-k by brute force, as corpus positions
+        List<Set<Integer>> truth = new ArrayList<>();
+        try (FlatVectorStore exact = new FlatVectorStore()) {
+            exact.add(chunks, vectors);
+            for (List<VectorStore.SearchHit> hits : exact.searchBatch(queryVectors, k)) {
+                Set<Integer> positions = new HashSet<>();
+                hits.forEach(hit -> positions.add((int) hit.id()));
+                truth.add(positions);
+            }
+        }
+
+        MilvusClientPool pool = MilvusClientPool.acquire();
+        try {
+            dropScratch(pool.client());
+            if (!MilvusCreateCollection.create(pool.client(), SCRATCH_COLLECTION, dimension)) {
+                return;
+            }
+
+            List<Measurement> measurements;
+            try (MilvusVectorStore scratch = new MilvusVectorStore(MilvusClientPool.acquire(),
+                    SCRATCH_COLLECTION, IndexConfig.DEFAULT)) {
+
+                Map<Long, Integer> positionOf = new HashMap<>();
+                for (int start = 0; start < chunks.size(); start += INSERT_BATCH) {
+                    int end = Math.min(start + INSERT_BATCH, chunks.size());
+                    List<Long> ids = scratch.add(chunks.subList(start, end), vectors.subList(start, end));
+                    if (ids == null) {
+                        System.err.println("❌ Could not fill the scratch collection");
+                        return;
+                    }
+                    for (int i = 0; i < ids.size(); i++) {
+                        positionOf.put(ids.get(i), start + i);
+                    }
+                }
+                scratch.flush();
+
+                measurements = sweep(scratch, chunks.size(), dimension, k, queryVectors, truth, positionOf);
+            } finally {
+                dropScratch(pool.client());
+            }
+
+            if (measurements.isEmpty()) {
+                System.err.println("❌ No configuration could be measured");
+                return;
+            }
+            Measurement chosen = report(measurements, targetRecall);
+
+            String comment = String.format(
+                    "Chosen by IndexAdvisor: recall@%d %.3f, p50 %.2f ms, p99 %.2f ms on %d chunks",
+                    k, chosen.recall(), chosen.p50Millis(), chosen.p99Millis(), chunks.size());
+
+            // Stores read DEFAULT_PATH, so it only gets a config the live index is built with
+            boolean applied = false;
+            if (apply) {
+                try (MilvusVectorStore live = new MilvusVectorStore(MilvusClientPool.acquire(),
+                        MilvusVectorStore.DEFAULT_COLLECTION, chosen.config())) {
+                    applied = live.rebuildIndex();
+                    System.out.println(applied
+                            ? "✅ Rebuilt the index of " + MilvusVectorStore.DEFAULT_COLLECTION
+                            : "❌ Could not rebuild the live index, the previous one is back");
+                }
+            }
+            Path target = applied ? IndexConfig.DEFAULT_PATH : IndexConfig.PROPOSED_PATH;
+            chosen.config().save(target, comment);
+            System.out.println("💾 Saved to " + target + (applied ? ""
+                    : "; rerun with --apply to rebuild the live index with it"));
+        } finally {
+            pool.release();
+        }
+    }
+
+    private static List<Measurement> sweep(MilvusVectorStore store, int count, int dimension, int k,
+                                           List<float[]> queries, List<Set<Integer>> truth,
+                                           Map<Long, Integer> positionOf) {
+        List<Measurement> measurements = new ArrayList<>();
+
+        for (IndexConfig build : buildCandidates(count, dimension)) {
+            store.setIndexConfig(build);
+            long start = System.nanoTime();
+            if (!store.rebuildIndex()) {
+                continue;
+            }
+            double buildSeconds = (System.nanoTime() - start) / 1e9;
+            long memory = estimateMemory(build, count, dimension);
+
+            for (String searchParams : searchCandidates(build, k)) {
+                store.setIndexConfig(build.withSearchParams(searchParams));
+                for (int i = 0; i < Math.min(WARM_UP_QUERIES, queries.size()); i++) {
+                    store.search(queries.get(i), k);
+                }
+
+                double[] latencies = new double[queries.size()];
+                int found = 0;
+                int total = 0;
+                for (int q = 0; q < queries.size(); q++) {
+                    long began = System.nanoTime();
+                    List<VectorStore.SearchHit> hits = store.search(queries.get(q), k);
+                    latencies[q] = (System.nanoTime() - began) / 1e6;
+                    for (VectorStore.SearchHit hit : hits) {
+                        if (truth.get(q).contains(positionOf.get(hit.id()))) {
+                            found++;
+                        }
+                    }
+                    total += truth.get(q).size();
+                }
+                Arrays.sort(latencies);
+
+                Measurement measurement = new Measurement(store.getIndexConfig(),
+                        total == 0 ? 0 : (double) found / total,
+                        percentile(latencies, 0.50), percentile(latencies, 0.99), memory, buildSeconds);
+                measurements.add(measurement);
+                System.out.printf("  %-48s recall %.3f  p50 %6.2f ms  p99 %6.2f ms%n", measurement.config(),
+                        measurement.recall(), measurement.p50Millis(), measurement.p99Millis());
+            }
+        }
+        return measurements;
+    }
+
+    /**
+     * Build parameters around the usual rules of thumb for the corpus size
+     */
+    static List<IndexConfig> buildCandidates(int count, int dimension) {
+        // IVF wants about 39+ training points per list
+        int maxLists = Math.max(1, count / 39);
+        int base = Integer.highestOneBit(Math.max(1, (int) (4 * Math.sqrt(count))));
+        Set<Integer> lists = new LinkedHashSet<>();
+        for (int nlist : new int[]{base / 2, base, base * 2}) {
+            lists.add(Math.max(1, Math.min(nlist, maxLists)));
+        }
+
+        List<IndexConfig> candidates = new ArrayList<>();
+        for (String type : List.of("IVF_FLAT", "IVF_SQ8")) {
+            for (int nlist : lists) {
+                candidates.add(new IndexConfig(type, "{\"nlist\":" + nlist + "}", "{}"));
+            }
+        }
+        int pqLists = Math.max(1, Math.min(base, maxLists));
+        for (int subDimensions : new int[]{32, 16, 8}) {
+            if (dimension % subDimensions == 0) {
+                candidates.add(new IndexConfig("IVF_PQ", "{\"nlist\":" + pqLists + ",\"m\":"
+                        + dimension / subDimensions + ",\"nbits\":8}", "{}"));
+            }
+        }
+        for (int m : new int[]{8, 16, 32}) {
+            candidates.add(new IndexConfig("HNSW", "{\"M\":" + m + ",\"efConstruction\":200}", "{}"));
+        }
+        return candidates;
+    }
+
+    static List<String> searchCandidates(IndexConfig build, int k) {
+        List<String> candidates = new ArrayList<>();
+        if (build.indexType().equals("HNSW")) {
+            for (int ef : new int[]{16, 32, 64, 128, 256}) {
+                if (ef >= k) {
+                    candidates.add("{\"ef\":" + ef + "}");
+                }
+            }
+        } else {
+            int nlist = intParam(build.buildParams(), "nlist");
+            for (int nprobe = 1; nprobe <= Math.min(nlist, 128); nprobe *= 2) {
+                candidates.add("{\"nprobe\":" + nprobe + "}");
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Approximate index size: stored codes or vectors plus centroids, codebooks or graph links
+     */
+    static long estimateMemory(IndexConfig config, int count, int dimension) {
+        long vectors = (long) count * dimension * Float.BYTES;
+        return switch (config.indexType()) {
+            case "IVF_FLAT" -> vectors + (long) intParam(config.buildParams(), "nlist") * dimension * Float.BYTES;
+            case "IVF_SQ8" -> (long) count * dimension
+                    + (long) intParam(config.buildParams(), "nlist") * dimension * Float.BYTES;
+            case "IVF_PQ" -> (long) count * intParam(config.buildParams(), "m")
+                    + (long) intParam(config.buildParams(), "nlist") * dimension * Float.BYTES
+                    + 256L * dimension * Float.BYTES;
+            case "HNSW" -> vectors + (long) count * intParam(config.buildParams(), "M") * 2 * Integer.BYTES;
+            default -> vectors;
+        };
+    }
+
+    /**
+     * Print every measurement, mark the Pareto front and return the chosen point
+     */
+    private static Measurement report(List<Measurement> measurements, double targetRecall) {
+        List<Measurement> front = new ArrayList<>();
+        for (Measurement candidate : measurements) {
+            if (measurements.stream().noneMatch(other -> other.dominates(candidate))) {
+                front.add(candidate);
+            }
+        }
+
+        List<Measurement> sorted = new ArrayList<>(measurements);
+        sorted.sort((a, b) -> a.recall() != b.recall()
+                ? Double.compare(b.recall(), a.recall())
+                : Double.compare(a.p99Millis(), b.p99Millis()));
+
+        System.out.println("━".repeat(104));
+        System.out.printf("  %-50s %8s %9s %9s %10s %8s%n", "configuration", "recall", "p50 ms", "p99 ms", "memory MB", "build s");
+        for (Measurement m : sorted) {
+            System.out.printf("%s %-50s %8.3f %9.2f %9.2f %10.1f %8.1f%n", front.contains(m) ? "*" : " ",
+                    m.config(), m.recall(), m.p50Millis(), m.p99Millis(), m.memoryBytes() / 1e6, m.buildSeconds());
+        }
+        System.out.println("━".repeat(104));
+        System.out.println("* Pareto front over recall, p99 latency and memory (estimated)");
+
+        Measurement chosen = front.stream()
+                .filter(m -> m.recall() >= targetRecall)
+                .min((a, b) -> a.p99Millis() != b.p99Millis()
+                        ? Double.compare(a.p99Millis(), b.p99Millis())
+                        : Long.compare(a.memoryBytes(), b.memoryBytes()))
+                .orElseGet(() -> {
+                    System.out.printf("⚠️ No configuration reached recall %.2f, taking the most accurate%n", targetRecall);
+                    return Collections.max(front, (a, b) -> Double.compare(a.recall(), b.recall()));
+                });
+        System.out.printf("➡️ Chosen: %s (recall %.3f, p99 %.2f ms)%n", chosen.config(), chosen.recall(), chosen.p99Millis());
+        return chosen;
+    }
+
+    private static void dropScratch(MilvusServiceClient client) {
+        try {
+            client.dropCollection(DropCollectionParam.newBuilder()
+                    .withCollectionName(SCRATCH_COLLECTION)
+                    .build());
+        } catch (Exception e) {
+            // Did not exist
+        }
+    }
+
+    private static List<String> loadChunks(Path corpus) {
+        if (Files.isDirectory(corpus)) {
+            try (DirectoryIngestor ingestor = new DirectoryIngestor(corpus, 500, 50);
+                 Stream<String> chunks = ingestor.streamChunks()) {
+                return chunks.toList();
+            }
+        }
+        try (Stream<String> chunks = DocumentLoader.streamChunks(corpus.toString(), 500, 50)) {
+            return chunks.toList();
+        }
+    }
+
+    private static List<String> loadQueries(Path file) throws IOException {
+        return Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty())
+                .toList();
+    }
+
+    /**
+     * Without a query file, the opening of random chunks stands in for questions
+     */
+    private static List<String> sampleQueries(List<String> chunks) {
+        List<String> shuffled = new ArrayList<>(chunks);
+        Collections.shuffle(shuffled, new Random(42));
+        return shuffled.stream()
+                .limit(SAMPLE_QUERIES)
+                .map(chunk -> chunk.substring(0, Math.min(200, chunk.length())))
+                .toList();
+    }
+
+    private static Embedder createEmbedder() {
+        try {
+            return new Embedder(EMBEDDING_MODEL, EmbeddingCache.open(EMBEDDING_MODEL));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("⚠️ Embedding cache unavailable, embedding without it: " + e.getMessage());
+            return new Embedder(EMBEDDING_MODEL);
+        }
+    }
+
+    private static double percentile(double[] sorted, double fraction) {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+    private static int intParam(String json, String name) {
+        int start = json.indexOf("\"" + name + "\":") + name.length() + 3;
+        int end = start;
+        while (end < json.length() && Character.isDigit(json.charAt(end))) {
+            end++;
+        }
+        return Integer.parseInt(json.substring(start, end));
+    }
+
+    private static String option(List<String> arguments, String name, String fallback) {
+        int index = arguments.indexOf(name);
+        return index >= 0 && index + 1 < arguments.size() ? arguments.get(index + 1) : fallback;
+    }
+
+    private static boolean isOptionValue(List<String> arguments, String argument) {
+        int index = arguments.indexOf(argument);
+        return index > 0 && arguments.get(index - 1).startsWith("--")
+                && !arguments.get(index - 1).equals("--apply");
+    }
+}
@@ -0,0 +1,106 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Milvus index type with its build and search parameters (JSON, as Milvus takes them).
+ *
+ * Stored in data/index-config.properties, which {@link IndexAdvisor} writes once the live
+ * index is rebuilt with it and {@link MilvusVectorStore} reads; without the file the previous
+ * fixed choice applies. A choice that is not applied yet goes to {@link #PROPOSED_PATH}.
+ */
+public record IndexConfig(String indexType, String buildParams, String searchParams) {
+
+    public static final Path DEFAULT_PATH = Paths.get("data", "index-config.properties");
+    public static final Path PROPOSED_PATH = Paths.get("data", "index-config.proposed.properties");
+    public static final IndexConfig DEFAULT = new IndexConfig("IVF_FLAT", "{\"nlist\":128}", "{\"nprobe\":10}");
+
+    private static final Pattern PARAM = Pattern.compile("\"([^\"]+)\"\\s*:\\s*\"?([^\",}]*)\"?");
+
+    public IndexConfig withSearchParams(String searchParams) {
+        return new IndexConfig(indexType, buildParams, searchParams);
+    }
+
+    /**
+     * Same index type and build parameters, whatever their order or quoting
+     */
+    public boolean sameBuild(IndexConfig other) {
+        return indexType.equals(other.indexType) && params(buildParams).equals(params(other.buildParams));
+    }
+
+    /**
+     * Search parameters for an index built with a config other than the saved one
+     */
+    public static String defaultSearchParams(String indexType) {
+        if (indexType.equals("HNSW")) {
+            return "{\"ef\":64}";
+        }
+        return indexType.startsWith("IVF") ? "{\"nprobe\":10}" : "{}";
+    }
+
+    private static Map<String, String> params(String json) {
+        Map<String, String> params = new TreeMap<>();
+        Matcher matcher = PARAM.matcher(json);
+        while (matcher.find()) {
+            params.put(matcher.group(1), matcher.group(2).trim());
+        }
+        return params;
+    }
+
+    /**
+     * The saved configuration, or {@link #DEFAULT} if there is none or it cannot be read
+     */
+    public static IndexConfig load(Path path) {
+        if (!Files.exists(path)) {
+            return DEFAULT;
+        }
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Properties properties = new Properties();
+            properties.load(reader);
+            return new IndexConfig(
+                    properties.getProperty("index.type", DEFAULT.indexType),
+                    properties.getProperty("index.params", DEFAULT.buildParams),
+                    properties.getProperty("search.params", DEFAULT.searchParams));
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not read " + path + ", using the default index: " + e.getMessage());
+            return DEFAULT;
+        }
+    }
+
+    public static IndexConfig load() {
+        return load(DEFAULT_PATH);
+    }
+
+    public void save(Path path, String comment) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("index.type", indexType);
+        properties.setProperty("index.params", buildParams);
+        properties.setProperty("search.params", searchParams);
+
+        if (path.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            properties.store(writer, comment);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public String toString() {
+        return indexType + " " + buildParams + " search " + searchParams;
+    }
+}
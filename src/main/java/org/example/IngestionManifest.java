@@ -0,0 +1,191 @@
+package org.example;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent record of which chunks are in the collection, keyed by source and content hash.
+ *
+ * The file is an append-only log of "+hash id source;" and "-hash source" lines, so every
+ * inserted batch is durable as soon as it is recorded, and is rewritten compactly on close.
+ * Used by incremental ingestion to embed only new chunks and delete vanished ones; the
+ * source (the ingested file or directory) keeps a run from deleting other sources' chunks.
+ * Entries written before sources were recorded have the empty source and are handed to
+ * the first source that finds the same chunk, see {@link #claim}.
+ */
+public class IngestionManifest implements AutoCloseable {
+
+    public static final String DEFAULT_PATH = "data/ingest-manifest.log";
+
+    // Source of entries from manifests that did not record one
+    private static final String NO_SOURCE = "";
+
+    private final Path path;
+    private final Map<String, Map<String, Long>> idsBySource = new HashMap<>();
+    private BufferedWriter log;
+
+    private IngestionManifest(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Load the manifest, or start an empty one if the file does not exist
+     */
+    public static IngestionManifest open(Path path) throws IOException {
+        IngestionManifest manifest = new IngestionManifest(path);
+
+        if (Files.exists(path)) {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (line.startsWith("+") && line.endsWith(";")) {
+                    // Lines torn by a crash have no terminator and are skipped
+                    String[] parts = line.substring(1, line.length() - 1).split(" ", 3);
+                    if (parts.length >= 2) {
+                        String source = parts.length == 3 ? parts[2] : NO_SOURCE;
+                        manifest.entries(source).put(parts[0], Long.parseLong(parts[1]));
+                    }
+                } else if (line.startsWith("-")) {
+                    String[] parts = line.substring(1).split(" ", 2);
+                    manifest.entries(parts.length == 2 ? parts[1] : NO_SOURCE).remove(parts[0]);
+                }
+            }
+        } else if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+
+        manifest.log = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return manifest;
+    }
+
+    public static IngestionManifest open() throws IOException {
+        return open(Paths.get(DEFAULT_PATH));
+    }
+
+    /**
+     * The source name recorded for chunks ingested from a file or directory
+     */
+    public static String sourceOf(Path root) {
+        return root.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Forget everything, e.g. after the collection was dropped
+     */
+    public static void delete(Path path) throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * SHA-256 of the chunk text, hex encoded
+     */
+    public static String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * @return true if the chunk is recorded for the source. An entry without a source is
+     *         moved to this one, so manifests from before sources were recorded keep working.
+     */
+    public synchronized boolean claim(String source, String hash) throws IOException {
+        if (entries(source).containsKey(hash)) {
+            return true;
+        }
+        Long id = entries(NO_SOURCE).remove(hash);
+        if (id == null) {
+            return false;
+        }
+        recordInserted(source, List.of(hash), List.of(id));
+        return true;
+    }
+
+    /**
+     * @return the number of chunks recorded for all sources
+     */
+    public synchronized int size() {
+        return idsBySource.values().stream().mapToInt(Map::size).sum();
+    }
+
+    public synchronized int size(String source) {
+        return entries(source).size();
+    }
+
+    public synchronized Set<String> hashes(String source) {
+        return Set.copyOf(entries(source).keySet());
+    }
+
+    public synchronized Long idOf(String source, String hash) {
+        return entries(source).get(hash);
+    }
+
+    /**
+     * Record inserted chunks with the primary keys Milvus assigned to them
+     */
+    public synchronized void recordInserted(String source, List<String> hashes, List<Long> ids) throws IOException {
+        Map<String, Long> entries = entries(source);
+        for (int i = 0; i < hashes.size(); i++) {
+            entries.put(hashes.get(i), ids.get(i));
+            log.write(insertLine(hashes.get(i), ids.get(i), source));
+            log.newLine();
+        }
+        log.flush();
+    }
+
+    public synchronized void recordDeleted(String source, List<String> hashes) throws IOException {
+        Map<String, Long> entries = entries(source);
+        for (String hash : hashes) {
+            entries.remove(hash);
+            log.write(source.isEmpty() ? "-" + hash : "-" + hash + " " + source);
+            log.newLine();
+        }
+        log.flush();
+    }
+
+    /**
+     * Rewrite the log with only the live entries
+     */
+    public synchronized void compact() throws IOException {
+        log.close();
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        List<String> lines = new ArrayList<>(size());
+        idsBySource.forEach((source, entries) ->
+                entries.forEach((hash, id) -> lines.add(insertLine(hash, id, source))));
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        log = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+    private Map<String, Long> entries(String source) {
+        return idsBySource.computeIfAbsent(source, key -> new HashMap<>());
+    }
+
+    private static String insertLine(String hash, long id, String source) {
+        return source.isEmpty() ? "+" + hash + " " + id + ";" : "+" + hash + " " + id + " " + source + ";";
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        compact();
+        log.close();
+    }
+}
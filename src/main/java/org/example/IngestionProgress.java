@@ -0,0 +1,66 @@
+package org.example;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe ingestion counters with a periodic files/s and chunks/s report
+ */
+public class IngestionProgress implements AutoCloseable {
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong failedFiles = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private final ScheduledExecutorService reporter;
+
+    public IngestionProgress() {
+        this(5);
+    }
+
+    /**
+     * @param reportIntervalSeconds how often to print progress, 0 to disable
+     */
+    public IngestionProgress(int reportIntervalSeconds) {
+        if (reportIntervalSeconds > 0) {
+            this.reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ingestion-progress");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(() -> System.out.println("📈 " + this),
+                    reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            this.reporter = null;
+        }
+    }
+
+    public void fileDone() { files.incrementAndGet(); }
+    public void fileFailed() { failedFiles.incrementAndGet(); }
+    public void chunkProduced() { chunks.incrementAndGet(); }
+
+    public long getFiles() { return files.get(); }
+    public long getFailedFiles() { return failedFiles.get(); }
+    public long getChunks() { return chunks.get(); }
+
+    public double getElapsedSeconds() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    @Override
+    public String toString() {
+        double seconds = Math.max(getElapsedSeconds(), 1e-3);
+        return String.format("files: %d (%.1f files/s), chunks: %d (%.1f chunks/s), failed: %d, elapsed: %.1fs",
+                getFiles(), getFiles() / seconds, getChunks(), getChunks() / seconds,
+                getFailedFiles(), seconds);
+    }
+
+    @Override
+    public void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+    }
+}
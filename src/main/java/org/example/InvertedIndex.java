@@ -0,0 +1,466 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * In-process BM25 index over chunk texts, built at ingestion time next to the vector store.
+ *
+ * Terms come from {@link ArabicTokenizer}. Each posting list is a byte array of
+ * (doc delta, term frequency) pairs encoded as varints, so a list costs about two bytes
+ * per posting. Documents are keyed by the vector store id, which lets lexical and dense
+ * results be fused. A lookup decodes only the lists of the query terms and keeps
+ * per-thread score arrays, so it runs in microseconds.
+ */
+public class InvertedIndex {
+
+    public static final Path DEFAULT_PATH = Paths.get("data", "lexical-index.bin");
+
+    private static final int MAGIC = 0x424D3235; // "BM25"
+    private static final int VERSION = 1;
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    // The top hit must beat the runner-up by this factor to skip the vector search
+    private static final float CONFIDENCE_MARGIN = 1.5f;
+    // Saving rebuilds the index once this fraction of its chunks is deleted or replaced
+    private static final double COMPACT_DELETED_RATIO = 0.2;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    // Guarded by lock
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<Long, Integer> docByStoreId = new HashMap<>();
+    private final List<String> texts = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private long[] storeIds = new long[1024];
+    private int[] lengths = new int[1024];
+    private long totalLength;
+
+    /**
+     * Lexical hits, best first, and whether they are trustworthy enough to answer alone
+     */
+    public record Result(List<VectorStore.SearchHit> hits, boolean confident) {
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return texts.size() - deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Index chunks under the ids the vector store assigned to them
+     */
+    public void add(List<Long> ids, List<String> documents) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                addDoc(ids.get(i), documents.get(i));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addDoc(long id, String text) {
+        int doc = texts.size();
+        if (doc == storeIds.length) {
+            storeIds = Arrays.copyOf(storeIds, doc * 2);
+            lengths = Arrays.copyOf(lengths, doc * 2);
+        }
+
+        List<String> tokens = ArabicTokenizer.tokenize(text);
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), term -> new Postings()).add(doc, entry.getValue());
+        }
+
+        Integer previous = docByStoreId.put(id, doc);
+        if (previous != null) {
+            deleteDoc(previous);
+        }
+        texts.add(text);
+        storeIds[doc] = id;
+        lengths[doc] = tokens.size();
+        totalLength += tokens.size();
+    }
+
+    public void delete(List<Long> ids) {
+        lock.writeLock().lock();
+        try {
+            for (Long id : ids) {
+                Integer doc = docByStoreId.remove(id);
+                if (doc != null) {
+                    deleteDoc(doc);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void deleteDoc(int doc) {
+        if (!deleted.get(doc)) {
+            deleted.set(doc);
+            totalLength -= lengths[doc];
+        }
+    }
+
+    /**
+     * Re-index only the live chunks. Deleted ones otherwise stay in the posting lists and
+     * in the document frequencies, so IDF would drift with every incremental run.
+     */
+    private void compact() {
+        int before = texts.size();
+        List<Long> liveIds = new ArrayList<>();
+        List<String> liveTexts = new ArrayList<>();
+        for (int doc = 0; doc < before; doc++) {
+            if (!deleted.get(doc)) {
+                liveIds.add(storeIds[doc]);
+                liveTexts.add(texts.get(doc));
+            }
+        }
+
+        postings.clear();
+        docByStoreId.clear();
+        texts.clear();
+        deleted.clear();
+        storeIds = new long[Math.max(liveIds.size(), 1024)];
+        lengths = new int[Math.max(liveIds.size(), 1024)];
+        totalLength = 0;
+        for (int i = 0; i < liveIds.size(); i++) {
+            addDoc(liveIds.get(i), liveTexts.get(i));
+        }
+        System.out.println("📇 Lexical index compacted: " + (before - texts.size()) + " deleted chunks dropped");
+    }
+
+    public Result search(String query, int topK) {
+        Set<String> terms = new LinkedHashSet<>(ArabicTokenizer.tokenize(query));
+
+        lock.readLock().lock();
+        try {
+            int live = texts.size() - deleted.cardinality();
+            if (terms.isEmpty() || live == 0 || topK < 1) {
+                return new Result(List.of(), false);
+            }
+
+            float averageLength = Math.max(1f, (float) totalLength / live);
+            Scratch s = scratch.get();
+            s.ensureCapacity(texts.size());
+            int known = 0;
+
+            for (String term : terms) {
+                Postings list = postings.get(term);
+                if (list == null) {
+                    continue;
+                }
+                known++;
+                float idf = (float) Math.log(1 + (live - list.docFrequency + 0.5) / (list.docFrequency + 0.5));
+
+                byte[] data = list.data;
+                int position = 0;
+                int doc = 0;
+                while (position < list.size) {
+                    int delta = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = data[position++];
+                        delta |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    int frequency = 0;
+                    shift = 0;
+                    do {
+                        b = data[position++];
+                        frequency |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    doc += delta;
+
+                    if (deleted.get(doc)) {
+                        continue;
+                    }
+                    float norm = K1 * (1 - B + B * lengths[doc] / averageLength);
+                    if (s.matched[doc] == 0) {
+                        s.touched[s.touchedCount++] = doc;
+                    }
+                    s.scores[doc] += idf * frequency * (K1 + 1) / (frequency + norm);
+                    s.matched[doc]++;
+                }
+            }
+
+            TopK best = new TopK(topK);
+            float first = Float.NEGATIVE_INFINITY;
+            float second = Float.NEGATIVE_INFINITY;
+            boolean firstMatchesAll = false;
+            for (int i = 0; i < s.touchedCount; i++) {
+                int doc = s.touched[i];
+                float score = s.scores[doc];
+                best.offer(score, doc);
+                if (score > first) {
+                    second = first;
+                    first = score;
+                    firstMatchesAll = s.matched[doc] == terms.size();
+                } else if (score > second) {
+                    second = score;
+                }
+            }
+            s.reset();
+
+            // Every query term is known and found in the top chunk, which clearly leads a
+            // runner-up; a single matching chunk says nothing about the other results
+            boolean confident = known == terms.size() && firstMatchesAll
+                    && second != Float.NEGATIVE_INFINITY && first >= CONFIDENCE_MARGIN * second;
+
+            List<VectorStore.SearchHit> hits = new ArrayList<>();
+            for (VectorStore.SearchHit hit : best.drain(texts)) {
+                hits.add(new VectorStore.SearchHit(storeIds[(int) hit.id()], hit.text(), hit.score()));
+            }
+            return new Result(hits, confident);
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write the index atomically: chunks with their ids, lengths and tombstones, then the
+     * encoded posting lists as they are in memory. If more than {@value #COMPACT_DELETED_RATIO}
+     * of the chunks are deleted, the index is compacted first.
+     */
+    public void save(Path path) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (deleted.cardinality() > texts.size() * COMPACT_DELETED_RATIO) {
+                compact();
+            }
+            lock.readLock().lock(); // Downgrade, searches may run while writing the file
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            if (path.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(path.toAbsolutePath().getParent());
+            }
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(texts.size());
+                for (int doc = 0; doc < texts.size(); doc++) {
+                    out.writeLong(storeIds[doc]);
+                    out.writeInt(lengths[doc]);
+                    out.writeBoolean(deleted.get(doc));
+                    writeString(out, texts.get(doc));
+                }
+                out.writeInt(postings.size());
+                for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+                    Postings list = entry.getValue();
+                    writeString(out, entry.getKey());
+                    out.writeInt(list.docFrequency);
+                    out.writeInt(list.lastDoc);
+                    out.writeInt(list.size);
+                    out.write(list.data, 0, list.size);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static InvertedIndex load(Path path) throws IOException {
+        InvertedIndex index = new InvertedIndex();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a lexical index file: " + path);
+            }
+            int count = in.readInt();
+            index.storeIds = new long[Math.max(count, 1024)];
+            index.lengths = new int[Math.max(count, 1024)];
+            for (int doc = 0; doc < count; doc++) {
+                index.storeIds[doc] = in.readLong();
+                index.lengths[doc] = in.readInt();
+                if (in.readBoolean()) {
+                    index.deleted.set(doc);
+                } else {
+                    index.docByStoreId.put(index.storeIds[doc], doc);
+                    index.totalLength += index.lengths[doc];
+                }
+                index.texts.add(readString(in));
+            }
+
+            int terms = in.readInt();
+            for (int i = 0; i < terms; i++) {
+                Postings list = new Postings();
+                String term = readString(in);
+                list.docFrequency = in.readInt();
+                list.lastDoc = in.readInt();
+                list.size = in.readInt();
+                list.data = new byte[Math.max(list.size, 8)];
+                in.readFully(list.data, 0, list.size);
+                index.postings.put(term, list);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * The saved index, or an empty one if there is none or it cannot be read
+     */
+    public static InvertedIndex loadIfExists(Path path) {
+        if (!Files.exists(path)) {
+            return new InvertedIndex();
+        }
+        try {
+            InvertedIndex index = load(path);
+            System.out.println("📇 Lexical index loaded: " + index.size() + " chunks, " + index.termCount() + " terms");
+            return index;
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not load lexical index " + path + ": " + e.getMessage());
+            return new InvertedIndex();
+        }
+    }
+
+    // writeUTF is limited to 64 KB, chunks are not
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Posting list of (doc delta, frequency) varint pairs in ascending doc order
+     */
+    private static final class Postings {
+        byte[] data = new byte[8];
+        int size;
+        int docFrequency;
+        int lastDoc;
+
+        void add(int doc, int frequency) {
+            if (data.length - size < 10) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            writeVarint(doc - lastDoc);
+            writeVarint(frequency);
+            lastDoc = doc;
+            docFrequency++;
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+    }
+
+    /**
+     * Per-thread score accumulators, cleared through the touched list after each query
+     */
+    private static final class Scratch {
+        float[] scores = new float[0];
+        int[] matched = new int[0];
+        int[] touched = new int[0];
+        int touchedCount;
+
+        void ensureCapacity(int docs) {
+            if (scores.length < docs) {
+                int capacity = Math.max(docs, scores.length * 2);
+                scores = new float[capacity];
+                matched = new int[capacity];
+                touched = new int[capacity];
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                scores[touched[i]] = 0;
+                matched[touched[i]] = 0;
+            }
+            touchedCount = 0;
+        }
+    }
+
+    /**
+     * Build an index from a text file and time lexical lookups.
+     *
+     * Usage: InvertedIndex [file] [query...]
+     */
+    public static void main(String[] args) {
+        String file = args.length > 0 ? args[0] : "data/sample.txt";
+        String query = args.length > 1 ? String.join(" ", Arrays.copyOfRange(args, 1, args.length)) : "Docker";
+
+        InvertedIndex index = new InvertedIndex();
+        long start = System.nanoTime();
+        try (Stream<String> chunks = DocumentLoader.streamChunks(file, 500, 50)) {
+            List<String> documents = chunks.toList();
+            List<Long> ids = new ArrayList<>(documents.size());
+            for (long i = 0; i < documents.size(); i++) {
+                ids.add(i);
+            }
+            index.add(ids, documents);
+        }
+        System.out.printf("📇 Indexed %d chunks, %d terms in %.1f ms%n",
+                index.size(), index.termCount(), (System.nanoTime() - start) / 1e6);
+
+        for (int i = 0; i < 1000; i++) {
+            index.search(query, 3); // warm up
+        }
+        int runs = 10_000;
+        start = System.nanoTime();
+        Result result = null;
+        for (int i = 0; i < runs; i++) {
+            result = index.search(query, 3);
+        }
+        System.out.printf("🔎 \"%s\": %.1f µs per lookup, confident=%s%n",
+                query, (System.nanoTime() - start) / 1e3 / runs, result.confident());
+        for (VectorStore.SearchHit hit : result.hits()) {
+            String text = hit.text().replace('\n', ' ');
+            System.out.printf("  %.3f  %s%n", hit.score(), text.substring(0, Math.min(80, text.length())));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reader that decodes a UTF-8 file through a sliding memory-mapped window.
+ *
+ * Only one window of the file is mapped at a time, so the heap footprint stays
+ * constant no matter how large the file is. Multi-byte characters that straddle
+ * two windows are carried over to the next mapping.
+ */
+public class MappedTextReader extends Reader {
+
+    private static final int DEFAULT_WINDOW_SIZE = 16 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final CharsetDecoder decoder;
+    private final long fileSize;
+    private final int windowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private boolean windowExhausted = true;
+    private boolean endOfFile;
+    // Low surrogate of a pair that did not fit into the caller's buffer
+    private final CharBuffer pending = CharBuffer.allocate(2).flip();
+
+    public MappedTextReader(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedTextReader(Path path, int windowSize) throws IOException {
+        if (windowSize < 4) {
+            throw new IllegalArgumentException("Window size must hold at least one UTF-8 character");
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.decoder = StandardCharsets.UTF_8.newDecoder();
+        this.fileSize = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while (pending.hasRemaining() && out.hasRemaining()) {
+            out.put(pending.get());
+        }
+        if (endOfFile && out.position() == off) {
+            return -1;
+        }
+
+        while (out.position() == off) {
+            if (windowExhausted && !mapNextWindow()) {
+                endOfFile = true;
+                break;
+            }
+
+            boolean lastWindow = windowStart + window.limit() >= fileSize;
+            CoderResult result = decoder.decode(window, out, lastWindow);
+            if (result.isOverflow() && out.position() == off) {
+                // A surrogate pair does not fit in one char: decode it aside and hand out
+                // the low surrogate on the next call
+                pending.clear();
+                result = decoder.decode(window, pending, lastWindow);
+                pending.flip();
+                if (pending.hasRemaining()) {
+                    out.put(pending.get());
+                }
+            }
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (result.isUnderflow()) {
+                windowExhausted = true;
+            }
+        }
+
+        int read = out.position() - off;
+        return read == 0 ? -1 : read;
+    }
+
+    /**
+     * Map the next window, starting at the first byte the decoder has not consumed yet
+     */
+    private boolean mapNextWindow() throws IOException {
+        if (window != null) {
+            windowStart += window.position();
+        }
+        if (windowStart >= fileSize) {
+            return false;
+        }
+
+        long length = Math.min(windowSize, fileSize - windowStart);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+        windowExhausted = false;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
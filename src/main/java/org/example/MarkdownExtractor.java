@@ -0,0 +1,53 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Markdown files with the markup stripped, keeping headings and paragraphs as text
+ */
+public class MarkdownExtractor implements TextExtractor {
+
+    private static final Pattern CODE_FENCE = Pattern.compile("^\\s*(```|~~~).*$");
+    private static final Pattern HORIZONTAL_RULE = Pattern.compile("^\\s*([-*_]\\s*){3,}$");
+    private static final Pattern HEADING = Pattern.compile("^\\s{0,3}#{1,6}\\s+");
+    private static final Pattern BLOCK_PREFIX = Pattern.compile("^\\s*(>\\s?)+|^\\s*([-*+]|\\d+[.)])\\s+");
+    private static final Pattern IMAGE_OR_LINK = Pattern.compile("!?\\[([^\\]]*)]\\([^)]*\\)");
+    private static final Pattern EMPHASIS = Pattern.compile("(\\*\\*|__|\\*|`)(.+?)\\1");
+    private static final Pattern HTML_TAG = Pattern.compile("<[^>]+>");
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("md", "markdown");
+    }
+
+    @Override
+    public Reader open(Path file) throws IOException {
+        return new StringReader(toPlainText(Files.readString(file)));
+    }
+
+    static String toPlainText(String markdown) {
+        StringBuilder text = new StringBuilder(markdown.length());
+
+        for (String line : markdown.split("\\r?\\n", -1)) {
+            if (CODE_FENCE.matcher(line).matches() || HORIZONTAL_RULE.matcher(line).matches()) {
+                text.append('\n');
+                continue;
+            }
+
+            line = HEADING.matcher(line).replaceFirst("");
+            line = BLOCK_PREFIX.matcher(line).replaceFirst("");
+            line = IMAGE_OR_LINK.matcher(line).replaceAll("$1");
+            line = EMPHASIS.matcher(line).replaceAll("$2");
+            line = HTML_TAG.matcher(line).replaceAll("");
+
+            text.append(line).append('\n');
+        }
+        return text.toString();
+    }
+}
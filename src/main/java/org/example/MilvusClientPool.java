@@ -0,0 +1,195 @@
+package org.example;
+
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.grpc.CheckHealthResponse;
+import io.milvus.param.ConnectParam;
+import io.milvus.param.R;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Shared, reference-counted set of Milvus clients for one host and port.
+ *
+ * MilvusServiceClient is thread-safe and multiplexes calls over one gRPC channel, so a
+ * couple of clients serve any number of threads; callers take one with {@link #client()}
+ * per call. A daemon thread checks each client's health periodically (and soon after a
+ * caller reports a failure) and replaces unhealthy ones with a fresh connection.
+ *
+ * Host, port and pool size come from the milvus.host / milvus.port / milvus.pool.size
+ * system properties, then the MILVUS_HOST / MILVUS_PORT / MILVUS_POOL_SIZE environment
+ * variables, then the defaults below.
+ */
+public final class MilvusClientPool {
+
+    public static final String DEFAULT_HOST = "127.0.0.1";
+    public static final int DEFAULT_PORT = 19530;
+    public static final int DEFAULT_POOL_SIZE = 2;
+
+    private static final long HEALTH_CHECK_SECONDS = 30;
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+    private static final long KEEP_ALIVE_SECONDS = 55;
+    private static final long CLOSE_GRACE_SECONDS = 5;
+
+    // Guarded by MilvusClientPool.class
+    private static final Map<String, MilvusClientPool> POOLS = new HashMap<>();
+
+    private final String host;
+    private final int port;
+    private final AtomicReferenceArray<MilvusServiceClient> clients;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicBoolean checkPending = new AtomicBoolean();
+    private final AtomicInteger reconnects = new AtomicInteger();
+    private final ScheduledExecutorService healthChecker;
+    private int references; // Guarded by MilvusClientPool.class
+
+    private MilvusClientPool(String host, int port, int size) {
+        this.host = host;
+        this.port = port;
+        this.clients = new AtomicReferenceArray<>(size);
+        for (int i = 0; i < size; i++) {
+            clients.set(i, connect());
+        }
+
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "milvus-health-" + host + ":" + port);
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkHealth,
+                HEALTH_CHECK_SECONDS, HEALTH_CHECK_SECONDS, TimeUnit.SECONDS);
+        System.out.println("Connected to Milvus at " + host + ":" + port + " (" + size + " clients)");
+    }
+
+    /**
+     * The pool for the configured host and port
+     */
+    public static MilvusClientPool acquire() {
+        return acquire(setting("milvus.host", "MILVUS_HOST", DEFAULT_HOST),
+                Integer.parseInt(setting("milvus.port", "MILVUS_PORT", String.valueOf(DEFAULT_PORT))));
+    }
+
+    /**
+     * The pool for this host and port, created on first use. Every acquire must be
+     * matched by a {@link #release()}; the last release closes the clients.
+     */
+    public static MilvusClientPool acquire(String host, int port) {
+        synchronized (MilvusClientPool.class) {
+            MilvusClientPool pool = POOLS.get(host + ":" + port);
+            if (pool == null) {
+                int size = Integer.parseInt(setting("milvus.pool.size", "MILVUS_POOL_SIZE",
+                        String.valueOf(DEFAULT_POOL_SIZE)));
+                pool = new MilvusClientPool(host, port, Math.max(1, size));
+                POOLS.put(host + ":" + port, pool);
+            }
+            pool.references++;
+            return pool;
+        }
+    }
+
+    public void release() {
+        synchronized (MilvusClientPool.class) {
+            if (references == 0 || --references > 0) {
+                return;
+            }
+            POOLS.remove(host + ":" + port);
+        }
+
+        healthChecker.shutdownNow();
+        for (int i = 0; i < clients.length(); i++) {
+            clients.get(i).close(CLOSE_GRACE_SECONDS);
+        }
+        System.out.println("Milvus connection to " + host + ":" + port + " closed");
+    }
+
+    /**
+     * A client for one call, spreading callers round-robin over the pool
+     */
+    public MilvusServiceClient client() {
+        return clients.get(Math.floorMod(next.getAndIncrement(), clients.length()));
+    }
+
+    /**
+     * Ask for a health check now, e.g. after a failed call
+     */
+    public void reportFailure() {
+        if (checkPending.compareAndSet(false, true)) {
+            try {
+                healthChecker.execute(this::checkHealth);
+            } catch (RejectedExecutionException e) {
+                checkPending.set(false); // Pool is closing
+            }
+        }
+    }
+
+    public String getAddress() {
+        return host + ":" + port;
+    }
+
+    public int getReconnects() {
+        return reconnects.get();
+    }
+
+    /**
+     * Replace every client that fails its health check with a new connection
+     */
+    private void checkHealth() {
+        checkPending.set(false);
+        for (int i = 0; i < clients.length(); i++) {
+            MilvusServiceClient client = clients.get(i);
+            if (isHealthy(client)) {
+                continue;
+            }
+
+            MilvusServiceClient replacement;
+            try {
+                replacement = connect();
+            } catch (Exception e) {
+                System.err.println("⚠️ Milvus at " + getAddress() + " unreachable, will retry: " + e.getMessage());
+                return;
+            }
+            if (clients.compareAndSet(i, client, replacement)) {
+                reconnects.incrementAndGet();
+                System.out.println("🔄 Reconnected Milvus client " + i + " to " + getAddress());
+                // Calls still running on the old client get a grace period
+                client.close(CLOSE_GRACE_SECONDS);
+            } else {
+                replacement.close();
+            }
+        }
+    }
+
+    private static boolean isHealthy(MilvusServiceClient client) {
+        try {
+            R<CheckHealthResponse> response = client.checkHealth();
+            return response != null && response.getStatus() == R.Status.Success.getCode()
+                    && response.getData() != null && response.getData().getIsHealthy();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private MilvusServiceClient connect() {
+        return new MilvusServiceClient(ConnectParam.newBuilder()
+                .withHost(host)
+                .withPort(port)
+                .withConnectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .withKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS)
+                .build());
+    }
+
+    private static String setting(String property, String environment, String fallback) {
+        String value = System.getProperty(property);
+        if (value == null || value.isBlank()) {
+            value = System.getenv(environment);
+        }
+        return value == null || value.isBlank() ? fallback : value.trim();
+    }
+}
@@ -1,26 +1,41 @@
 package org.example;
 
 import io.milvus.client.MilvusServiceClient;
-import io.milvus.param.ConnectParam;
 import io.milvus.param.collection.DropCollectionParam;
 import io.milvus.param.collection.CreateCollectionParam;
 import io.milvus.param.collection.FieldType;
+import io.milvus.param.collection.HasCollectionParam;
 import io.milvus.grpc.DataType;
+import io.milvus.param.R;
+import io.milvus.param.RpcStatus;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 public class MilvusCreateCollection {
 
     public static void main(String[] args) {
-        ConnectParam connectParam = ConnectParam.newBuilder()
-                .withHost("127.0.0.1")
-                .withPort(19530)
-                .build();
-
-        MilvusServiceClient milvusClient = new MilvusServiceClient(connectParam);
+        MilvusClientPool pool = MilvusClientPool.acquire();
+        MilvusServiceClient milvusClient = pool.client();
 
         try {
             String collectionName = "documents";
             int dimension = 768; // Updated to match nomic-embed-text model dimensions
 
+            // --keep-existing preserves the collection for incremental ingestion
+            if (Arrays.asList(args).contains("--keep-existing")) {
+                Boolean exists = milvusClient.hasCollection(
+                        HasCollectionParam.newBuilder()
+                                .withCollectionName(collectionName)
+                                .build()
+                ).getData();
+                if (Boolean.TRUE.equals(exists)) {
+                    System.out.println("ℹ️ Collection already exists, keeping it.");
+                    return;
+                }
+            }
+
             // ✅ 1. Drop the collection if it already exists
             try {
                 milvusClient.dropCollection(
@@ -28,48 +43,65 @@ public class MilvusCreateCollection {
                                 .withCollectionName(collectionName)
                                 .build()
                 );
+                // The ingestion manifest and lexical index describe the dropped data
+                IngestionManifest.delete(Paths.get(IngestionManifest.DEFAULT_PATH));
+                Files.deleteIfExists(InvertedIndex.DEFAULT_PATH);
+                new CollectionVersion().bump();
                 System.out.println("⚠️ Collection dropped (if existed).");
             } catch (Exception ex) {
                 System.out.println("ℹ️ Collection did not exist. Continuing...");
             }
 
-            // ✅ 2. Define fields
-            FieldType textField = FieldType.newBuilder()
-                    .withName("text")
-                    .withDataType(DataType.VarChar)
-                    .withMaxLength(1024)
-                    .build();
+            // ✅ 2. Define fields and create the collection
+            if (create(milvusClient, collectionName, dimension)) {
+                System.out.println("✅ Collection created successfully!");
+            }
+        } catch (Exception e) {
+            System.out.println("❌ Failed to create collection: " + e.getMessage());
+        } finally {
+            pool.release();
+        }
+    }
 
-            FieldType idField = FieldType.newBuilder()
-                    .withName("id")
-                    .withDataType(DataType.Int64)
-                    .withPrimaryKey(true)
-                    .withAutoID(true)
-                    .build();
+    /**
+     * Create a collection with the "id", "text" and "embedding" schema used by {@link MilvusVectorStore}
+     */
+    public static boolean create(MilvusServiceClient client, String collectionName, int dimension) {
+        FieldType textField = FieldType.newBuilder()
+                .withName("text")
+                .withDataType(DataType.VarChar)
+                .withMaxLength(1024)
+                .build();
+
+        FieldType idField = FieldType.newBuilder()
+                .withName("id")
+                .withDataType(DataType.Int64)
+                .withPrimaryKey(true)
+                .withAutoID(true)
+                .build();
 
-            //Define embeddingField
-            FieldType embeddingField = FieldType.newBuilder()
-                    .withName("embedding")
-                    .withDataType(DataType.FloatVector)
-                    .withDimension(dimension)
-                    .build();
+        //Define embeddingField
+        FieldType embeddingField = FieldType.newBuilder()
+                .withName("embedding")
+                .withDataType(DataType.FloatVector)
+                .withDimension(dimension)
+                .build();
 
-            // ✅ 3. Create collection
-            CreateCollectionParam createCollectionParam = CreateCollectionParam.newBuilder()
-                    .withCollectionName(collectionName)
-                    .withDescription("A collection to store document embeddings")
-                    .withShardsNum(2)
-                    .addFieldType(idField)
-                    .addFieldType(embeddingField)
-                    .addFieldType(textField) // <-- don't forget to include text
-                    .build();
+        // ✅ 3. Create collection
+        CreateCollectionParam createCollectionParam = CreateCollectionParam.newBuilder()
+                .withCollectionName(collectionName)
+                .withDescription("A collection to store document embeddings")
+                .withShardsNum(2)
+                .addFieldType(idField)
+                .addFieldType(embeddingField)
+                .addFieldType(textField) // <-- don't forget to include text
+                .build();
 
-            milvusClient.createCollection(createCollectionParam);
-            System.out.println("✅ Collection created successfully!");
-        } catch (Exception e) {
-            System.out.println("❌ Failed to create collection: " + e.getMessage());
-        } finally {
-            milvusClient.close();
+        R<RpcStatus> response = client.createCollection(createCollectionParam);
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            System.out.println("❌ Failed to create collection: " + response.getMessage());
+            return false;
         }
+        return true;
     }
 }
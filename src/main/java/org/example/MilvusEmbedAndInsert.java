@@ -1,18 +1,26 @@
 package org.example;
 
-import io.milvus.client.MilvusServiceClient;
-import io.milvus.param.ConnectParam;
-import io.milvus.param.collection.LoadCollectionParam;
-import io.milvus.param.dml.InsertParam;
-import io.milvus.param.index.CreateIndexParam;
-import io.milvus.grpc.DataType;
-
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.concurrent.CompletableFuture;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 /**
  * MilvusInserter - A refactored class for inserting documents into Milvus vector database
@@ -22,113 +30,120 @@ import java.util.concurrent.Executors;
  * - Creating and managing indexes
  * - Batch inserting documents with embeddings
  * - Error handling and resource management
+ *
+ * Any other {@link VectorStore}, such as the embedded {@link HnswVectorStore}, can be
+ * passed in place of Milvus.
  */
 public class MilvusEmbedAndInsert implements AutoCloseable {
     
     // Configuration constants
-    private static final String DEFAULT_HOST = "127.0.0.1";
-    private static final int DEFAULT_PORT = 19530;
-    private static final String DEFAULT_COLLECTION = "documents";
     private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_EMBED_WORKERS = 2;
+    private static final int DEFAULT_INSERT_WORKERS = 1;
+    private static final int DEFAULT_QUEUE_CAPACITY = 4;
+    private static final int DELETE_BATCH_SIZE = 1000;
+    private static final String EMBEDDING_MODEL = "nomic-embed-text";
+
+    // End-of-stream markers for the pipeline queues
+    private static final List<String> NO_MORE_BATCHES = new ArrayList<>();
+    private static final EmbeddedBatch NO_MORE_EMBEDDINGS = new EmbeddedBatch(0, List.of(), List.of());
     
     // Core components
-    private final MilvusServiceClient milvusClient;
+    private final VectorStore store;
     private final Embedder embedder;
-    private final String collectionName;
     private final ExecutorService executorService;
+    private volatile InvertedIndex lexicalIndex;
+    private volatile CollectionVersion collectionVersion = new CollectionVersion();
     
     // Configuration
     private final int batchSize;
+    private final int embedWorkers;
+    private final int insertWorkers;
+    private final int queueCapacity;
     
     /**
-     * Default constructor with standard configuration
+     * Default constructor with standard configuration, writing to the configured Milvus
      */
     public MilvusEmbedAndInsert() {
-        this(DEFAULT_HOST, DEFAULT_PORT, DEFAULT_COLLECTION, DEFAULT_BATCH_SIZE);
+        this(new MilvusVectorStore());
     }
     
     /**
      * Constructor with custom configuration
      */
     public MilvusEmbedAndInsert(String host, int port, String collectionName, int batchSize) {
-        this.collectionName = collectionName;
-        this.batchSize = batchSize;
-        this.executorService = Executors.newFixedThreadPool(2);
-        
-        // Initialize Milvus client
-        ConnectParam connectParam = ConnectParam.newBuilder()
-                .withHost(host)
-                .withPort(port)
-                .build();
-        
-        this.milvusClient = new MilvusServiceClient(connectParam);
-        this.embedder = new Embedder();
-        
-        System.out.println("Connected to Milvus at " + host + ":" + port);
+        this(host, port, collectionName, batchSize,
+                DEFAULT_EMBED_WORKERS, DEFAULT_INSERT_WORKERS, DEFAULT_QUEUE_CAPACITY);
     }
-    
+
     /**
-     * Initialize the collection for document insertion
-     * Creates index and loads collection into memory
+     * Constructor with custom pipeline configuration
+     * @param embedWorkers number of threads calling the embedding model
+     * @param insertWorkers number of threads inserting into Milvus
+     * @param queueCapacity batches buffered between stages before the previous stage blocks
      */
-    public boolean initializeCollection() {
-        try {
-            System.out.println("Initializing collection: " + collectionName);
+    public MilvusEmbedAndInsert(String host, int port, String collectionName, int batchSize,
+                                int embedWorkers, int insertWorkers, int queueCapacity) {
+        this(new MilvusVectorStore(host, port, collectionName), batchSize,
+                embedWorkers, insertWorkers, queueCapacity);
+    }
 
-            boolean indexCreated = createIndexIfNotExists();
-            boolean collectionLoaded = loadCollection();
+    /**
+     * Constructor for any vector store with standard pipeline configuration
+     */
+    public MilvusEmbedAndInsert(VectorStore store) {
+        this(store, DEFAULT_BATCH_SIZE, DEFAULT_EMBED_WORKERS, DEFAULT_INSERT_WORKERS, DEFAULT_QUEUE_CAPACITY);
+    }
 
-            if (indexCreated && collectionLoaded) {
-                System.out.println("Collection initialized successfully!");
-                return true;
-            } else {
-                System.err.println("Collection initialization had issues");
-                return false;
-            }
-        } catch (Exception e) {
-            System.err.println("Failed to initialize collection: " + e.getMessage());
-            return false;
+    public MilvusEmbedAndInsert(VectorStore store, int batchSize,
+                                int embedWorkers, int insertWorkers, int queueCapacity) {
+        if (embedWorkers < 1 || insertWorkers < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Pipeline workers and queue capacity must be positive");
         }
+        this.store = store;
+        this.batchSize = batchSize;
+        this.embedWorkers = embedWorkers;
+        this.insertWorkers = insertWorkers;
+        this.queueCapacity = queueCapacity;
+        this.executorService = Executors.newFixedThreadPool(embedWorkers + insertWorkers);
+        this.embedder = createEmbedder();
     }
-
+    
     /**
-     * Create index for the embedding field if it doesn't exist
+     * Embedder backed by the persistent embedding cache, so re-ingested text is not re-embedded
      */
-    private boolean createIndexIfNotExists() {
+    private static Embedder createEmbedder() {
         try {
-            CreateIndexParam indexParam = CreateIndexParam.newBuilder()
-                    .withCollectionName(collectionName)
-                    .withFieldName("embedding")
-                    .withIndexType(io.milvus.param.IndexType.IVF_FLAT)
-                    .withMetricType(io.milvus.param.MetricType.COSINE)
-                    .withExtraParam("{\"nlist\":128}")
-                    .build();
-
-            milvusClient.createIndex(indexParam);
-            System.out.println("✅ Index created successfully!");
-            return true;
-        } catch (Exception e) {
-            System.out.println("ℹ️ Index may already exist: " + e.getMessage());
-            return true; // Assume it exists
+            return new Embedder(EMBEDDING_MODEL, EmbeddingCache.open(EMBEDDING_MODEL));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("⚠️ Embedding cache unavailable, embedding without it: " + e.getMessage());
+            return new Embedder(EMBEDDING_MODEL);
         }
     }
 
     /**
-     * Load collection into memory for search operations
+     * Also index every inserted chunk for lexical search, under the store's ids
      */
-    private boolean loadCollection() {
-        try {
-            LoadCollectionParam loadParam = LoadCollectionParam.newBuilder()
-                    .withCollectionName(collectionName)
-                    .build();
+    public void setLexicalIndex(InvertedIndex lexicalIndex) {
+        this.lexicalIndex = lexicalIndex;
+    }
 
-            milvusClient.loadCollection(loadParam);
-            System.out.println("✅ Collection loaded into memory!");
-            return true;
-        } catch (Exception e) {
-            System.err.println("❌ Error loading collection: " + e.getMessage());
-            return false;
+    /**
+     * Version bumped after every change to the store, to invalidate cached answers
+     */
+    public void setCollectionVersion(CollectionVersion collectionVersion) {
+        this.collectionVersion = collectionVersion;
+    }
+
+    /**
+     * Initialize the collection for document insertion
+     * Creates index and loads collection into memory; other stores need no preparation
+     */
+    public boolean initializeCollection() {
+        if (store instanceof MilvusVectorStore milvus) {
+            return milvus.initialize();
         }
+        return true;
     }
 
     /**
@@ -140,64 +155,403 @@ public class MilvusEmbedAndInsert implements AutoCloseable {
         }
 
         System.out.println("Processing " + documents.size() + " documents...");
+        return insertDocuments(documents.stream());
+    }
 
-        try {
-            int totalInserted = 0;
-            int batchCount = (int) Math.ceil((double) documents.size() / batchSize);
+    /**
+     * Insert a continuous stream of documents through a staged pipeline:
+     * the calling thread batches chunks, embedding workers call the model and insert
+     * workers write to Milvus. Stages are connected by bounded queues, so a slow stage
+     * applies backpressure and embedding overlaps with insertion.
+     */
+    public InsertionResult insertDocuments(Stream<String> documents) {
+        return insertDocuments(documents, null, null);
+    }
+
+    /**
+     * Insert a stream of documents and record every inserted chunk in the manifest, so a
+     * later incremental run knows about them
+     * @param source where the documents come from, see {@link IngestionManifest#sourceOf}
+     */
+    public InsertionResult insertDocuments(Stream<String> documents, IngestionManifest manifest, String source) {
+        PipelineState state = runPipeline(documents, manifest == null ? null : recordingIn(manifest, source));
+        int totalInserted = state.inserted.get();
+
+        if (state.hasFailed()) {
+            System.err.println("Error during document insertion: " + state.failure.get());
+            return new InsertionResult(false, state.failure.get(), totalInserted);
+        }
+        if (totalInserted == 0) {
+            return new InsertionResult(false, "No documents provided", 0);
+        }
 
-            for (int i = 0; i < batchCount; i++) {
-                int startIdx = i * batchSize;
-                int endIdx = Math.min(startIdx + batchSize, documents.size());
-                List<String> batch = documents.subList(startIdx, endIdx);
+        System.out.println("Successfully inserted " + totalInserted + " documents!");
+        return new InsertionResult(true, "All documents inserted successfully", totalInserted);
+    }
 
-                System.out.println("Processing batch " + (i + 1) + "/" + batchCount + " (" + batch.size() + " documents)");
+    /**
+     * Incremental ingestion: only chunks whose content hash is not in the manifest are
+     * embedded and inserted, and chunks of this source that disappeared from it are
+     * deleted by primary key. A re-run on an unchanged corpus only hashes the chunks.
+     * @param source the ingested file or directory, see {@link IngestionManifest#sourceOf};
+     *               chunks recorded for other sources are never deleted
+     */
+    public InsertionResult insertDocumentsIncrementally(Stream<String> documents, IngestionManifest manifest,
+                                                        String source) {
+        return insertDocumentsIncrementally(documents, manifest, source, null);
+    }
 
-                if (insertBatch(batch)) {
-                    totalInserted += batch.size();
-                } else {
-                    return new InsertionResult(false, "Failed to insert batch " + (i + 1), totalInserted);
+    /**
+     * @param sourceProgress progress of the source producing the documents, or null; if it
+     *                       reports files that could not be read, their chunks would look
+     *                       vanished, so nothing is deleted and the result is a failure
+     */
+    public InsertionResult insertDocumentsIncrementally(Stream<String> documents, IngestionManifest manifest,
+                                                        String source, IngestionProgress sourceProgress) {
+        System.out.println("Incremental ingestion against " + manifest.size(source) + " known chunks of " + source + "...");
+
+        Set<String> currentHashes = new HashSet<>();
+        AtomicInteger unchanged = new AtomicInteger();
+
+        Stream<String> changed = documents.filter(chunk -> {
+            String hash = IngestionManifest.hash(chunk);
+            if (!currentHashes.add(hash)) {
+                return false; // duplicate chunk in this corpus
+            }
+            try {
+                if (manifest.claim(source, hash)) {
+                    unchanged.incrementAndGet();
+                    return false;
                 }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error recording chunk in manifest: " + e.getMessage(), e);
             }
+            return true;
+        });
+
+        PipelineState state = runPipeline(changed, recordingIn(manifest, source));
+        int inserted = state.inserted.get();
+
+        // Without the complete corpus we cannot tell which chunks vanished
+        if (state.hasFailed()) {
+            System.err.println("Error during incremental ingestion: " + state.failure.get());
+            return new InsertionResult(false, state.failure.get(), inserted);
+        }
+        long failedFiles = sourceProgress == null ? 0 : sourceProgress.getFailedFiles();
+        if (failedFiles > 0) {
+            String message = failedFiles + " files could not be read, so no chunks were deleted";
+            System.err.println("Error during incremental ingestion: " + message);
+            return new InsertionResult(false, message, inserted);
+        }
+        // An empty or unreadable source would make every known chunk look vanished
+        if (currentHashes.isEmpty() && manifest.size(source) > 0) {
+            String message = "The source produced no chunks, so none of its " + manifest.size(source)
+                    + " known chunks were deleted";
+            System.err.println("Error during incremental ingestion: " + message);
+            return new InsertionResult(false, message, 0);
+        }
 
-            System.out.println("Successfully inserted " + totalInserted + " documents!");
-            return new InsertionResult(true, "All documents inserted successfully", totalInserted);
+        List<String> removed = new ArrayList<>();
+        for (String hash : manifest.hashes(source)) {
+            if (!currentHashes.contains(hash)) {
+                removed.add(hash);
+            }
+        }
+
+        int deleted = deleteByHashes(removed, manifest, source);
+        if (deleted < 0) {
+            return new InsertionResult(false, "Failed to delete removed chunks", inserted);
+        }
 
+        String message = String.format("%d new, %d unchanged, %d deleted", inserted, unchanged.get(), deleted);
+        System.out.println("✅ Incremental ingestion done: " + message);
+        return new InsertionResult(true, message, inserted);
+    }
+
+    /**
+     * Listener that records each inserted batch in the manifest
+     */
+    private static InsertListener recordingIn(IngestionManifest manifest, String source) {
+        return (batch, ids) -> {
+            List<String> hashes = new ArrayList<>(batch.size());
+            for (String chunk : batch) {
+                hashes.add(IngestionManifest.hash(chunk));
+            }
+            manifest.recordInserted(source, hashes, ids);
+        };
+    }
+
+    /**
+     * Delete chunks by the primary keys recorded in the manifest
+     * @return number of deleted chunks, or -1 on failure
+     */
+    private int deleteByHashes(List<String> hashes, IngestionManifest manifest, String source) {
+        int deleted = 0;
+
+        for (int start = 0; start < hashes.size(); start += DELETE_BATCH_SIZE) {
+            List<String> batch = hashes.subList(start, Math.min(start + DELETE_BATCH_SIZE, hashes.size()));
+            List<Long> ids = new ArrayList<>(batch.size());
+            for (String hash : batch) {
+                ids.add(manifest.idOf(source, hash));
+            }
+
+            if (!store.delete(ids)) {
+                return -1;
+            }
+            if (lexicalIndex != null) {
+                lexicalIndex.delete(ids);
+            }
+            collectionVersion.bump();
+            try {
+                manifest.recordDeleted(source, batch);
+            } catch (IOException e) {
+                System.err.println("Error recording deleted chunks: " + e.getMessage());
+                return -1;
+            }
+            deleted += batch.size();
+        }
+
+        if (deleted > 0) {
+            System.out.println("🗑️ Deleted " + deleted + " chunks no longer in the corpus");
+        }
+        return deleted;
+    }
+
+    /**
+     * Run the chunk -> embed -> insert pipeline over a stream of documents
+     * @param onInserted called by insert workers with each written batch and its primary keys, may be null
+     */
+    private synchronized PipelineState runPipeline(Stream<String> documents, InsertListener onInserted) {
+        System.out.println("Processing document stream (" + embedWorkers + " embed workers, "
+                + insertWorkers + " insert workers)...");
+
+        BlockingQueue<List<String>> chunkBatches = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<EmbeddedBatch> embeddedBatches = new ArrayBlockingQueue<>(queueCapacity);
+        PipelineState state = new PipelineState();
+        long startTime = System.currentTimeMillis();
+
+        List<Future<?>> embedStage = new ArrayList<>();
+        for (int i = 0; i < embedWorkers; i++) {
+            embedStage.add(executorService.submit(() -> runEmbedWorker(chunkBatches, embeddedBatches, state)));
+        }
+        List<Future<?>> insertStage = new ArrayList<>();
+        for (int i = 0; i < insertWorkers; i++) {
+            insertStage.add(executorService.submit(() -> runInsertWorker(embeddedBatches, state, onInserted)));
+        }
+
+        try {
+            // Stage 1: batch the chunks on the calling thread
+            Iterator<String> iterator = documents.iterator();
+            List<String> batch = new ArrayList<>(batchSize);
+            int batchNumber = 0;
+
+            while (!state.hasFailed() && iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() == batchSize || !iterator.hasNext()) {
+                    batchNumber++;
+                    System.out.println("Queued batch " + batchNumber + " (" + batch.size() + " documents)");
+                    chunkBatches.put(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            state.fail("Interrupted while queueing documents");
         } catch (Exception e) {
-            System.err.println("Error during document insertion: " + e.getMessage());
-            e.printStackTrace();
-            return new InsertionResult(false, e.getMessage(), 0);
+            System.err.println("Error reading documents: " + e.getMessage());
+            state.fail(e.getMessage());
+        } finally {
+            // Shut the stages down in order, each once the previous one has drained
+            signalEnd(chunkBatches, NO_MORE_BATCHES, embedWorkers, state);
+            awaitStage(embedStage, state);
+            signalEnd(embeddedBatches, NO_MORE_EMBEDDINGS, insertWorkers, state);
+            awaitStage(insertStage, state);
         }
+
+        long elapsed = System.currentTimeMillis() - startTime;
+        System.out.println("⏱️ Pipeline finished in " + elapsed + " ms (embedding busy "
+                + state.embedMillis.get() + " ms, insertion busy " + state.insertMillis.get() + " ms)");
+        return state;
     }
 
     /**
-     * Insert a single batch of documents
+     * Stage 2: embed batches until the end marker arrives
      */
-    private boolean insertBatch(List<String> documents) {
+    private void runEmbedWorker(BlockingQueue<List<String>> input, BlockingQueue<EmbeddedBatch> output,
+                                PipelineState state) {
         try {
-            // Generate embeddings
-            List<List<Float>> embeddings = embedder.embedTexts(documents);
+            while (true) {
+                List<String> batch = input.take();
+                if (batch == NO_MORE_BATCHES) {
+                    return;
+                }
+                // After a failure keep draining so upstream never blocks
+                if (state.hasFailed()) {
+                    continue;
+                }
+
+                long start = System.currentTimeMillis();
+                List<EmbeddingVector> embeddings;
+                try {
+                    embeddings = embedBatch(batch);
+                } catch (RuntimeException e) {
+                    // The worker must survive to keep draining, or upstream blocks forever
+                    embeddings = null;
+                    System.err.println("Error embedding batch: " + e.getMessage());
+                }
+                state.embedMillis.addAndGet(System.currentTimeMillis() - start);
+
+                if (embeddings == null) {
+                    state.fail("Failed to embed batch of " + batch.size() + " documents");
+                    continue;
+                }
+                output.put(new EmbeddedBatch(state.embeddedBatches.incrementAndGet(), batch, embeddings));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            state.fail("Embedding worker interrupted");
+        }
+    }
+
+    /**
+     * Stage 3: insert embedded batches until the end marker arrives
+     */
+    private void runInsertWorker(BlockingQueue<EmbeddedBatch> input, PipelineState state,
+                                 InsertListener onInserted) {
+        try {
+            while (true) {
+                EmbeddedBatch batch = input.take();
+                if (batch == NO_MORE_EMBEDDINGS) {
+                    return;
+                }
+                if (state.hasFailed()) {
+                    continue;
+                }
+
+                // A runtime error fails the run but not the worker, which keeps draining
+                // so the embed workers never block on a full queue
+                try {
+                    insertBatch(batch, state, onInserted);
+                } catch (RuntimeException e) {
+                    System.err.println("Error inserting batch " + batch.number() + ": " + e.getMessage());
+                    state.fail("Failed to insert batch " + batch.number() + ": " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            state.fail("Insert worker interrupted");
+        }
+    }
+
+    private void insertBatch(EmbeddedBatch batch, PipelineState state, InsertListener onInserted) {
+        long start = System.currentTimeMillis();
+        List<Long> ids = writeBatch(batch.documents(), batch.embeddings());
+        state.insertMillis.addAndGet(System.currentTimeMillis() - start);
+
+        if (ids == null) {
+            state.fail("Failed to insert batch " + batch.number());
+            return;
+        }
+        state.inserted.addAndGet(batch.documents().size());
+
+        if (onInserted != null) {
+            try {
+                onInserted.batchInserted(batch.documents(), ids);
+            } catch (IOException e) {
+                state.fail("Failed to record batch " + batch.number() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private <T> void signalEnd(BlockingQueue<T> queue, T endMarker, int workers, PipelineState state) {
+        try {
+            for (int i = 0; i < workers; i++) {
+                queue.put(endMarker);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            state.fail("Interrupted while stopping the pipeline");
+        }
+    }
+
+    private void awaitStage(List<Future<?>> workers, PipelineState state) {
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                state.fail("Interrupted while waiting for the pipeline");
+            } catch (ExecutionException e) {
+                state.fail(e.getCause().getMessage());
+            }
+        }
+    }
+
+    /**
+     * Generate embeddings for a batch
+     * @return the embeddings, or null on failure
+     */
+    private List<EmbeddingVector> embedBatch(List<String> documents) {
+        try {
+            List<EmbeddingVector> embeddings = embedder.embedVectors(documents);
 
             if (embeddings.size() != documents.size()) {
                 System.err.println("Mismatch between documents and embeddings count");
-                return false;
+                return null;
             }
+            return embeddings;
 
-            // Insert into Milvus
-            InsertParam insertParam = InsertParam.newBuilder()
-                    .withCollectionName(collectionName)
-                    .withFields(Arrays.asList(
-                            new InsertParam.Field("text", documents),
-                            new InsertParam.Field("embedding", embeddings)
-                    ))
-                    .build();
+        } catch (Exception e) {
+            System.err.println("Error embedding batch: " + e.getMessage());
+            return null;
+        }
+    }
 
-            milvusClient.insert(insertParam);
+    /**
+     * Insert a single embedded batch into the vector store
+     * @return the primary keys assigned to the documents, or null on failure
+     */
+    private List<Long> writeBatch(List<String> documents, List<EmbeddingVector> embeddings) {
+        List<Long> ids = store.add(documents, embeddings);
+        if (ids != null) {
+            if (lexicalIndex != null) {
+                lexicalIndex.add(ids, documents);
+            }
+            collectionVersion.bump();
             System.out.println("✅ Batch inserted: " + documents.size() + " documents");
-            return true;
+        }
+        return ids;
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error inserting batch: " + e.getMessage());
-            return false;
+    /**
+     * Callback for batches that were written to Milvus
+     */
+    private interface InsertListener {
+        void batchInserted(List<String> documents, List<Long> ids) throws IOException;
+    }
+
+    /**
+     * A batch of documents with their embeddings, passed from the embed to the insert stage
+     */
+    private record EmbeddedBatch(int number, List<String> documents, List<EmbeddingVector> embeddings) {
+    }
+
+    /**
+     * Counters and first failure shared by the pipeline stages of one insertDocuments call
+     */
+    private static class PipelineState {
+        private final AtomicInteger inserted = new AtomicInteger();
+        private final AtomicInteger embeddedBatches = new AtomicInteger();
+        private final AtomicLong embedMillis = new AtomicLong();
+        private final AtomicLong insertMillis = new AtomicLong();
+        private final AtomicReference<String> failure = new AtomicReference<>();
+
+        void fail(String message) {
+            failure.compareAndSet(null, message == null ? "Unknown error" : message);
+        }
+
+        boolean hasFailed() {
+            return failure.get() != null;
         }
     }
 
@@ -229,10 +583,8 @@ public class MilvusEmbedAndInsert implements AutoCloseable {
             if (executorService != null && !executorService.isShutdown()) {
                 executorService.shutdown();
             }
-            if (milvusClient != null) {
-                milvusClient.close();
-                System.out.println("Milvus connection closed");
-            }
+            store.close();
+            embedder.close();
         } catch (Exception e) {
             System.err.println("Error closing resources: " + e.getMessage());
         }
@@ -270,7 +622,15 @@ public class MilvusEmbedAndInsert implements AutoCloseable {
         System.out.println("Starting Milvus Document Inserter...");
 
 
-        try (MilvusEmbedAndInsert inserter = new MilvusEmbedAndInsert()) {
+        // --local writes to the on-disk segment store instead of Milvus
+        boolean local = Arrays.asList(args).contains("--local");
+        Path indexPath = local
+                ? SegmentVectorStore.DEFAULT_DIRECTORY.resolve(InvertedIndex.DEFAULT_PATH.getFileName())
+                : InvertedIndex.DEFAULT_PATH;
+
+        try (MilvusEmbedAndInsert inserter = local
+                ? new MilvusEmbedAndInsert(SegmentVectorStore.open())
+                : new MilvusEmbedAndInsert()) {
 
             // Initialize collection
             if (!inserter.initializeCollection()) {
@@ -278,24 +638,48 @@ public class MilvusEmbedAndInsert implements AutoCloseable {
                 return;
             }
 
-            // Get sample documents
-            List<String> documents = getSampleDocuments();
-
-            // load document
-            String filePath = "data/sample.txt";
-            String text = DocumentLoader.loadTextFile(filePath);
-
-            documents = DocumentLoader.splitText(text, 500, 50);
-
-            System.out.println("Loaded text chunks:");
-
-//            List<String> documents = createQualityDocuments();
+            // The lexical index follows the collection, like the manifest
+            InvertedIndex lexicalIndex = InvertedIndex.loadIfExists(indexPath);
+            inserter.setLexicalIndex(lexicalIndex);
+            if (local) {
+                inserter.setCollectionVersion(CollectionVersion.forStore(SegmentVectorStore.DEFAULT_DIRECTORY));
+            }
 
-            System.out.println("Prepared " + documents.size() + " sample documents");
+            // Ingest a directory tree or a single file (data/sample.txt by default)
+            // --incremental only embeds new chunks and deletes vanished ones
+            boolean incremental = Arrays.asList(args).contains("--incremental");
+            Path source = Paths.get(Arrays.stream(args)
+                    .filter(arg -> !arg.startsWith("--"))
+                    .findFirst()
+                    .orElse("data/sample.txt"));
+
+            InsertionResult result;
+            DirectoryIngestor ingestor = Files.isDirectory(source) ? new DirectoryIngestor(source, 500, 50) : null;
+
+            try (Stream<String> chunks = ingestor != null
+                    ? ingestor.streamChunks()
+                    : DocumentLoader.streamChunks(source.toString(), 500, 50)) {
+
+                // Both modes keep the manifest in step with the collection
+                try (IngestionManifest manifest = local
+                        ? IngestionManifest.open(SegmentVectorStore.DEFAULT_DIRECTORY.resolve("ingest-manifest.log"))
+                        : IngestionManifest.open()) {
+                    String sourceName = IngestionManifest.sourceOf(source);
+                    result = incremental
+                            ? inserter.insertDocumentsIncrementally(chunks, manifest, sourceName,
+                                    ingestor != null ? ingestor.getProgress() : null)
+                            : inserter.insertDocuments(chunks, manifest, sourceName);
+                }
+            } finally {
+                if (ingestor != null) {
+                    ingestor.close();
+                }
+            }
 
-            // Insert documents
-            InsertionResult result = inserter.insertDocuments(documents);
             System.out.println("Result: " + result);
+            lexicalIndex.save(indexPath);
+            System.out.println("📇 Lexical index saved: " + lexicalIndex.size() + " chunks, "
+                    + lexicalIndex.termCount() + " terms");
 
             if (result.isSuccess()) {
                 System.out.println("Document insertion completed successfully!");
@@ -0,0 +1,447 @@
+package org.example;
+
+import io.milvus.grpc.DescribeIndexResponse;
+import io.milvus.grpc.IndexDescription;
+import io.milvus.grpc.KeyValuePair;
+import io.milvus.grpc.MutationResult;
+import io.milvus.grpc.SearchResults;
+import io.milvus.param.MetricType;
+import io.milvus.param.IndexType;
+import io.milvus.param.R;
+import io.milvus.param.RpcStatus;
+import io.milvus.param.collection.FlushParam;
+import io.milvus.param.collection.LoadCollectionParam;
+import io.milvus.param.collection.ReleaseCollectionParam;
+import io.milvus.param.dml.DeleteParam;
+import io.milvus.param.dml.InsertParam;
+import io.milvus.param.dml.SearchParam;
+import io.milvus.param.index.CreateIndexParam;
+import io.milvus.param.index.DescribeIndexParam;
+import io.milvus.param.index.DropIndexParam;
+import io.milvus.response.MutationResultWrapper;
+import io.milvus.response.SearchResultsWrapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * VectorStore backed by a Milvus collection with "id", "text" and "embedding" fields,
+ * as created by {@link MilvusCreateCollection}. Connections come from the shared
+ * {@link MilvusClientPool}; index type and search parameters come from {@link IndexConfig}.
+ */
+public class MilvusVectorStore implements VectorStore {
+
+    public static final String DEFAULT_COLLECTION = "documents";
+
+    private static final String TEXT_FIELD = "text";
+    private static final String EMBEDDING_FIELD = "embedding";
+    // Query vectors per search RPC, well below Milvus' nq limit and gRPC message size
+    private static final int MAX_SEARCH_VECTORS = 256;
+
+    private final MilvusClientPool pool;
+    private final String collectionName;
+    private volatile IndexConfig indexConfig;
+
+    /**
+     * Default collection on the configured Milvus (MILVUS_HOST / MILVUS_PORT)
+     */
+    public MilvusVectorStore() {
+        this(MilvusClientPool.acquire(), DEFAULT_COLLECTION);
+    }
+
+    public MilvusVectorStore(String host, int port, String collectionName) {
+        this(MilvusClientPool.acquire(host, port), collectionName);
+    }
+
+    /**
+     * @param pool an acquired pool; closing this store releases it
+     */
+    public MilvusVectorStore(MilvusClientPool pool, String collectionName) {
+        this(pool, collectionName, IndexConfig.load());
+    }
+
+    public MilvusVectorStore(MilvusClientPool pool, String collectionName, IndexConfig indexConfig) {
+        this.pool = pool;
+        this.collectionName = collectionName;
+        this.indexConfig = indexConfig;
+    }
+
+    public IndexConfig getIndexConfig() {
+        return indexConfig;
+    }
+
+    /**
+     * Use other search parameters from now on; a different index type or build
+     * parameters only take effect after {@link #rebuildIndex()}
+     */
+    public void setIndexConfig(IndexConfig indexConfig) {
+        this.indexConfig = indexConfig;
+    }
+
+    /**
+     * Create the index if needed, rebuild it if it was built with another config,
+     * and load the collection into memory for search
+     */
+    public boolean initialize() {
+        try {
+            System.out.println("Initializing collection: " + collectionName);
+
+            boolean indexCreated = ensureIndex();
+            boolean collectionLoaded = loadCollection();
+
+            if (indexCreated && collectionLoaded) {
+                System.out.println("Collection initialized successfully!");
+                return true;
+            } else {
+                System.err.println("Collection initialization had issues");
+                return false;
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to initialize collection: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Create the index for the embedding field if there is none, or rebuild it if the
+     * live index does not match the config, so search parameters fit the index they go to
+     */
+    private boolean ensureIndex() {
+        IndexConfig live = describeIndex();
+        if (live == null) {
+            R<RpcStatus> created = createIndex(indexConfig);
+            if (created.getStatus() != R.Status.Success.getCode()) {
+                System.err.println("❌ Error creating " + indexConfig.indexType() + " index: " + created.getMessage());
+                return false;
+            }
+            System.out.println("✅ Index created successfully!");
+            return true;
+        }
+
+        if (live.sameBuild(indexConfig)) {
+            System.out.println("ℹ️ Index already exists: " + live.indexType() + " " + live.buildParams());
+            return true;
+        }
+        System.out.println("🔄 Index is " + live.indexType() + " " + live.buildParams()
+                + ", config wants " + indexConfig.indexType() + " " + indexConfig.buildParams() + "; rebuilding");
+        if (!rebuildIndex()) {
+            // The live index is back and the search parameters now match it
+            System.err.println("⚠️ Keeping the existing " + indexConfig.indexType() + " index");
+        }
+        return true;
+    }
+
+    /**
+     * What the collection's embedding index is built with, or null if it has none.
+     * Search parameters are kept from the config if the index type matches.
+     */
+    private IndexConfig describeIndex() {
+        R<DescribeIndexResponse> response = pool.client().describeIndex(DescribeIndexParam.newBuilder()
+                .withCollectionName(collectionName)
+                .withFieldName(EMBEDDING_FIELD)
+                .build());
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            String message = String.valueOf(response.getMessage());
+            if (message.contains("not found") || message.contains("not exist")) {
+                return null;
+            }
+            throw new IllegalStateException("Could not describe the index: " + message);
+        }
+
+        for (IndexDescription description : response.getData().getIndexDescriptionsList()) {
+            if (!description.getFieldName().equals(EMBEDDING_FIELD)) {
+                continue;
+            }
+            String indexType = null;
+            StringJoiner buildParams = new StringJoiner(",", "{", "}");
+            for (KeyValuePair pair : description.getParamsList()) {
+                switch (pair.getKey()) {
+                    case "index_type" -> indexType = pair.getValue();
+                    // Older servers nest the build parameters as JSON, newer ones list them flat
+                    case "params" -> buildParams.add(pair.getValue().replaceAll("^\\s*\\{|}\\s*$", ""));
+                    default -> {
+                        if (pair.getValue().matches("\\d+")) {
+                            buildParams.add("\"" + pair.getKey() + "\":" + pair.getValue());
+                        }
+                    }
+                }
+            }
+            if (indexType == null) {
+                return null;
+            }
+            String searchParams = indexType.equals(indexConfig.indexType())
+                    ? indexConfig.searchParams()
+                    : IndexConfig.defaultSearchParams(indexType);
+            return new IndexConfig(indexType, buildParams.toString(), searchParams);
+        }
+        return null;
+    }
+
+    /**
+     * Replace the index with the one in the current config and reload the collection.
+     * Waits until the index is built, so searches afterwards measure the new index.
+     * If the new index cannot be built, the previous one is built again and loaded.
+     */
+    public boolean rebuildIndex() {
+        IndexConfig target = indexConfig;
+        IndexConfig previous = null;
+        boolean dropped = false;
+        try {
+            previous = describeIndex();
+            pool.client().releaseCollection(ReleaseCollectionParam.newBuilder()
+                    .withCollectionName(collectionName)
+                    .build());
+            pool.client().dropIndex(DropIndexParam.newBuilder()
+                    .withCollectionName(collectionName)
+                    .build());
+            dropped = true;
+
+            R<RpcStatus> created = createIndex(target);
+            if (created.getStatus() != R.Status.Success.getCode()) {
+                System.err.println("❌ Error creating " + target.indexType() + " index: " + created.getMessage());
+                restoreIndex(previous, dropped);
+                return false;
+            }
+            return loadCollection();
+
+        } catch (Exception e) {
+            System.err.println("❌ Error rebuilding index: " + e.getMessage());
+            restoreIndex(previous, dropped);
+            return false;
+        }
+    }
+
+    /**
+     * Build the previous index again if it was dropped, and load the collection
+     */
+    private void restoreIndex(IndexConfig previous, boolean dropped) {
+        if (previous == null) {
+            loadCollection();
+            return;
+        }
+        indexConfig = previous;
+        if (dropped) {
+            System.out.println("↩️ Restoring the previous " + previous.indexType() + " index");
+            try {
+                R<RpcStatus> created = createIndex(previous);
+                if (created.getStatus() != R.Status.Success.getCode()) {
+                    System.err.println("❌ Error restoring the previous index: " + created.getMessage());
+                }
+            } catch (Exception e) {
+                System.err.println("❌ Error restoring the previous index: " + e.getMessage());
+            }
+        }
+        loadCollection();
+    }
+
+    private R<RpcStatus> createIndex(IndexConfig config) {
+        return pool.client().createIndex(CreateIndexParam.newBuilder()
+                .withCollectionName(collectionName)
+                .withFieldName(EMBEDDING_FIELD)
+                .withIndexType(IndexType.valueOf(config.indexType()))
+                .withMetricType(MetricType.COSINE)
+                .withExtraParam(config.buildParams())
+                .withSyncMode(Boolean.TRUE)
+                .build());
+    }
+
+    /**
+     * Seal inserted data into segments, so it is served by the index rather than brute force
+     */
+    public boolean flush() {
+        try {
+            pool.client().flush(FlushParam.newBuilder()
+                    .withCollectionNames(Collections.singletonList(collectionName))
+                    .withSyncFlush(Boolean.TRUE)
+                    .build());
+            return true;
+        } catch (Exception e) {
+            System.err.println("❌ Error flushing collection: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Load collection into memory for search operations
+     */
+    private boolean loadCollection() {
+        try {
+            LoadCollectionParam loadParam = LoadCollectionParam.newBuilder()
+                    .withCollectionName(collectionName)
+                    .build();
+
+            pool.client().loadCollection(loadParam);
+            System.out.println("✅ Collection loaded into memory!");
+            return true;
+        } catch (Exception e) {
+            System.err.println("❌ Error loading collection: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public List<Long> add(List<String> texts, List<EmbeddingVector> vectors) {
+        try {
+            InsertParam insertParam = InsertParam.newBuilder()
+                    .withCollectionName(collectionName)
+                    .withFields(Arrays.asList(
+                            new InsertParam.Field(TEXT_FIELD, texts),
+                            new InsertParam.Field(EMBEDDING_FIELD, vectors)
+                    ))
+                    .build();
+
+            R<MutationResult> response = pool.client().insert(insertParam);
+            if (response.getStatus() != R.Status.Success.getCode()) {
+                pool.reportFailure();
+                System.err.println("Error inserting batch: " + response.getMessage());
+                return null;
+            }
+            return new MutationResultWrapper(response.getData()).getLongIDs();
+
+        } catch (Exception e) {
+            pool.reportFailure();
+            System.err.println("Error inserting batch: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public List<SearchHit> search(float[] query, int topK) {
+        try {
+            SearchParam searchParam = SearchParam.newBuilder()
+                    .withCollectionName(collectionName)
+                    .withMetricType(MetricType.COSINE)
+                    .withTopK(topK)
+                    .withOutFields(Collections.singletonList(TEXT_FIELD))
+                    .withVectors(Collections.singletonList(EmbeddingVector.of(query)))
+                    .withVectorFieldName(EMBEDDING_FIELD)
+                    .withParams(indexConfig.searchParams())
+                    .build();
+
+            R<SearchResults> response = pool.client().search(searchParam);
+            if (response.getStatus() != R.Status.Success.getCode()) {
+                pool.reportFailure();
+                System.err.println("❌ Error during retrieval: " + response.getMessage());
+                return SEARCH_FAILED;
+            }
+
+            return hitsOf(new SearchResultsWrapper(response.getData().getResults()), 0);
+
+        } catch (Exception e) {
+            pool.reportFailure();
+            System.err.println("❌ Error during retrieval: " + e.getMessage());
+            return SEARCH_FAILED;
+        }
+    }
+
+    /**
+     * One multi-vector search RPC per {@value #MAX_SEARCH_VECTORS} queries, results split
+     * back per query index
+     */
+    @Override
+    public List<List<SearchHit>> searchBatch(List<float[]> queries, int topK) {
+        List<List<SearchHit>> results = new ArrayList<>(queries.size());
+
+        for (int start = 0; start < queries.size(); start += MAX_SEARCH_VECTORS) {
+            List<float[]> batch = queries.subList(start, Math.min(start + MAX_SEARCH_VECTORS, queries.size()));
+            List<EmbeddingVector> vectors = new ArrayList<>(batch.size());
+            for (float[] query : batch) {
+                vectors.add(EmbeddingVector.of(query));
+            }
+
+            try {
+                SearchParam searchParam = SearchParam.newBuilder()
+                        .withCollectionName(collectionName)
+                        .withMetricType(MetricType.COSINE)
+                        .withTopK(topK)
+                        .withOutFields(Collections.singletonList(TEXT_FIELD))
+                        .withVectors(vectors)
+                        .withVectorFieldName(EMBEDDING_FIELD)
+                        .withParams(indexConfig.searchParams())
+                        .build();
+
+                R<SearchResults> response = pool.client().search(searchParam);
+                if (response.getStatus() != R.Status.Success.getCode()) {
+                    pool.reportFailure();
+                    System.err.println("❌ Error during batch retrieval: " + response.getMessage());
+                    addFailed(results, batch.size());
+                    continue;
+                }
+
+                // All of the batch or none of it, so results stay aligned with the queries
+                SearchResultsWrapper wrapper = new SearchResultsWrapper(response.getData().getResults());
+                List<List<SearchHit>> batchResults = new ArrayList<>(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    batchResults.add(hitsOf(wrapper, i));
+                }
+                results.addAll(batchResults);
+
+            } catch (Exception e) {
+                pool.reportFailure();
+                System.err.println("❌ Error during batch retrieval: " + e.getMessage());
+                addFailed(results, batch.size());
+            }
+        }
+        return results;
+    }
+
+    private static List<SearchHit> hitsOf(SearchResultsWrapper results, int queryIndex) {
+        List<?> texts = results.getFieldData(TEXT_FIELD, queryIndex);
+        List<SearchResultsWrapper.IDScore> scores = results.getIDScore(queryIndex);
+
+        List<SearchHit> hits = new ArrayList<>(scores.size());
+        for (int i = 0; i < scores.size(); i++) {
+            if (texts.get(i) instanceof String text) {
+                hits.add(new SearchHit(scores.get(i).getLongID(), text, scores.get(i).getScore()));
+            }
+        }
+        return hits;
+    }
+
+    private static void addFailed(List<List<SearchHit>> results, int count) {
+        for (int i = 0; i < count; i++) {
+            results.add(SEARCH_FAILED);
+        }
+    }
+
+    @Override
+    public boolean delete(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return true;
+        }
+
+        StringJoiner expr = new StringJoiner(",", "id in [", "]");
+        for (Long id : ids) {
+            expr.add(String.valueOf(id));
+        }
+
+        try {
+            R<MutationResult> response = pool.client().delete(DeleteParam.newBuilder()
+                    .withCollectionName(collectionName)
+                    .withExpr(expr.toString())
+                    .build());
+
+            if (response.getStatus() != R.Status.Success.getCode()) {
+                System.err.println("Error deleting chunks: " + response.getMessage());
+                return false;
+            }
+            return true;
+
+        } catch (Exception e) {
+            System.err.println("Error deleting chunks: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public String getCollectionName() {
+        return collectionName;
+    }
+
+    @Override
+    public void close() {
+        pool.release();
+    }
+}
@@ -0,0 +1,22 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Plain UTF-8 text, read through a memory-mapped window
+ */
+public class PlainTextExtractor implements TextExtractor {
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("txt", "text");
+    }
+
+    @Override
+    public Reader open(Path file) throws IOException {
+        return new MappedTextReader(file);
+    }
+}
@@ -0,0 +1,480 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * Cosine search over int8 scalar-quantized vectors with exact float re-scoring.
+ *
+ * Each dimension of a normalized vector is mapped to one signed byte using a per-dimension
+ * min and scale calibrated on the first {@value #CALIBRATION_VECTORS} vectors: until the
+ * store holds that many, a batch with values outside the range widens it (with some
+ * slack) and the stored vectors are re-encoded from their full-precision copies, so a
+ * small first batch does not clip everything after it. Later outliers are clamped. Only
+ * the codes are kept in memory, in direct ByteBuffers, which is 1 byte per dimension
+ * instead of 4.
+ *
+ * A search first scans the codes with the float query (asymmetric distance) to collect
+ * {@code topK * rescoreMultiplier} candidates, then re-scores only those against the
+ * full-precision vectors, which are appended to a file and read back on demand (the OS
+ * page cache keeps the hot ones in memory). Each store has its own file, removed on close.
+ *
+ * Nothing is kept across restarts, so the store is for processes that ingest and search
+ * themselves, through the VectorStore constructors of {@link MilvusEmbedAndInsert} and
+ * {@link Retriever}; the command line tools use Milvus or {@link SegmentVectorStore}.
+ */
+public class QuantizedVectorStore implements VectorStore {
+
+    public static final Path DEFAULT_DIRECTORY = Paths.get("data");
+    public static final int DEFAULT_RESCORE_MULTIPLIER = 10;
+
+    // Vectors the range is fitted to, which bounds the cost of re-encoding
+    private static final int CALIBRATION_VECTORS = 1000;
+    // A widened range grows by this fraction more, so it is not widened on every batch
+    private static final float RANGE_SLACK = 0.1f;
+
+    private final int blockVectors;
+    private final int rescoreMultiplier;
+    private final Path vectorFile;
+    private final FileChannel vectors;
+    private final ThreadLocal<ByteBuffer> readBuffer = new ThreadLocal<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock
+    private final List<ByteBuffer> blocks = new ArrayList<>();
+    private final List<String> texts = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private int dimension = -1;
+    private float[] min;
+    private float[] scale;
+
+    /**
+     * Store with a new vector file of its own under {@link #DEFAULT_DIRECTORY}
+     */
+    public QuantizedVectorStore() throws IOException {
+        this(newVectorFile(DEFAULT_DIRECTORY), FlatVectorStore.DEFAULT_BLOCK_VECTORS, DEFAULT_RESCORE_MULTIPLIER);
+    }
+
+    /**
+     * @param vectorFile        where the full-precision vectors for re-scoring are written;
+     *                          truncated on open, so no two stores may share it
+     * @param blockVectors      vectors per off-heap block of codes, also the unit of parallel work
+     * @param rescoreMultiplier candidates re-scored per requested result; 1 disables re-scoring
+     */
+    public QuantizedVectorStore(Path vectorFile, int blockVectors, int rescoreMultiplier) throws IOException {
+        if (blockVectors < 1 || rescoreMultiplier < 1) {
+            throw new IllegalArgumentException("Block size and rescore multiplier must be positive");
+        }
+        this.blockVectors = blockVectors;
+        this.rescoreMultiplier = rescoreMultiplier;
+        this.vectorFile = vectorFile;
+
+        Path parent = vectorFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.vectors = FileChannel.open(vectorFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static Path newVectorFile(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        return Files.createTempFile(directory, "quantized-vectors-", ".f32");
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return texts.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bytes of quantized codes held in memory
+     */
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) blocks.size() * blockVectors * Math.max(dimension, 0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Long> add(List<String> documents, List<EmbeddingVector> embeddings) {
+        if (documents.size() != embeddings.size()) {
+            System.err.println("Mismatch between documents and embeddings count");
+            return null;
+        }
+        if (documents.isEmpty()) {
+            return List.of();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (dimension < 0) {
+                dimension = embeddings.get(0).dimension();
+            }
+            List<float[]> normalized = new ArrayList<>(embeddings.size());
+            for (EmbeddingVector vector : embeddings) {
+                if (vector.dimension() != dimension) {
+                    System.err.println("Error inserting batch: expected " + dimension
+                            + " dimensions, got " + vector.dimension());
+                    return null;
+                }
+                normalized.add(HnswVectorStore.normalize(vector.array()));
+            }
+            if (min == null) {
+                calibrate(normalized);
+            } else if (texts.size() < CALIBRATION_VECTORS) {
+                widen(normalized);
+            }
+
+            // Full-precision copies go to disk first so a failed write leaves no codes behind
+            int first = texts.size();
+            ByteBuffer raw = ByteBuffer.allocate(normalized.size() * dimension * Float.BYTES)
+                    .order(ByteOrder.nativeOrder());
+            for (float[] vector : normalized) {
+                raw.asFloatBuffer().put(vector);
+                raw.position(raw.position() + dimension * Float.BYTES);
+            }
+            raw.flip();
+            long position = (long) first * dimension * Float.BYTES;
+            while (raw.hasRemaining()) {
+                position += vectors.write(raw, position);
+            }
+
+            List<Long> ids = new ArrayList<>(documents.size());
+            for (int i = 0; i < documents.size(); i++) {
+                int id = texts.size();
+                int slot = id % blockVectors;
+                if (slot == 0) {
+                    blocks.add(ByteBuffer.allocateDirect(blockVectors * dimension));
+                }
+                encode(normalized.get(i), min, scale, blocks.get(id / blockVectors), slot * dimension);
+                texts.add(documents.get(i));
+                ids.add((long) id);
+            }
+            return ids;
+
+        } catch (IOException e) {
+            System.err.println("Error inserting batch: " + e.getMessage());
+            return null;
+        } catch (OutOfMemoryError e) {
+            System.err.println("Error inserting batch: out of direct memory (" + e.getMessage() + ")");
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Per-dimension range from the first batch, so each code step covers 1/255 of it
+     */
+    private void calibrate(List<float[]> sample) {
+        min = new float[dimension];
+        scale = new float[dimension];
+        for (int d = 0; d < dimension; d++) {
+            float low = Float.POSITIVE_INFINITY;
+            float high = Float.NEGATIVE_INFINITY;
+            for (float[] vector : sample) {
+                low = Math.min(low, vector[d]);
+                high = Math.max(high, vector[d]);
+            }
+            min[d] = low;
+            scale[d] = Math.max(high - low, 1e-6f) / 255f;
+        }
+        System.out.println("📏 Calibrated int8 quantization on " + sample.size() + " vectors");
+    }
+
+    /**
+     * Widen the range to cover the batch and re-encode the stored vectors if it changed.
+     * The new range and codes replace the old ones only once all are encoded.
+     */
+    private void widen(List<float[]> batch) throws IOException {
+        float[] newMin = min.clone();
+        float[] newScale = scale.clone();
+        boolean widened = false;
+        for (int d = 0; d < dimension; d++) {
+            float low = min[d];
+            float high = min[d] + 255 * scale[d];
+            float batchLow = low;
+            float batchHigh = high;
+            for (float[] vector : batch) {
+                batchLow = Math.min(batchLow, vector[d]);
+                batchHigh = Math.max(batchHigh, vector[d]);
+            }
+            if (batchLow < low || batchHigh > high) {
+                float slack = (batchHigh - batchLow) * RANGE_SLACK;
+                float newLow = batchLow < low ? batchLow - slack : low;
+                float newHigh = batchHigh > high ? batchHigh + slack : high;
+                newMin[d] = newLow;
+                newScale[d] = (newHigh - newLow) / 255f;
+                widened = true;
+            }
+        }
+        if (!widened) {
+            return;
+        }
+
+        int size = texts.size();
+        List<ByteBuffer> newBlocks = new ArrayList<>(blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            newBlocks.add(ByteBuffer.allocateDirect(blockVectors * dimension));
+        }
+        // Fewer than CALIBRATION_VECTORS, so one read
+        ByteBuffer raw = ByteBuffer.allocate(size * dimension * Float.BYTES).order(ByteOrder.nativeOrder());
+        while (raw.hasRemaining()) {
+            if (vectors.read(raw, raw.position()) < 0) {
+                throw new IOException("Vector file is shorter than the index");
+            }
+        }
+        FloatBuffer floats = raw.flip().asFloatBuffer();
+        float[] vector = new float[dimension];
+        for (int id = 0; id < size; id++) {
+            floats.get(id * dimension, vector);
+            encode(vector, newMin, newScale, newBlocks.get(id / blockVectors), (id % blockVectors) * dimension);
+        }
+
+        blocks.clear();
+        blocks.addAll(newBlocks);
+        min = newMin;
+        scale = newScale;
+        System.out.println("📏 Widened int8 quantization range, re-encoded " + size + " vectors");
+    }
+
+    private void encode(float[] vector, float[] min, float[] scale, ByteBuffer codes, int offset) {
+        for (int d = 0; d < dimension; d++) {
+            int code = Math.round((vector[d] - min[d]) / scale[d]) - 128;
+            codes.put(offset + d, (byte) Math.max(-128, Math.min(127, code)));
+        }
+    }
+
+    @Override
+    public List<SearchHit> search(float[] query, int topK) {
+        lock.readLock().lock();
+        try {
+            int size = texts.size();
+            if (size == 0 || topK < 1) {
+                return List.of();
+            }
+            if (query.length != dimension) {
+                System.err.println("❌ Query has " + query.length + " dimensions, index has " + dimension);
+                return SEARCH_FAILED;
+            }
+
+            float[] normalized = HnswVectorStore.normalize(query);
+
+            // q . (min + scale * (code + 128)) differs between vectors only in sum(q * scale * code)
+            float[] weights = new float[dimension];
+            for (int d = 0; d < dimension; d++) {
+                weights[d] = normalized[d] * scale[d];
+            }
+
+            int candidates = topK * rescoreMultiplier;
+            int blockCount = blocks.size();
+            TopK approximate = blockCount == 1
+                    ? scanBlock(0, weights, candidates, size)
+                    : IntStream.range(0, blockCount).parallel()
+                            .mapToObj(block -> scanBlock(block, weights, candidates, size))
+                            .reduce(TopK::merge)
+                            .orElseGet(() -> new TopK(candidates));
+
+            if (rescoreMultiplier == 1) {
+                // Add back the part shared by all vectors, so the score is the cosine again
+                float offset = 0;
+                for (int d = 0; d < dimension; d++) {
+                    offset += normalized[d] * (min[d] + 128 * scale[d]);
+                }
+                List<SearchHit> hits = new ArrayList<>(approximate.size());
+                for (SearchHit hit : approximate.drain(texts)) {
+                    hits.add(new SearchHit(hit.id(), hit.text(), hit.score() + offset));
+                }
+                return hits;
+            }
+
+            TopK best = new TopK(topK);
+            ByteBuffer buffer = readBuffer();
+            for (int i = 0; i < approximate.size(); i++) {
+                int id = approximate.id(i);
+                buffer.clear();
+                long position = (long) id * dimension * Float.BYTES;
+                while (buffer.hasRemaining()) {
+                    int read = vectors.read(buffer, position + buffer.position());
+                    if (read < 0) {
+                        throw new IOException("Vector file is shorter than the index");
+                    }
+                }
+                best.offer(DotProduct.dot(buffer, 0, normalized), id);
+            }
+            return best.drain(texts);
+
+        } catch (IOException e) {
+            System.err.println("❌ Error during retrieval: " + e.getMessage());
+            return SEARCH_FAILED;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private TopK scanBlock(int block, float[] weights, int k, int size) {
+        ByteBuffer codes = blocks.get(block);
+        int first = block * blockVectors;
+        int end = Math.min(size, first + blockVectors);
+
+        TopK best = new TopK(k);
+        for (int id = first; id < end; id++) {
+            if (deleted.get(id)) {
+                continue;
+            }
+            best.offer(DotProduct.dotInt8(codes, (id - first) * dimension, weights), id);
+        }
+        return best;
+    }
+
+    private ByteBuffer readBuffer() {
+        ByteBuffer buffer = readBuffer.get();
+        if (buffer == null || buffer.capacity() != dimension * Float.BYTES) {
+            buffer = ByteBuffer.allocateDirect(dimension * Float.BYTES).order(ByteOrder.nativeOrder());
+            readBuffer.set(buffer);
+        }
+        return buffer;
+    }
+
+    @Override
+    public boolean delete(List<Long> ids) {
+        lock.writeLock().lock();
+        try {
+            for (long id : ids) {
+                if (id >= 0 && id < texts.size()) {
+                    deleted.set((int) id);
+                }
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            blocks.clear();
+            texts.clear();
+            deleted.clear();
+            vectors.close();
+            Files.deleteIfExists(vectorFile);
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not remove " + vectorFile + ": " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Memory and recall@k of the quantized store against exact search on random vectors.
+     *
+     * Usage: QuantizedVectorStore [count] [dimension] [queries] [k]
+     */
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int dimension = args.length > 1 ? Integer.parseInt(args[1]) : 768;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int k = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        Random random = new Random(42);
+        List<String> texts = new ArrayList<>(count);
+        List<EmbeddingVector> embeddings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            texts.add("document " + i);
+            embeddings.add(EmbeddingVector.of(randomVector(random, dimension)));
+        }
+        float[][] queryVectors = new float[queries][];
+        for (int i = 0; i < queries; i++) {
+            queryVectors[i] = randomVector(random, dimension);
+        }
+
+        System.out.printf("📊 Int8 quantization: %d vectors, %d dimensions, %d queries, recall@%d%n",
+                count, dimension, queries, k);
+
+        Path file = Files.createTempFile("quantized-vectors", ".f32");
+        try (FlatVectorStore exact = new FlatVectorStore();
+             QuantizedVectorStore codesOnly = new QuantizedVectorStore(file, FlatVectorStore.DEFAULT_BLOCK_VECTORS, 1);
+             QuantizedVectorStore rescored = new QuantizedVectorStore(file.resolveSibling(file.getFileName() + ".r"),
+                     FlatVectorStore.DEFAULT_BLOCK_VECTORS, DEFAULT_RESCORE_MULTIPLIER)) {
+
+            // Same batch size as the ingestion pipeline, so calibration sees one batch
+            for (int from = 0; from < count; from += 100) {
+                int to = Math.min(count, from + 100);
+                exact.add(texts.subList(from, to), embeddings.subList(from, to));
+                codesOnly.add(texts.subList(from, to), embeddings.subList(from, to));
+                rescored.add(texts.subList(from, to), embeddings.subList(from, to));
+            }
+
+            // Both stores allocate whole blocks, so compare allocated sizes
+            long floatBytes = rescored.memoryBytes() * Float.BYTES;
+            System.out.println("━".repeat(60));
+            System.out.printf("%-22s %12s %12s %10s%n", "store", "MB in RAM", "ms/query", "recall");
+            report("float32 exact", exact, floatBytes, exact, queryVectors, k);
+            report("int8 codes only", codesOnly, codesOnly.memoryBytes(), exact, queryVectors, k);
+            report("int8 + re-scoring", rescored, rescored.memoryBytes(), exact, queryVectors, k);
+            System.out.println("━".repeat(60));
+            System.out.printf("➡️ %.1fx less memory for vectors; full-precision copies stay on disk%n",
+                    (double) floatBytes / rescored.memoryBytes());
+        }
+    }
+
+    private static void report(String name, VectorStore store, long bytes, VectorStore exact,
+                               float[][] queryVectors, int k) {
+        for (int i = 0; i < Math.min(20, queryVectors.length); i++) {
+            store.search(queryVectors[i], k); // warm up
+        }
+        int found = 0;
+        int total = 0;
+        long elapsed = 0;
+        for (float[] query : queryVectors) {
+            Set<String> truth = new HashSet<>();
+            for (SearchHit hit : exact.search(query, k)) {
+                truth.add(hit.text());
+            }
+            long start = System.nanoTime();
+            List<SearchHit> hits = store.search(query, k);
+            elapsed += System.nanoTime() - start;
+            for (SearchHit hit : hits) {
+                if (truth.contains(hit.text())) {
+                    found++;
+                }
+            }
+            total += truth.size();
+        }
+        System.out.printf("%-22s %12.1f %12.3f %10.3f%n", name, bytes / 1e6,
+                elapsed / 1e6 / queryVectors.length, total == 0 ? 0 : (double) found / total);
+    }
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
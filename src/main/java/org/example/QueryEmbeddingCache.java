@@ -0,0 +1,136 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU cache of query embeddings, keyed by the normalized query text.
+ *
+ * Repeated questions (FAQ traffic, retries, whitespace or hamza variants) reuse the
+ * stored vector instead of calling the embedding model again.
+ */
+public class QueryEmbeddingCache {
+
+    public static final int DEFAULT_CAPACITY = 1_000;
+
+    private final Map<String, float[]> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public QueryEmbeddingCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public QueryEmbeddingCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Return the cached embedding for the query, computing it on a miss.
+     * The model is called outside the lock so misses do not block hits.
+     * The returned array is shared between callers and must not be modified.
+     */
+    public float[] get(String query, Function<String, float[]> embed) {
+        String key = ArabicTextNormalizer.normalize(query);
+
+        float[] vector;
+        synchronized (entries) {
+            vector = entries.get(key);
+        }
+        if (vector != null) {
+            hits.incrementAndGet();
+            return vector;
+        }
+
+        misses.incrementAndGet();
+        vector = embed.apply(query);
+        synchronized (entries) {
+            entries.put(key, vector);
+        }
+        return vector;
+    }
+
+    /**
+     * Batch form of {@link #get}: all misses (deduplicated by key) go to the model in one
+     * call, and the vectors come back in query order.
+     */
+    public List<float[]> getAll(List<String> queries, Function<List<String>, List<float[]>> embedAll) {
+        List<String> keys = new ArrayList<>(queries.size());
+        List<float[]> vectors = new ArrayList<>(queries.size());
+        Map<String, String> missing = new LinkedHashMap<>(); // key -> first query text
+
+        synchronized (entries) {
+            for (String query : queries) {
+                String key = ArabicTextNormalizer.normalize(query);
+                float[] vector = entries.get(key);
+                keys.add(key);
+                vectors.add(vector);
+                if (vector == null) {
+                    missing.putIfAbsent(key, query);
+                }
+            }
+        }
+        hits.addAndGet(queries.size() - missing.size());
+        misses.addAndGet(missing.size());
+        if (missing.isEmpty()) {
+            return vectors;
+        }
+
+        List<float[]> embedded = embedAll.apply(new ArrayList<>(missing.values()));
+        if (embedded.size() != missing.size()) {
+            throw new IllegalStateException("Expected " + missing.size() + " embeddings, got " + embedded.size());
+        }
+        Map<String, float[]> byKey = new LinkedHashMap<>();
+        int j = 0;
+        for (String key : missing.keySet()) {
+            byKey.put(key, embedded.get(j++));
+        }
+
+        synchronized (entries) {
+            entries.putAll(byKey);
+        }
+        for (int i = 0; i < vectors.size(); i++) {
+            if (vectors.get(i) == null) {
+                vectors.set(i, byKey.get(keys.get(i)));
+            }
+        }
+        return vectors;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses (%.1f%% hit rate), %d cached",
+                getHits(), getMisses(), getHitRate() * 100, size());
+    }
+}
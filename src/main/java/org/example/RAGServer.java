@@ -0,0 +1,311 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP front end for {@link RAGSystem}, so other applications can ask questions.
+ *
+ * Endpoints:
+ *   POST /ask          {"question": "..."} -> answer, sources and timings as JSON
+ *   GET  /ask?q=...    the same
+ *   GET  /ask/stream?q=...  Server-Sent Events: "token" events while the answer is
+ *                      generated, then one "done" event with sources and timings
+ *   GET  /health       status and load
+ *
+ * Each request runs on its own virtual thread when the JVM has them (Java 21+), so
+ * thousands of open requests can wait on Ollama without a thread each; on older JVMs a
+ * pool of platform threads is used, and requests waiting for one count as open too.
+ * One RAGSystem serves all requests; its retriever, generator and caches are thread-safe.
+ *
+ * Two limits answer 503 instead of letting requests pile up:
+ * - --max-requests: requests open at once, checked before any work is done
+ * - --max-queued: requests waiting for a generation slot, in the generator's limiter
+ *   (defaults to --max-requests, so every admitted request may wait for Ollama)
+ * The generator runs {@link Generator#DEFAULT_MAX_CONCURRENT} generations at once.
+ * A client that disconnects from a stream stops its generation.
+ *
+ * Usage: RAGServer [--port 8080] [--max-requests 2000] [--max-queued 2000] [--compress] [--local]
+ */
+public class RAGServer implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_MAX_REQUESTS = 2_000;
+    // Platform threads when virtual threads are not available
+    public static final int DEFAULT_PLATFORM_THREADS = 200;
+
+    private static final int BACKLOG = 1_024;
+    private static final int RETRY_AFTER_SECONDS = 5;
+    // Set while the dispatcher thread answers a request the platform thread pool had no room for
+    private static final ThreadLocal<Boolean> OVERLOADED = ThreadLocal.withInitial(() -> false);
+
+    private final RAGSystem rag;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrencyLimiter admission;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // 503s sent because no pool thread was free, on top of the admission rejections
+    private final AtomicLong overloadRejected = new AtomicLong();
+
+    public RAGServer(RAGSystem rag, int port) throws IOException {
+        this(rag, port, DEFAULT_MAX_REQUESTS);
+    }
+
+    /**
+     * @param maxRequests requests handled at once; more are answered with 503
+     */
+    public RAGServer(RAGSystem rag, int port, int maxRequests) throws IOException {
+        this.rag = rag;
+        this.admission = new ConcurrencyLimiter("HTTP requests", maxRequests, 0);
+        this.executor = newRequestExecutor(maxRequests);
+        this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        server.setExecutor(executor);
+        server.createContext("/ask/stream", exchange -> handle(exchange, this::stream, true));
+        server.createContext("/ask", exchange -> handle(exchange, this::ask, true));
+        // Not admission controlled, so monitoring still gets an answer under overload
+        server.createContext("/health", exchange -> handle(exchange, this::health, false));
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("🌐 RAG server listening on port " + getPort()
+                + (isVirtual() ? " (virtual threads)" : " (" + DEFAULT_PLATFORM_THREADS + " threads)"));
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public ConcurrencyLimiter getAdmission() {
+        return admission;
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        System.out.println("🔒 RAG server stopped. " + admission
+                + (overloadRejected.get() > 0 ? ", " + overloadRejected.get() + " rejected with no free thread" : ""));
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * Admission control and error handling shared by all endpoints
+     */
+    private void handle(HttpExchange exchange, Handler handler, boolean admit) {
+        try (exchange) {
+            if (!admit) {
+                handler.handle(exchange);
+                return;
+            }
+            if (OVERLOADED.get()) {
+                overloadRejected.incrementAndGet();
+                reject(exchange);
+                return;
+            }
+
+            ConcurrencyLimiter.Permit permit;
+            try {
+                permit = admission.acquireBlocking(); // Never waits: the queue has no room
+            } catch (RejectedExecutionException e) {
+                reject(exchange);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try (permit) {
+                handler.handle(exchange);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // Client went away
+        } catch (Exception e) {
+            System.err.println("❌ Error handling " + exchange.getRequestURI() + ": " + e.getMessage());
+        }
+    }
+
+    private void reject(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+        sendError(exchange, 503, "Too many open requests, try again later");
+    }
+
+    private void ask(HttpExchange exchange) throws IOException {
+        String question;
+        if ("POST".equals(exchange.getRequestMethod())) {
+            JsonNode body;
+            try {
+                body = objectMapper.readTree(exchange.getRequestBody());
+            } catch (IOException e) {
+                sendError(exchange, 400, "Body must be JSON: {\"question\": \"...\"}");
+                return;
+            }
+            question = body == null ? null : body.path("question").asText(null);
+        } else if ("GET".equals(exchange.getRequestMethod())) {
+            question = queryParameter(exchange, "q");
+        } else {
+            sendError(exchange, 405, "Use GET or POST");
+            return;
+        }
+        if (question == null || question.isBlank()) {
+            sendError(exchange, 400, "Missing question");
+            return;
+        }
+
+        RAGSystem.RAGResponse response = rag.ask(question);
+        sendJson(exchange, response.isComplete() ? 200 : 503, response.toJson(objectMapper));
+    }
+
+    private void stream(HttpExchange exchange) throws IOException {
+        String question = queryParameter(exchange, "q");
+        if (question == null || question.isBlank()) {
+            sendError(exchange, 400, "Missing q parameter");
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+
+        RAGSystem.RAGResponse response = rag.askStreaming(question, token -> {
+            try {
+                sendEvent(out, "token", objectMapper.createObjectNode().put("token", token));
+            } catch (IOException e) {
+                // Stops the generation, which closes the connection to Ollama
+                throw new UncheckedIOException(e);
+            }
+        });
+        sendEvent(out, response.isComplete() ? "done" : "error", response.toJson(objectMapper));
+    }
+
+    private void health(HttpExchange exchange) throws IOException {
+        ObjectNode health = objectMapper.createObjectNode()
+                .put("status", "ok")
+                .put("openRequests", admission.getActive())
+                .put("rejectedRequests", admission.getRejected() + overloadRejected.get())
+                .put("virtualThreads", isVirtual());
+        sendJson(exchange, 200, health);
+    }
+
+    private void sendEvent(OutputStream out, String event, JsonNode data) throws IOException {
+        // JSON has no raw newlines, so the data always fits on one line
+        out.write(("event: " + event + "\ndata: " + objectMapper.writeValueAsString(data) + "\n\n")
+                .getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void sendJson(HttpExchange exchange, int status, JsonNode json) throws IOException {
+        byte[] body = objectMapper.writeValueAsBytes(json);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, objectMapper.createObjectNode().put("error", message));
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0 && pair.substring(0, equals).equals(name)) {
+                return URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A virtual thread per request where the JVM supports it, looked up reflectively
+     * because the project still compiles for Java 17.
+     *
+     * Otherwise a fixed pool whose queue holds the rest of maxRequests. Past that, the
+     * dispatcher thread runs the exchange itself in overload mode, which only reads the
+     * request and writes a short 503, like the JDK's default inline executor would.
+     */
+    private static ExecutorService newRequestExecutor(int maxRequests) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(DEFAULT_PLATFORM_THREADS, DEFAULT_PLATFORM_THREADS,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(Math.max(1, maxRequests - DEFAULT_PLATFORM_THREADS)),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "rag-server");
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    (exchange, executor) -> {
+                        OVERLOADED.set(true);
+                        try {
+                            exchange.run();
+                        } finally {
+                            OVERLOADED.set(false);
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    private boolean isVirtual() {
+        return !(executor instanceof ThreadPoolExecutor);
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> arguments = Arrays.asList(args);
+        int port = Integer.parseInt(option(arguments, "--port", String.valueOf(DEFAULT_PORT)));
+        int maxRequests = Integer.parseInt(option(arguments, "--max-requests", String.valueOf(DEFAULT_MAX_REQUESTS)));
+        int maxQueued = Integer.parseInt(option(arguments, "--max-queued", String.valueOf(maxRequests)));
+
+        // Admitted requests wait for a generation slot instead of failing as busy
+        Generator generator = new Generator(Generator.DEFAULT_OLLAMA_URL, Generator.DEFAULT_MODEL,
+                Generator.DEFAULT_MAX_CONCURRENT, maxQueued);
+        // --local answers from the on-disk segment store instead of Milvus
+        RAGSystem rag = arguments.contains("--local")
+                ? RAGSystem.openLocal(generator)
+                : new RAGSystem(new Retriever(), generator, new CollectionVersion());
+        if (arguments.contains("--compress")) {
+            rag.setContextCompressor(rag.createContextCompressor());
+        }
+
+        RAGServer server = new RAGServer(rag, port, maxRequests);
+        // The server's dispatcher thread keeps the JVM running until it is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            rag.close();
+        }));
+        server.start();
+    }
+
+    private static String option(List<String> arguments, String name, String fallback) {
+        int index = arguments.indexOf(name);
+        return index >= 0 && index + 1 < arguments.size() ? arguments.get(index + 1) : fallback;
+    }
+}
@@ -1,7 +1,14 @@
 package org.example;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import java.util.function.Consumer;
 
 /**
  * Complete RAG System - Combines Retrieval and Generation
@@ -19,57 +26,196 @@ public class RAGSystem implements AutoCloseable {
 
     private final Retriever retriever;
     private final Generator generator;
+    private final ExactAnswerCache exactCache;
+    private final SemanticAnswerCache answerCache;
+    private volatile ContextCompressor compressor;
 
     public RAGSystem() {
-        this.retriever = new Retriever();
-        this.generator = new Generator();
+        this(new Retriever(), new Generator(), new ExactAnswerCache(), new SemanticAnswerCache());
 
         System.out.println("🚀 RAG System initialized successfully!");
     }
 
     public RAGSystem(String ollamaUrl, String model) {
-        this.retriever = new Retriever();
-        this.generator = new Generator(ollamaUrl, model);
+        this(new Retriever(), new Generator(ollamaUrl, model), new ExactAnswerCache(), new SemanticAnswerCache());
 
         System.out.println("🚀 RAG System initialized with custom settings!");
     }
 
+    public RAGSystem(Retriever retriever, Generator generator,
+                     ExactAnswerCache exactCache, SemanticAnswerCache answerCache) {
+        this.retriever = retriever;
+        this.generator = generator;
+        this.exactCache = exactCache;
+        this.answerCache = answerCache;
+    }
+
+    /**
+     * System whose answer caches follow the given collection version, e.g.
+     * {@link CollectionVersion#forStore} for the local segment store
+     */
+    public RAGSystem(Retriever retriever, Generator generator, CollectionVersion version) {
+        this(retriever, generator,
+                new ExactAnswerCache(ExactAnswerCache.DEFAULT_CAPACITY, ExactAnswerCache.DEFAULT_TTL, version),
+                new SemanticAnswerCache(SemanticAnswerCache.DEFAULT_CAPACITY, SemanticAnswerCache.DEFAULT_THRESHOLD,
+                        SemanticAnswerCache.DEFAULT_TTL, version));
+    }
+
+    /**
+     * System over the on-disk segment store, with caches that follow its ingestion
+     */
+    public static RAGSystem openLocal(Generator generator) throws IOException {
+        return new RAGSystem(Retriever.openLocal(), generator,
+                CollectionVersion.forStore(SegmentVectorStore.DEFAULT_DIRECTORY));
+    }
+
+    /**
+     * Compress the retrieved chunks to their most relevant sentences before generation,
+     * or stop compressing with null
+     */
+    public void setContextCompressor(ContextCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    /**
+     * Compressor that embeds sentences with the retriever's model and measures them with
+     * the generator's token estimate
+     */
+    public ContextCompressor createContextCompressor() {
+        return new ContextCompressor(retriever::embedTexts, generator.getTokenEstimator());
+    }
+
     /**
      * Main RAG method - the complete pipeline
      * @param query User question
      * @return Generated response with context
      */
     public RAGResponse ask(String query) {
+        return answer(query, token -> { }, false);
+    }
+
+    /**
+     * Same pipeline as {@link #ask}, but the answer is handed to onToken token by token
+     * while it is generated; the returned response carries the full answer and timings
+     */
+    public RAGResponse askStreaming(String query, Consumer<String> onToken) {
+        return answer(query, onToken, true);
+    }
+
+    private RAGResponse answer(String query, Consumer<String> onToken, boolean streaming) {
         if (query == null || query.trim().isEmpty()) {
             System.out.println("⚠️ Query is empty. Please enter a valid question.");
-            return new RAGResponse(query, List.of(),
+            return RAGResponse.failed(query, List.of(),
                     "الاستعلام فارغ، من فضلك أدخل سؤالًا صالحًا.");
         }
 
-        System.out.println("🔍 Starting search for relevant information...");
-
         long startTime = System.currentTimeMillis();
 
+        // Step 0: The same question, answered before from the current collection
+        RAGResponse known = exactCache.get(query);
+        if (known != null) {
+            System.out.println("⚡ Same question answered before, skipping retrieval and generation");
+            onToken.accept(known.getResponse());
+            return new RAGResponse(query, known.getRetrievedDocs(), known.getResponse(),
+                    System.currentTimeMillis() - startTime, 0);
+        }
+
+        // Read before retrieval, so an answer built from an older collection is never stored as current
+        long exactVersion = exactCache.currentVersion();
+        long semanticVersion = answerCache.currentVersion();
+
+        System.out.println("🔍 Starting search for relevant information...");
+
         // Step 1: Retrieve relevant documents
-        List<String> retrievedDocs = retriever.search(query);
+        Retriever.Retrieval retrieval = retriever.retrieveHybrid(query);
+        List<String> retrievedDocs = retrieval.texts();
         long retrievalTime = System.currentTimeMillis();
         System.out.println("📋 Found " + retrievedDocs.size() + " relevant documents in "
                 + (retrievalTime - startTime) + " ms");
 
         if (retrievedDocs.isEmpty()) {
             System.out.println("⚠️ No relevant documents found. Skipping generation.");
-            return new RAGResponse(query, retrievedDocs,
-                    "لا توجد معلومات كافية في السياق للإجابة على هذا السؤال");
+            String answer = "لا توجد معلومات كافية في السياق للإجابة على هذا السؤال";
+            onToken.accept(answer);
+            return new RAGResponse(query, retrievedDocs, answer);
         }
 
-        // Step 2: Generate response with context
+        // Step 2: Reuse the answer to a near-identical question over the same chunks
+        float[] queryEmbedding = queryEmbeddingOf(query, retrieval);
+        if (queryEmbedding != null) {
+            SemanticAnswerCache.Match match = answerCache.get(queryEmbedding, retrieval.ids());
+            if (match != null) {
+                System.out.printf("♻️ Reusing the answer to \"%s\" (similarity %.3f)%n",
+                        match.question(), match.similarity());
+                onToken.accept(match.answer());
+                RAGResponse reused = new RAGResponse(query, retrievedDocs, match.answer(),
+                        System.currentTimeMillis() - startTime, 0);
+                exactCache.put(query, reused, System.currentTimeMillis() - startTime, exactVersion);
+                return reused;
+            }
+        }
+
+        // Step 3: Optionally keep only the sentences that matter for this question
+        List<String> context = retrievedDocs;
+        ContextCompressor compressor = this.compressor;
+        if (compressor != null && queryEmbedding != null) {
+            context = compress(compressor, queryEmbedding, retrievedDocs);
+        }
+
+        // Step 4: Generate response with context
         System.out.println("🧠 Generating response...");
-        String response = generator.generateWithContext(query, retrievedDocs);
-        long generationTime = System.currentTimeMillis();
-        System.out.println("✅ Response generated in "
-                + (generationTime - retrievalTime) + " ms");
+        Generator.StreamedAnswer answer = generator.streamWithContext(query, context, onToken);
+        if (!answer.complete() && answer.tokens() == 0) {
+            onToken.accept(answer.text());
+        }
+        if (!streaming) {
+            System.out.println("✅ Response generated in " + answer.totalMillis() + " ms");
+        }
+        if (!answer.complete()) {
+            return RAGResponse.failed(query, retrievedDocs, answer.text());
+        }
+        RAGResponse response = new RAGResponse(query, retrievedDocs, answer.text(),
+                answer.timeToFirstTokenMillis() < 0 ? -1 : retrievalTime - startTime + answer.timeToFirstTokenMillis(),
+                answer.tokensPerSecond(), answer.promptTokens());
+
+        exactCache.put(query, response, System.currentTimeMillis() - startTime, exactVersion);
+        if (queryEmbedding != null) {
+            answerCache.put(query, queryEmbedding, retrieval.ids(), answer.text(), retrievedDocs, semanticVersion);
+        }
+        return response;
+    }
 
-        return new RAGResponse(query, retrievedDocs, response);
+    private List<String> compress(ContextCompressor compressor, float[] queryEmbedding, List<String> chunks) {
+        ContextCompressor.Compressed compressed = compressor.compress(queryEmbedding, chunks);
+        if (compressed.compressedTokens() == compressed.originalTokens()) {
+            return chunks;
+        }
+
+        int removed = compressed.originalTokens() - compressed.compressedTokens();
+        double prefillRate = generator.getPrefillTokensPerSecond();
+        String saving = prefillRate > 0
+                ? String.format(", net prefill saving ~%.0f ms", removed * 1000 / prefillRate - compressed.millis())
+                : "";
+        System.out.printf("✂️ Context compressed from ~%d to ~%d tokens (%.0f%%) in %d ms%s%n",
+                compressed.originalTokens(), compressed.compressedTokens(), compressed.ratio() * 100,
+                compressed.millis(), saving);
+        return compressed.chunks();
+    }
+
+    /**
+     * The embedding retrieval used, or a fresh one if a lexical match skipped it;
+     * null if the query cannot be embedded, which only disables the answer cache
+     */
+    private float[] queryEmbeddingOf(String query, Retriever.Retrieval retrieval) {
+        if (retrieval.queryEmbedding() != null) {
+            return retrieval.queryEmbedding();
+        }
+        try {
+            return retriever.embedQuery(query);
+        } catch (Exception e) {
+            System.err.println("⚠️ Could not embed the query for the answer cache: " + e.getMessage());
+            return null;
+        }
     }
 
     /**
@@ -105,8 +251,21 @@ public class RAGSystem implements AutoCloseable {
             }
 
             try {
-                RAGResponse response = ask(input);
-                response.printFormatted();
+                RAGResponse response = askStreaming(input, new Consumer<>() {
+                    private boolean first = true;
+
+                    @Override
+                    public void accept(String token) {
+                        if (first) {
+                            System.out.println("🤖 Response:");
+                            first = false;
+                        }
+                        System.out.print(token);
+                        System.out.flush();
+                    }
+                });
+                System.out.println();
+                response.printSources();
                 System.out.println();
 
             } catch (Exception e) {
@@ -120,6 +279,11 @@ public class RAGSystem implements AutoCloseable {
     @Override
     public void close() {
         System.out.println("🔒 Closing RAG System...");
+        System.out.println("📊 Query embedding cache: " + retriever.getQueryCache());
+        System.out.println("📊 " + generator.getLimiter());
+        System.out.println("📊 Exact answer cache: " + exactCache);
+        System.out.println("📊 Semantic answer cache: " + answerCache);
+        retriever.close();
         // Close any resources if needed
     }
 
@@ -131,12 +295,47 @@ public class RAGSystem implements AutoCloseable {
         private final List<String> retrievedDocs;
         private final String response;
         private final long timestamp;
+        private final long timeToFirstTokenMillis;
+        private final double tokensPerSecond;
+        private final int promptTokens;
+        private final boolean complete;
 
         public RAGResponse(String query, List<String> retrievedDocs, String response) {
+            this(query, retrievedDocs, response, -1, 0);
+        }
+
+        public RAGResponse(String query, List<String> retrievedDocs, String response,
+                           long timeToFirstTokenMillis, double tokensPerSecond) {
+            this(query, retrievedDocs, response, timeToFirstTokenMillis, tokensPerSecond, 0);
+        }
+
+        /**
+         * @param timeToFirstTokenMillis from the question to the first answer token, -1 if not streamed
+         * @param promptTokens prompt size as counted by Ollama, 0 if unknown
+         */
+        public RAGResponse(String query, List<String> retrievedDocs, String response,
+                           long timeToFirstTokenMillis, double tokensPerSecond, int promptTokens) {
+            this(query, retrievedDocs, response, timeToFirstTokenMillis, tokensPerSecond, promptTokens, true);
+        }
+
+        private RAGResponse(String query, List<String> retrievedDocs, String response,
+                            long timeToFirstTokenMillis, double tokensPerSecond, int promptTokens, boolean complete) {
             this.query = query;
             this.retrievedDocs = retrievedDocs;
             this.response = response;
             this.timestamp = System.currentTimeMillis();
+            this.timeToFirstTokenMillis = timeToFirstTokenMillis;
+            this.tokensPerSecond = tokensPerSecond;
+            this.promptTokens = promptTokens;
+            this.complete = complete;
+        }
+
+        /**
+         * A response whose text explains why there is no answer (empty question, model
+         * unavailable or busy); such responses are never cached
+         */
+        public static RAGResponse failed(String query, List<String> retrievedDocs, String message) {
+            return new RAGResponse(query, retrievedDocs, message, -1, 0, 0, false);
         }
 
         public void printFormatted() {
@@ -157,11 +356,51 @@ public class RAGSystem implements AutoCloseable {
             System.out.println("━".repeat(60));
         }
 
+        /**
+         * Timings and sources, for after a streamed answer has been printed
+         */
+        public void printSources() {
+            System.out.println("━".repeat(60));
+            if (timeToFirstTokenMillis >= 0 && tokensPerSecond > 0) {
+                System.out.printf("⏱️ First token after %d ms, %.1f tokens/s, %d prompt tokens%n",
+                        timeToFirstTokenMillis, tokensPerSecond, promptTokens);
+            } else if (timeToFirstTokenMillis >= 0) {
+                System.out.printf("⏱️ Answered from cache in %d ms%n", timeToFirstTokenMillis);
+            }
+            System.out.println("🔎 Sources (" + retrievedDocs.size() + " documents):");
+            for (int i = 0; i < retrievedDocs.size(); i++) {
+                String doc = retrievedDocs.get(i);
+                String preview = doc.length() > 100 ? doc.substring(0, 100) + "..." : doc;
+                System.out.println("   " + (i + 1) + ". " + preview);
+            }
+            System.out.println("━".repeat(60));
+        }
+
         // Getters
         public String getQuery() { return query; }
         public List<String> getRetrievedDocs() { return retrievedDocs; }
         public String getResponse() { return response; }
         public long getTimestamp() { return timestamp; }
+        public long getTimeToFirstTokenMillis() { return timeToFirstTokenMillis; }
+        public double getTokensPerSecond() { return tokensPerSecond; }
+        public int getPromptTokens() { return promptTokens; }
+        public boolean isComplete() { return complete; }
+
+        /**
+         * Question, answer, sources and timings as one JSON object
+         */
+        public ObjectNode toJson(ObjectMapper objectMapper) {
+            ObjectNode json = objectMapper.createObjectNode()
+                    .put("question", query)
+                    .put("answer", response)
+                    .put("complete", complete)
+                    .put("timeToFirstTokenMillis", timeToFirstTokenMillis)
+                    .put("tokensPerSecond", tokensPerSecond)
+                    .put("promptTokens", promptTokens);
+            ArrayNode sources = json.putArray("sources");
+            retrievedDocs.forEach(sources::add);
+            return json;
+        }
     }
 
     /**
@@ -169,11 +408,19 @@ public class RAGSystem implements AutoCloseable {
      */
     public static void main(String[] args) {
 
-        try (RAGSystem rag = new RAGSystem()) {
+        // --compress keeps only the sentences relevant to each question
+        // --local answers from the on-disk segment store instead of Milvus
+        List<String> arguments = Arrays.asList(args);
+        List<String> words = arguments.stream().filter(arg -> !arg.startsWith("--")).toList();
+
+        try (RAGSystem rag = arguments.contains("--local") ? openLocal(new Generator()) : new RAGSystem()) {
+            if (arguments.contains("--compress")) {
+                rag.setContextCompressor(rag.createContextCompressor());
+            }
 
-            if (args.length > 0) {
+            if (!words.isEmpty()) {
                 // Command line mode - single question
-                String question = String.join(" ", args);
+                String question = String.join(" ", words);
                 System.out.println("🚀 RAG System - Single Query Mode\n");
 
                 RAGResponse response = rag.ask(question);
@@ -1,101 +1,254 @@
 package org.example;
 
-import io.milvus.client.MilvusServiceClient;
-import io.milvus.grpc.DataType;
-import io.milvus.param.ConnectParam;
-import io.milvus.param.dml.SearchParam;
-import io.milvus.response.SearchResultsWrapper;
-
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Retriever class that connects to a Milvus vector database and retrieves top-k
  * semantically similar text entries based on a user query....
  */
 
-public class Retriever {
+public class Retriever implements AutoCloseable {
 
-    private final MilvusServiceClient milvusClient;
+    private final VectorStore store;
+    private final InvertedIndex lexicalIndex;
     private final Embedder embedder;
+    private final EmbeddingBatcher batcher;
+    private final QueryEmbeddingCache queryCache = new QueryEmbeddingCache();
+    private final ThreadPoolExecutor searchExecutor;
 
     // Constants
-    private final String collectionName = "documents";
-    private final String embeddingField = "embedding";
-    private final String outputField = "text";
     private final int topK = 3; // Number of results to return
+    private static final int HYBRID_CANDIDATES = 4; // Per-side candidates per result for fusion
+    private static final int RRF_K = 60; // Reciprocal rank fusion damping
+    private static final int ASYNC_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int ASYNC_QUEUE_CAPACITY = 256; // Pending async searches before rejecting
 
     /**
      * Constructor: Connects to Milvus and initializes the embedder.
      */
     public Retriever() {
-        // 1. Connect to Milvus
-        ConnectParam connectParam = ConnectParam.newBuilder()
-                .withHost("127.0.0.1")
-                .withPort(19530)
-                .build();
+        // 1. Connect to Milvus, with the lexical index built during ingestion if present
+        this(new MilvusVectorStore(), InvertedIndex.loadIfExists(InvertedIndex.DEFAULT_PATH));
+    }
+
+    /**
+     * Retriever over the on-disk segment store and its lexical index. The store is opened
+     * read-only, so ingestion can keep writing to it.
+     */
+    public static Retriever openLocal() throws IOException {
+        return new Retriever(SegmentVectorStore.openReadOnly(), InvertedIndex.loadIfExists(
+                SegmentVectorStore.DEFAULT_DIRECTORY.resolve(InvertedIndex.DEFAULT_PATH.getFileName())));
+    }
+
+    /**
+     * Constructor for any vector store, e.g. an embedded {@link HnswVectorStore}
+     */
+    public Retriever(VectorStore store) {
+        this(store, new InvertedIndex());
+    }
 
-        this.milvusClient = new MilvusServiceClient(connectParam);
+    public Retriever(VectorStore store, InvertedIndex lexicalIndex) {
+        this.store = store;
+        this.lexicalIndex = lexicalIndex;
         this.embedder = new Embedder(); // Custom embedder (e.g., Ollama)
+        this.batcher = new EmbeddingBatcher(embedder); // Coalesces concurrent queries into embedAll calls
+        this.searchExecutor = new ThreadPoolExecutor(ASYNC_THREADS, ASYNC_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(ASYNC_QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "retriever-search");
+                    thread.setDaemon(true);
+                    return thread;
+                });
     }
 
     /**
-     * Searches Milvus using a vector representation of the input query.
+     * Searches the vector store using a vector representation of the input query.
      *
      * @param query The user question or search query.
      * @return A list of top-k matched texts from the collection.
      */
     public List<String> search(String query) {
         try {
-            // 2. Convert query to embedding (float[] → List<Float>)
-            float[] queryEmbeddingArray = embedder.embedTextAsArray(query);
+            // 2. Convert query to embedding, reusing cached vectors
+            float[] queryEmbedding = queryCache.get(query, batcher::embed);
+
+            // 3. Search the vector store (COSINE, top-k) and extract the texts
+            return store.search(queryEmbedding, topK)
+                    .stream()
+                    .map(VectorStore.SearchHit::text)
+                    .toList();
+
+        } catch (Exception e) {
+            System.err.println("❌ Error during retrieval: " + e.getMessage());
+            return List.of(); // Return empty list on failure
+        }
+    }
 
-            List<Float> queryEmbedding = new ArrayList<>();
-            for (float value : queryEmbeddingArray) {
-                queryEmbedding.add(value);
+    /**
+     * Search many queries at once, e.g. for offline evaluation: the uncached queries are
+     * embedded in one embedAll call and the store answers all of them in one batch search
+     * (a single multi-vector RPC for Milvus).
+     *
+     * @return one retrieval per query, in query order; {@link Retrieval#failed()} marks the
+     *         queries whose embedding or search failed
+     */
+    public List<Retrieval> searchBatch(List<String> queries) {
+        if (queries.isEmpty()) {
+            return List.of();
+        }
+
+        try {
+            List<float[]> embeddings = queryCache.getAll(queries, embedder::embedTextsAsArrays);
+            List<List<VectorStore.SearchHit>> hits = store.searchBatch(embeddings, topK);
+
+            List<Retrieval> results = new ArrayList<>(queries.size());
+            for (int i = 0; i < queries.size(); i++) {
+                results.add(new Retrieval(embeddings.get(i), hits.get(i)));
             }
+            return results;
 
-            // 3. Build search parameters
-            SearchParam searchParam = SearchParam.newBuilder()
-                    .withCollectionName(collectionName)
-                    .withMetricType(io.milvus.param.MetricType.COSINE)
-                    .withTopK(topK)
-                    .withOutFields(Collections.singletonList(outputField))
-                    .withVectors(Collections.singletonList(queryEmbedding))
-                    .withVectorFieldName(embeddingField)
-                    .withParams("{\"nprobe\":10}")
-                    .build();
+        } catch (Exception e) {
+            System.err.println("❌ Error during batch retrieval: " + e.getMessage());
+            return Collections.nCopies(queries.size(), new Retrieval(null, VectorStore.SEARCH_FAILED));
+        }
+    }
 
-            // 4. Perform the search
-            var searchResponse = milvusClient.search(searchParam);
+    /**
+     * Non-blocking {@link #search(String)} on a bounded pool, so callers can overlap
+     * retrieval with other work. Concurrent calls share the embedding batcher and the
+     * pooled Milvus clients; when the queue is full the future fails immediately.
+     */
+    public CompletableFuture<List<String>> searchAsync(String query) {
+        try {
+            return CompletableFuture.supplyAsync(() -> search(query), searchExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(
+                    new RejectedExecutionException("Too many pending searches (" + ASYNC_QUEUE_CAPACITY + ")"));
+        }
+    }
 
-            // 5. Parse and extract results
-            SearchResultsWrapper results = new SearchResultsWrapper(searchResponse.getData().getResults());
+    /**
+     * Retrieved chunks with their store ids, and the query embedding if one was computed
+     */
+    public record Retrieval(float[] queryEmbedding, List<VectorStore.SearchHit> hits) {
 
-            List<String> matchedTexts = results.getFieldData(outputField, 0)
-                    .stream()
-                    .filter(obj -> obj instanceof String)
-                    .map(obj -> (String) obj)
-                    .toList();
+        /**
+         * @return true if the search failed, as opposed to finding nothing
+         */
+        public boolean failed() {
+            return hits == VectorStore.SEARCH_FAILED;
+        }
+
+        public List<String> texts() {
+            return hits.stream().map(VectorStore.SearchHit::text).toList();
+        }
+
+        public List<Long> ids() {
+            return hits.stream().map(VectorStore.SearchHit::id).toList();
+        }
+    }
+
+    /**
+     * Hybrid search: BM25 over the lexical index and dense search over the vector store,
+     * merged with reciprocal rank fusion. When the lexical match is unambiguous (every
+     * query term found in a chunk that clearly leads the others) and finds at least topK
+     * chunks, the vector search is skipped. Without
+     * a lexical index this is the same as {@link #search(String)}.
+     */
+    public List<String> searchHybrid(String query) {
+        return retrieveHybrid(query).texts();
+    }
+
+    /**
+     * {@link #searchHybrid} with chunk ids and fused scores. The query embedding is null
+     * when a confident lexical match skipped the vector search; a failed vector search
+     * fails the whole retrieval rather than returning the lexical half.
+     */
+    public Retrieval retrieveHybrid(String query) {
+        try {
+            if (lexicalIndex.size() == 0) {
+                float[] queryEmbedding = queryCache.get(query, batcher::embed);
+                return new Retrieval(queryEmbedding, store.search(queryEmbedding, topK));
+            }
+
+            InvertedIndex.Result lexical = lexicalIndex.search(query, topK * HYBRID_CANDIDATES);
+            if (lexical.confident() && lexical.hits().size() >= topK) {
+                System.out.println("⚡ Exact lexical match, skipping vector search");
+                return new Retrieval(null, lexical.hits().stream().limit(topK).toList());
+            }
 
-            return matchedTexts;
+            float[] queryEmbedding = queryCache.get(query, batcher::embed);
+            List<VectorStore.SearchHit> dense = store.search(queryEmbedding, topK * HYBRID_CANDIDATES);
+            if (dense == VectorStore.SEARCH_FAILED) {
+                return new Retrieval(queryEmbedding, VectorStore.SEARCH_FAILED);
+            }
+
+            Map<Long, Double> fused = new HashMap<>();
+            Map<Long, String> texts = new HashMap<>();
+            for (List<VectorStore.SearchHit> ranking : List.of(lexical.hits(), dense)) {
+                for (int rank = 0; rank < ranking.size(); rank++) {
+                    VectorStore.SearchHit hit = ranking.get(rank);
+                    fused.merge(hit.id(), 1.0 / (RRF_K + rank + 1), Double::sum);
+                    texts.putIfAbsent(hit.id(), hit.text());
+                }
+            }
+
+            List<VectorStore.SearchHit> hits = fused.entrySet().stream()
+                    .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
+                    .limit(topK)
+                    .map(entry -> new VectorStore.SearchHit(entry.getKey(), texts.get(entry.getKey()),
+                            entry.getValue().floatValue()))
+                    .toList();
+            return new Retrieval(queryEmbedding, hits);
 
         } catch (Exception e) {
             System.err.println("❌ Error during retrieval: " + e.getMessage());
-            return List.of(); // Return empty list on failure
+            return new Retrieval(null, VectorStore.SEARCH_FAILED);
         }
     }
 
+    /**
+     * The query's embedding, from the query cache when it was seen before
+     */
+    public float[] embedQuery(String query) {
+        return queryCache.get(query, batcher::embed);
+    }
+
+    /**
+     * Embed texts other than queries (e.g. sentences) in one call, bypassing the query cache
+     */
+    public List<float[]> embedTexts(List<String> texts) {
+        return embedder.embedTextsAsArrays(texts);
+    }
+
+    public QueryEmbeddingCache getQueryCache() {
+        return queryCache;
+    }
+
+    @Override
+    public void close() {
+        searchExecutor.shutdown();
+        batcher.close();
+        store.close();
+    }
+
     /**
      * Main method to run an interactive question-answer loop.
      */
-    public static void main(String[] args) {
-        Retriever retriever = new Retriever();
+    public static void main(String[] args) throws IOException {
+        // --local searches the on-disk segment store instead of Milvus
+        Retriever retriever = Arrays.asList(args).contains("--local") ? openLocal() : new Retriever();
         Scanner scanner = new Scanner(System.in);
 
         System.out.print("🧠 Ask a question: ");
         String question = scanner.nextLine();
 
-        List<String> results = retriever.search(question);
+        List<String> results = retriever.searchHybrid(question);
 
         System.out.println("\n🔎 Top matched results:");
         if (results.isEmpty()) {
@@ -105,5 +258,6 @@ public class Retriever {
                 System.out.println((i + 1) + ". " + results.get(i));
             }
         }
+        retriever.close();
     }
 }
@@ -0,0 +1,966 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent local vector store made of immutable memory-mapped segments plus a write-ahead log.
+ *
+ * Directory layout:
+ * - seg-N.seg: one immutable segment of ids, normalized vectors and UTF-8 chunk texts.
+ *   Opening only maps the file, so startup does not depend on the corpus size.
+ * - wal-N.log: records for inserts and deletes since the last flush, each framed as
+ *   [length][crc32][payload] and forced to disk per batch. A torn tail is cut off on open.
+ * - COMMIT: the live segments, the current log, the next id and the deleted ids. It is
+ *   replaced atomically, so files it does not list are leftovers of an interrupted flush
+ *   or compaction and are removed on open.
+ *
+ * - LOCK: held exclusively by the one process that opened the store for writing.
+ *
+ * Once the log holds {@code flushThreshold} vectors it is written out as a new segment.
+ * A background thread merges small segments and rewrites segments with many deletes.
+ *
+ * Other processes, e.g. a retriever while ingestion runs, use {@link #openReadOnly}: a
+ * snapshot of the store as of opening that never truncates, deletes or flushes anything.
+ */
+public class SegmentVectorStore implements VectorStore {
+
+    public static final Path DEFAULT_DIRECTORY = Paths.get("data", "segments");
+    public static final int DEFAULT_FLUSH_THRESHOLD = 4096;
+    public static final int DEFAULT_MAX_SEGMENTS = 8;
+
+    private static final String COMMIT_FILE = "COMMIT";
+    private static final String LOCK_FILE = "LOCK";
+
+    // Directories open for writing in this JVM. A second writer must not open a channel on
+    // the lock file at all: closing that channel would release the first writer's lock.
+    private static final Set<Path> WRITABLE_DIRECTORIES = ConcurrentHashMap.newKeySet();
+    // A writer may replace files while a reader opens; it then reads COMMIT again
+    private static final int READ_ONLY_ATTEMPTS = 3;
+    private static final int MAGIC = 0x56534547; // "VSEG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final long MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+    private static final double COMPACT_DELETED_RATIO = 0.3;
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_DELETE = 2;
+
+    private final Path directory;
+    private final int flushThreshold;
+    private final int maxSegments;
+    private final boolean readOnly;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "segment-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by lock
+    private final List<Segment> segments = new ArrayList<>();
+    private final List<Integer> tailIds = new ArrayList<>();
+    private final List<float[]> tailVectors = new ArrayList<>();
+    private final List<String> tailTexts = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private int dimension = -1;
+    private int nextId;
+    private long generation;
+    private Path walPath;
+    private FileChannel wal;
+    private boolean compacting;
+    private FileChannel lockChannel;
+
+    private SegmentVectorStore(Path directory, int flushThreshold, int maxSegments, boolean readOnly) {
+        this.directory = directory;
+        this.flushThreshold = flushThreshold;
+        this.maxSegments = maxSegments;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Open for writing: map the committed segments and replay the log, creating an empty
+     * store if needed. Fails if another process has the store open for writing.
+     */
+    public static SegmentVectorStore open(Path directory, int flushThreshold, int maxSegments) throws IOException {
+        if (flushThreshold < 1 || maxSegments < 1) {
+            throw new IllegalArgumentException("Flush threshold and segment limit must be positive");
+        }
+        Files.createDirectories(directory);
+        SegmentVectorStore store = new SegmentVectorStore(directory, flushThreshold, maxSegments, false);
+        store.lockDirectory();
+        try {
+            store.recover();
+        } catch (IOException | RuntimeException e) {
+            store.unlockDirectory();
+            throw e;
+        }
+        return store;
+    }
+
+    public static SegmentVectorStore open(Path directory) throws IOException {
+        return open(directory, DEFAULT_FLUSH_THRESHOLD, DEFAULT_MAX_SEGMENTS);
+    }
+
+    public static SegmentVectorStore open() throws IOException {
+        return open(DEFAULT_DIRECTORY);
+    }
+
+    /**
+     * Open for searching only, also while another process writes. Sees what was committed
+     * and logged when it was opened; add and delete fail.
+     */
+    public static SegmentVectorStore openReadOnly(Path directory) throws IOException {
+        SegmentVectorStore store = new SegmentVectorStore(directory, DEFAULT_FLUSH_THRESHOLD, DEFAULT_MAX_SEGMENTS, true);
+        store.recover();
+        return store;
+    }
+
+    public static SegmentVectorStore openReadOnly() throws IOException {
+        return openReadOnly(DEFAULT_DIRECTORY);
+    }
+
+    private void lockDirectory() throws IOException {
+        if (!WRITABLE_DIRECTORIES.add(directory.toAbsolutePath().normalize())) {
+            throw new IOException(directory + " is open for writing in this process; open it read-only to search it");
+        }
+        try {
+            lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (lockChannel.tryLock() == null) {
+                lockChannel.close();
+                throw new IOException(directory + " is open for writing elsewhere; open it read-only to search it");
+            }
+        } catch (IOException e) {
+            WRITABLE_DIRECTORIES.remove(directory.toAbsolutePath().normalize());
+            throw e;
+        }
+    }
+
+    private void unlockDirectory() throws IOException {
+        try {
+            lockChannel.close(); // Releases the directory lock
+        } finally {
+            WRITABLE_DIRECTORIES.remove(directory.toAbsolutePath().normalize());
+        }
+    }
+
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+        int replayed;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                replayed = load();
+                break;
+            } catch (NoSuchFileException e) {
+                if (!readOnly || attempt == READ_ONLY_ATTEMPTS) {
+                    throw e;
+                }
+                reset();
+            }
+        }
+
+        System.out.printf("📂 Opened %s%s: %d segments, %d vectors, %d replayed from the log in %.1f ms%n",
+                directory, readOnly ? " read-only" : "", segments.size(), size(), replayed,
+                (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Forget a partly loaded state before loading again
+     */
+    private void reset() throws IOException {
+        segments.clear();
+        tailIds.clear();
+        tailVectors.clear();
+        tailTexts.clear();
+        deleted.clear();
+        dimension = -1;
+        nextId = 0;
+        generation = 0;
+        if (wal != null) {
+            wal.close();
+            wal = null;
+        }
+    }
+
+    /**
+     * Read COMMIT, map its segments and replay its log
+     * @return number of vectors replayed from the log
+     */
+    private int load() throws IOException {
+        Set<String> live = new HashSet<>();
+        String walName = null;
+
+        Path commit = directory.resolve(COMMIT_FILE);
+        if (Files.exists(commit)) {
+            for (String line : Files.readAllLines(commit, StandardCharsets.UTF_8)) {
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    continue;
+                }
+                String key = line.substring(0, space);
+                String value = line.substring(space + 1);
+                switch (key) {
+                    case "generation" -> generation = Long.parseLong(value);
+                    case "dimension" -> dimension = Integer.parseInt(value);
+                    case "next-id" -> nextId = Integer.parseInt(value);
+                    case "wal" -> walName = value;
+                    case "segment" -> {
+                        segments.add(Segment.map(directory.resolve(value)));
+                        live.add(value);
+                    }
+                    case "deleted" -> deleted.set(Integer.parseInt(value));
+                    default -> System.err.println("⚠️ Unknown COMMIT entry: " + line);
+                }
+            }
+        }
+
+        if (walName == null) {
+            walName = "wal-" + generation + ".log";
+        }
+        walPath = directory.resolve(walName);
+
+        if (readOnly) {
+            if (!Files.exists(walPath)) {
+                if (Files.exists(commit)) {
+                    throw new NoSuchFileException(walPath.toString()); // Flushed since COMMIT was read
+                }
+                return 0; // Nothing written yet
+            }
+            wal = FileChannel.open(walPath, StandardOpenOption.READ);
+            return replayWal();
+        }
+
+        live.add(walName);
+        live.add(COMMIT_FILE);
+        removeUnlisted(live);
+        wal = FileChannel.open(walPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return replayWal();
+    }
+
+    /**
+     * Delete files from interrupted flushes and compactions
+     */
+    private void removeUnlisted(Set<String> live) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                boolean ours = name.startsWith("seg-") || name.startsWith("wal-") || name.equals(COMMIT_FILE + ".tmp");
+                if (ours && !live.contains(name)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply every intact log record and truncate whatever follows the last one
+     */
+    private int replayWal() throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(8);
+        long position = 0;
+        int replayed = 0;
+
+        while (true) {
+            frame.clear();
+            if (readFully(frame, position) < 8) {
+                break;
+            }
+            int length = frame.getInt(0);
+            int crc = frame.getInt(4);
+            if (length <= 0 || position + 8 + length > wal.size()) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + 8);
+            CRC32 checksum = new CRC32();
+            checksum.update(payload.array());
+            if ((int) checksum.getValue() != crc) {
+                break;
+            }
+
+            payload.flip();
+            if (payload.get() == RECORD_ADD) {
+                int id = (int) payload.getLong();
+                float[] vector = new float[payload.getInt()];
+                payload.asFloatBuffer().get(vector);
+                payload.position(payload.position() + vector.length * Float.BYTES);
+                byte[] text = new byte[payload.remaining()];
+                payload.get(text);
+
+                dimension = vector.length;
+                tailIds.add(id);
+                tailVectors.add(vector);
+                tailTexts.add(new String(text, StandardCharsets.UTF_8));
+                nextId = Math.max(nextId, id + 1);
+                replayed++;
+            } else {
+                // Compaction may have removed the row since, and then its bit must stay clear
+                int id = (int) payload.getLong();
+                if (exists(id)) {
+                    deleted.set(id);
+                }
+            }
+            position += 8 + length;
+        }
+
+        // A reader may see a record the writer is still appending
+        if (position < wal.size() && !readOnly) {
+            System.err.println("⚠️ Discarding " + (wal.size() - position) + " bytes of torn log records");
+            wal.truncate(position);
+        }
+        wal.position(position);
+        return replayed;
+    }
+
+    private int readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = wal.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Whether the id has a row in the tail or a live segment. Caller holds the lock or is recovering.
+     */
+    private boolean exists(int id) {
+        if (tailIds.contains(id)) {
+            return true;
+        }
+        for (Segment segment : segments) {
+            if (segment.rowOf(id) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            int rows = tailIds.size();
+            for (Segment segment : segments) {
+                rows += segment.count;
+            }
+            return rows - deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int segmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Long> add(List<String> documents, List<EmbeddingVector> vectors) {
+        if (documents.size() != vectors.size()) {
+            System.err.println("Mismatch between documents and embeddings count");
+            return null;
+        }
+        if (readOnly) {
+            System.err.println("Error inserting batch: " + directory + " is open read-only");
+            return null;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (dimension < 0 && !vectors.isEmpty()) {
+                dimension = vectors.get(0).dimension();
+            }
+            for (EmbeddingVector vector : vectors) {
+                if (vector.dimension() != dimension) {
+                    System.err.println("Error inserting batch: expected " + dimension
+                            + " dimensions, got " + vector.dimension());
+                    return null;
+                }
+            }
+
+            // The batch is durable before any of it becomes visible
+            List<float[]> normalized = new ArrayList<>(vectors.size());
+            long walEnd = wal.position();
+            try {
+                for (int i = 0; i < documents.size(); i++) {
+                    float[] vector = HnswVectorStore.normalize(vectors.get(i).array());
+                    normalized.add(vector);
+                    byte[] text = documents.get(i).getBytes(StandardCharsets.UTF_8);
+                    ByteBuffer payload = ByteBuffer.allocate(1 + 8 + 4 + vector.length * Float.BYTES + text.length);
+                    payload.put(RECORD_ADD).putLong(nextId + i).putInt(vector.length);
+                    payload.asFloatBuffer().put(vector);
+                    payload.position(payload.position() + vector.length * Float.BYTES);
+                    payload.put(text);
+                    appendRecord(payload);
+                }
+                wal.force(false);
+            } catch (IOException e) {
+                wal.truncate(walEnd);
+                wal.position(walEnd);
+                throw e;
+            }
+
+            List<Long> ids = new ArrayList<>(documents.size());
+            for (int i = 0; i < documents.size(); i++) {
+                int id = nextId++;
+                tailIds.add(id);
+                tailVectors.add(normalized.get(i));
+                tailTexts.add(documents.get(i));
+                ids.add((long) id);
+            }
+
+            if (tailIds.size() >= flushThreshold) {
+                flush();
+            }
+            return ids;
+
+        } catch (IOException e) {
+            System.err.println("Error inserting batch: " + e.getMessage());
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void appendRecord(ByteBuffer payload) throws IOException {
+        CRC32 checksum = new CRC32();
+        checksum.update(payload.array(), 0, payload.position());
+        ByteBuffer frame = ByteBuffer.allocate(8 + payload.position());
+        frame.putInt(payload.position()).putInt((int) checksum.getValue());
+        frame.put(payload.array(), 0, payload.position());
+        frame.flip();
+        while (frame.hasRemaining()) {
+            wal.write(frame);
+        }
+    }
+
+    /**
+     * Write the log tail out as a segment, commit it and start an empty log.
+     * Caller holds the write lock.
+     */
+    private void flush() throws IOException {
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < tailIds.size(); i++) {
+            if (!deleted.get(tailIds.get(i))) {
+                rows.add(i);
+            }
+        }
+
+        long next = generation + 1;
+        List<Segment> updated = new ArrayList<>(segments);
+        if (!rows.isEmpty()) {
+            Path file = directory.resolve("seg-" + next + ".seg");
+            SegmentWriter writer = new SegmentWriter(dimension, rows.size());
+            for (int i : rows) {
+                writer.add(tailIds.get(i), tailVectors.get(i), tailTexts.get(i));
+            }
+            writer.write(file);
+            updated.add(Segment.map(file));
+        }
+        for (int id : tailIds) {
+            deleted.clear(id);
+        }
+
+        Path nextWal = directory.resolve("wal-" + next + ".log");
+        FileChannel nextChannel = FileChannel.open(nextWal, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        generation = next;
+        writeCommit(updated, nextWal);
+
+        segments.clear();
+        segments.addAll(updated);
+        tailIds.clear();
+        tailVectors.clear();
+        tailTexts.clear();
+
+        wal.close();
+        Files.deleteIfExists(walPath);
+        wal = nextChannel;
+        walPath = nextWal;
+
+        System.out.println("💾 Flushed " + rows.size() + " vectors to segment " + generation);
+        scheduleCompaction();
+    }
+
+    /**
+     * Atomically replace COMMIT. Caller holds the write lock.
+     */
+    private void writeCommit(List<Segment> live, Path logFile) throws IOException {
+        StringBuilder commit = new StringBuilder();
+        commit.append("generation ").append(generation).append('\n');
+        commit.append("dimension ").append(dimension).append('\n');
+        commit.append("next-id ").append(nextId).append('\n');
+        commit.append("wal ").append(logFile.getFileName()).append('\n');
+        for (Segment segment : live) {
+            commit.append("segment ").append(segment.file.getFileName()).append('\n');
+        }
+        for (int id = deleted.nextSetBit(0); id >= 0; id = deleted.nextSetBit(id + 1)) {
+            commit.append("deleted ").append(id).append('\n');
+        }
+
+        Path temp = directory.resolve(COMMIT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(commit.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(COMMIT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public List<SearchHit> search(float[] query, int topK) {
+        lock.readLock().lock();
+        try {
+            if (topK < 1 || dimension < 0) {
+                return List.of();
+            }
+            if (query.length != dimension) {
+                System.err.println("❌ Query has " + query.length + " dimensions, index has " + dimension);
+                return SEARCH_FAILED;
+            }
+
+            float[] normalized = HnswVectorStore.normalize(query);
+            TopK best = IntStream.rangeClosed(0, segments.size()).parallel()
+                    .mapToObj(i -> i < segments.size()
+                            ? segments.get(i).scan(normalized, topK, deleted)
+                            : scanTail(normalized, topK))
+                    .reduce(TopK::merge)
+                    .orElseGet(() -> new TopK(topK));
+
+            return best.drain(new AbstractList<>() {
+                @Override
+                public String get(int id) {
+                    return textOf(id);
+                }
+
+                @Override
+                public int size() {
+                    return nextId;
+                }
+            });
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private TopK scanTail(float[] query, int k) {
+        TopK best = new TopK(k);
+        for (int i = 0; i < tailIds.size(); i++) {
+            int id = tailIds.get(i);
+            if (!deleted.get(id)) {
+                float[] vector = tailVectors.get(i);
+                float score = 0;
+                for (int d = 0; d < vector.length; d++) {
+                    score += vector[d] * query[d];
+                }
+                best.offer(score, id);
+            }
+        }
+        return best;
+    }
+
+    private String textOf(int id) {
+        for (Segment segment : segments) {
+            int row = segment.rowOf(id);
+            if (row >= 0) {
+                return segment.text(row);
+            }
+        }
+        int index = tailIds.indexOf(id);
+        return index >= 0 ? tailTexts.get(index) : null;
+    }
+
+    @Override
+    public boolean delete(List<Long> ids) {
+        if (readOnly) {
+            System.err.println("Error deleting chunks: " + directory + " is open read-only");
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            for (long id : ids) {
+                ByteBuffer payload = ByteBuffer.allocate(9).put(RECORD_DELETE).putLong(id);
+                appendRecord(payload);
+            }
+            wal.force(false);
+            for (long id : ids) {
+                if (id >= 0 && id < nextId && exists((int) id)) {
+                    deleted.set((int) id);
+                }
+            }
+            scheduleCompaction();
+            return true;
+
+        } catch (IOException e) {
+            System.err.println("Error deleting chunks: " + e.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Queue a merge if there are too many segments or one is mostly deleted.
+     * Caller holds the write lock.
+     */
+    private void scheduleCompaction() {
+        if (compacting || compactor.isShutdown() || compactionCandidates().isEmpty()) {
+            return;
+        }
+        compacting = true;
+        compactor.execute(this::compact);
+    }
+
+    /**
+     * Smallest segments merged up to the size limit, or a single segment with many deletes
+     */
+    private List<Segment> compactionCandidates() {
+        for (Segment segment : segments) {
+            if (segment.deletedRows(deleted) > segment.count * COMPACT_DELETED_RATIO) {
+                return List.of(segment);
+            }
+        }
+        if (segments.size() <= maxSegments) {
+            return List.of();
+        }
+
+        List<Segment> bySize = new ArrayList<>(segments);
+        bySize.sort(Comparator.comparingLong(Segment::bytes));
+        List<Segment> chosen = new ArrayList<>();
+        long bytes = 0;
+        for (Segment segment : bySize) {
+            if (bytes + segment.bytes() > MAX_SEGMENT_BYTES) {
+                break;
+            }
+            chosen.add(segment);
+            bytes += segment.bytes();
+        }
+        return chosen.size() >= 2 ? chosen : List.of();
+    }
+
+    void compact() {
+        List<Segment> chosen;
+        BitSet dropped;
+        long target;
+        lock.writeLock().lock();
+        try {
+            chosen = compactionCandidates();
+            dropped = (BitSet) deleted.clone();
+            target = ++generation;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            if (chosen.isEmpty()) {
+                return;
+            }
+
+            // Segments are immutable, so the merge runs without the lock
+            List<Segment> ordered = new ArrayList<>(chosen);
+            ordered.sort(Comparator.comparingInt(Segment::firstId));
+            int rows = 0;
+            for (Segment segment : ordered) {
+                rows += segment.count - segment.deletedRows(dropped);
+            }
+
+            Segment merged = null;
+            if (rows > 0) {
+                SegmentWriter writer = new SegmentWriter(dimension, rows);
+                for (Segment segment : ordered) {
+                    for (int row = 0; row < segment.count; row++) {
+                        int id = segment.id(row);
+                        if (!dropped.get(id)) {
+                            writer.add(id, segment.vector(row), segment.text(row));
+                        }
+                    }
+                }
+                Path file = directory.resolve("seg-" + target + ".seg");
+                writer.write(file);
+                merged = Segment.map(file);
+            }
+
+            lock.writeLock().lock();
+            try {
+                List<Segment> updated = new ArrayList<>(segments);
+                int position = updated.indexOf(chosen.get(0));
+                updated.removeAll(chosen);
+                if (merged != null) {
+                    updated.add(Math.max(0, Math.min(position, updated.size())), merged);
+                }
+                for (Segment segment : chosen) {
+                    for (int row = 0; row < segment.count; row++) {
+                        int id = segment.id(row);
+                        if (dropped.get(id)) {
+                            deleted.clear(id);
+                        }
+                    }
+                }
+                writeCommit(updated, walPath);
+                segments.clear();
+                segments.addAll(updated);
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            // Mapped pages stay valid after the file is unlinked
+            for (Segment segment : chosen) {
+                Files.deleteIfExists(segment.file);
+            }
+            System.out.printf("🧹 Compacted %d segments into one with %d vectors%n", chosen.size(), rows);
+
+        } catch (IOException e) {
+            System.err.println("⚠️ Compaction failed: " + e.getMessage());
+        } finally {
+            lock.writeLock().lock();
+            try {
+                compacting = false;
+                scheduleCompaction();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Flush the log into a segment so the next open maps everything, and release the
+     * directory. A read-only store only closes its files.
+     */
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!readOnly && !tailIds.isEmpty()) {
+                flush();
+            }
+            if (wal != null) {
+                wal.close();
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not flush the log, it will be replayed on open: " + e.getMessage());
+        } finally {
+            try {
+                if (lockChannel != null && lockChannel.isOpen()) {
+                    unlockDirectory();
+                }
+            } catch (IOException e) {
+                System.err.println("⚠️ Could not release " + directory.resolve(LOCK_FILE) + ": " + e.getMessage());
+            }
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * One immutable segment file:
+     * header, long ids[count] (ascending), float vectors[count][dimension],
+     * long textOffsets[count + 1], UTF-8 texts.
+     */
+    private static final class Segment {
+        final Path file;
+        final MappedByteBuffer buffer;
+        final int dimension;
+        final int count;
+        final int vectorsOffset;
+        final int textOffsetsOffset;
+
+        private Segment(Path file, MappedByteBuffer buffer) throws IOException {
+            this.file = file;
+            this.buffer = buffer;
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a segment file: " + file);
+            }
+            if (buffer.getInt(8) != (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1)) {
+                throw new IOException("Segment written with a different byte order: " + file);
+            }
+            this.dimension = buffer.getInt(12);
+            this.count = buffer.getInt(16);
+            this.vectorsOffset = HEADER_BYTES + count * Long.BYTES;
+            this.textOffsetsOffset = vectorsOffset + count * dimension * Float.BYTES;
+        }
+
+        static Segment map(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.order(ByteOrder.nativeOrder());
+                return new Segment(file, buffer);
+            }
+        }
+
+        long bytes() {
+            return buffer.capacity();
+        }
+
+        int id(int row) {
+            return (int) buffer.getLong(HEADER_BYTES + row * Long.BYTES);
+        }
+
+        int firstId() {
+            return count == 0 ? Integer.MAX_VALUE : id(0);
+        }
+
+        /**
+         * Binary search over the ascending ids, -1 if absent
+         */
+        int rowOf(int id) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int value = id(mid);
+                if (value < id) {
+                    low = mid + 1;
+                } else if (value > id) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        float[] vector(int row) {
+            float[] vector = new float[dimension];
+            buffer.asFloatBuffer().get(vectorsOffset / Float.BYTES + row * dimension, vector);
+            return vector;
+        }
+
+        String text(int row) {
+            int start = (int) buffer.getLong(textOffsetsOffset + row * Long.BYTES);
+            int end = (int) buffer.getLong(textOffsetsOffset + (row + 1) * Long.BYTES);
+            byte[] bytes = new byte[end - start];
+            buffer.get(start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int deletedRows(BitSet deleted) {
+            int rows = 0;
+            if (count > 0) {
+                for (int id = deleted.nextSetBit(firstId()); id >= 0; id = deleted.nextSetBit(id + 1)) {
+                    if (rowOf(id) >= 0) {
+                        rows++;
+                    }
+                }
+            }
+            return rows;
+        }
+
+        TopK scan(float[] query, int k, BitSet deleted) {
+            TopK best = new TopK(k);
+            int stride = dimension * Float.BYTES;
+            boolean anyDeleted = !deleted.isEmpty();
+            for (int row = 0; row < count; row++) {
+                int id = id(row);
+                if (anyDeleted && deleted.get(id)) {
+                    continue;
+                }
+                best.offer(DotProduct.dot(buffer, vectorsOffset + row * stride, query), id);
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Builds a segment in memory and writes it to a temp file that is then renamed into place
+     */
+    private static final class SegmentWriter {
+        private final int dimension;
+        private final ByteBuffer ids;
+        private final ByteBuffer vectors;
+        private final List<byte[]> texts;
+
+        SegmentWriter(int dimension, int count) {
+            this.dimension = dimension;
+            this.ids = ByteBuffer.allocate(count * Long.BYTES).order(ByteOrder.nativeOrder());
+            this.vectors = ByteBuffer.allocate(count * dimension * Float.BYTES).order(ByteOrder.nativeOrder());
+            this.texts = new ArrayList<>(count);
+        }
+
+        void add(int id, float[] vector, String text) {
+            ids.putLong(id);
+            vectors.asFloatBuffer().put(vector);
+            vectors.position(vectors.position() + dimension * Float.BYTES);
+            texts.add(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void write(Path file) throws IOException {
+            int count = texts.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+            header.putInt(MAGIC).putInt(VERSION)
+                    .putInt(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1)
+                    .putInt(dimension).putInt(count);
+
+            ByteBuffer offsets = ByteBuffer.allocate((count + 1) * Long.BYTES).order(ByteOrder.nativeOrder());
+            long offset = HEADER_BYTES + ids.capacity() + vectors.capacity() + offsets.capacity();
+            for (byte[] text : texts) {
+                offsets.putLong(offset);
+                offset += text.length;
+            }
+            offsets.putLong(offset);
+            if (offset > MAX_SEGMENT_BYTES) {
+                throw new IOException("Segment would exceed " + MAX_SEGMENT_BYTES + " bytes");
+            }
+
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                header.clear();
+                ids.flip();
+                vectors.clear();
+                offsets.flip();
+                List<ByteBuffer> parts = new ArrayList<>(List.of(header, ids, vectors, offsets));
+                for (byte[] text : texts) {
+                    parts.add(ByteBuffer.wrap(text));
+                }
+                for (ByteBuffer part : parts) {
+                    while (part.hasRemaining()) {
+                        channel.write(part);
+                    }
+                }
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
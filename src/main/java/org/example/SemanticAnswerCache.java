@@ -0,0 +1,199 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recent answers, reused for questions whose embedding is close to an answered one.
+ *
+ * A stored answer is returned only if three things hold. The cosine similarity to the
+ * stored question must reach the threshold. Retrieval must have found the same chunks,
+ * so the answer was generated from the same context. The collection must not have
+ * changed since the answer was stored, as shown by {@link CollectionVersion}. Entries
+ * expire after the TTL, and the least recently used entry goes when the cache is full.
+ * A lookup scans all entries, which takes microseconds at this size against seconds of
+ * generation.
+ */
+public class SemanticAnswerCache {
+
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final double DEFAULT_THRESHOLD = 0.95;
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+
+    /**
+     * A reusable answer and how close its question was
+     */
+    public record Match(String question, String answer, List<String> context, double similarity) {
+    }
+
+    private record Entry(String question, float[] vector, Set<Long> contextIds, String answer,
+                         List<String> context, long storedAt) {
+    }
+
+    private final int capacity;
+    private final double threshold;
+    private final long ttlNanos;
+    private final CollectionVersion version;
+
+    // Guarded by entries
+    private final LinkedHashMap<String, Entry> entries;
+    private long seenVersion;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SemanticAnswerCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_THRESHOLD, DEFAULT_TTL, new CollectionVersion());
+    }
+
+    /**
+     * @param threshold minimum cosine similarity between the questions' embeddings
+     */
+    public SemanticAnswerCache(int capacity, double threshold, Duration ttl, CollectionVersion version) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.threshold = threshold;
+        this.ttlNanos = ttl.toNanos();
+        this.version = version;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.seenVersion = version.current();
+    }
+
+    /**
+     * The closest stored answer generated from the same chunks, or null
+     */
+    public Match get(float[] queryVector, List<Long> contextIds) {
+        if (!isCurrent()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        float[] query = HnswVectorStore.normalize(queryVector);
+        Set<Long> ids = new HashSet<>(contextIds);
+        long now = System.nanoTime();
+
+        synchronized (entries) {
+            Entry best = null;
+            double bestSimilarity = threshold;
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (now - entry.storedAt() > ttlNanos) {
+                    it.remove();
+                    continue;
+                }
+                if (entry.vector().length != query.length || !entry.contextIds().equals(ids)) {
+                    continue;
+                }
+                double similarity = dot(query, entry.vector());
+                if (similarity >= bestSimilarity) {
+                    best = entry;
+                    bestSimilarity = similarity;
+                }
+            }
+
+            if (best == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            entries.get(ArabicTextNormalizer.normalize(best.question())); // Mark as recently used
+            hits.incrementAndGet();
+            return new Match(best.question(), best.answer(), best.context(), bestSimilarity);
+        }
+    }
+
+    /**
+     * The collection version to pass to {@link #put}, read before retrieval
+     */
+    public long currentVersion() {
+        return version.current();
+    }
+
+    /**
+     * @param builtAtVersion {@link #currentVersion()} from before retrieval; the answer
+     *                       is dropped if the collection has changed since
+     */
+    public void put(String question, float[] queryVector, List<Long> contextIds, String answer,
+                    List<String> context, long builtAtVersion) {
+        long current = version.current();
+        if (builtAtVersion < 0 || builtAtVersion != current) {
+            return;
+        }
+        Entry entry = new Entry(question, HnswVectorStore.normalize(queryVector), new HashSet<>(contextIds),
+                answer, List.copyOf(context), System.nanoTime());
+
+        synchronized (entries) {
+            if (current != seenVersion) {
+                return;
+            }
+            entries.put(ArabicTextNormalizer.normalize(question), entry);
+            if (entries.size() > capacity) {
+                Iterator<String> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Drop everything once the collection has changed; an unreadable version disables the cache
+     */
+    private boolean isCurrent() {
+        long current = version.current();
+        synchronized (entries) {
+            if (current != seenVersion) {
+                if (!entries.isEmpty()) {
+                    System.out.println("♻️ Collection changed, dropping " + entries.size() + " cached answers");
+                }
+                entries.clear();
+                seenVersion = current;
+            }
+        }
+        return current >= 0;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses (%.1f%% hit rate), %d cached",
+                getHits(), getMisses(), getHitRate() * 100, size());
+    }
+}
@@ -0,0 +1,83 @@
+package org.example;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Dot products with the JDK Vector API (jdk.incubator.vector).
+ *
+ * Only referenced through {@link DotProduct}, which falls back to scalar code when the
+ * JVM was started without {@code --add-modules jdk.incubator.vector}.
+ */
+final class SimdDotProduct {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final ByteOrder ORDER = ByteOrder.nativeOrder();
+    // Bytes with one lane per float lane, widened to floats in registers
+    private static final VectorSpecies<Byte> BYTE_SPECIES =
+            VectorSpecies.of(byte.class, VectorShape.forBitSize(SPECIES.vectorBitSize() / Float.BYTES));
+
+    private SimdDotProduct() {
+    }
+
+    /**
+     * Dot product of the query with the vector stored at byteOffset in a native-order buffer
+     */
+    static float dot(ByteBuffer vectors, int byteOffset, float[] query) {
+        int step = SPECIES.length();
+        int bound = SPECIES.loopBound(query.length);
+
+        // Two accumulators hide the latency of dependent fused multiply-adds
+        FloatVector sum0 = FloatVector.zero(SPECIES);
+        FloatVector sum1 = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (; i + step < bound; i += 2 * step) {
+            sum0 = FloatVector.fromByteBuffer(SPECIES, vectors, byteOffset + i * Float.BYTES, ORDER)
+                    .fma(FloatVector.fromArray(SPECIES, query, i), sum0);
+            sum1 = FloatVector.fromByteBuffer(SPECIES, vectors, byteOffset + (i + step) * Float.BYTES, ORDER)
+                    .fma(FloatVector.fromArray(SPECIES, query, i + step), sum1);
+        }
+        for (; i < bound; i += step) {
+            sum0 = FloatVector.fromByteBuffer(SPECIES, vectors, byteOffset + i * Float.BYTES, ORDER)
+                    .fma(FloatVector.fromArray(SPECIES, query, i), sum0);
+        }
+
+        float sum = sum0.add(sum1).reduceLanes(VectorOperators.ADD);
+        for (; i < query.length; i++) {
+            sum += vectors.getFloat(byteOffset + i * Float.BYTES) * query[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Weighted sum of signed int8 codes stored at byteOffset
+     */
+    static float dotInt8(ByteBuffer codes, int byteOffset, float[] weights) {
+        int step = SPECIES.length();
+        int bound = SPECIES.loopBound(weights.length);
+
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (; i < bound; i += step) {
+            FloatVector widened = (FloatVector) ByteVector.fromByteBuffer(BYTE_SPECIES, codes, byteOffset + i, ORDER)
+                    .castShape(SPECIES, 0);
+            sum = widened.fma(FloatVector.fromArray(SPECIES, weights, i), sum);
+        }
+
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < weights.length; i++) {
+            result += codes.get(byteOffset + i) * weights[i];
+        }
+        return result;
+    }
+
+    static int lanes() {
+        return SPECIES.length();
+    }
+}
@@ -0,0 +1,26 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Extracts plain text from one kind of file for chunking.
+ *
+ * Built-in extractors handle .txt, .md and .html. Additional formats can be
+ * plugged in by implementing this interface and listing the class in
+ * META-INF/services/org.example.TextExtractor.
+ */
+public interface TextExtractor {
+
+    /**
+     * File extensions handled by this extractor, lower case and without the dot
+     */
+    Set<String> extensions();
+
+    /**
+     * Open the plain text of a file. Paragraphs should be separated by blank lines.
+     */
+    Reader open(Path file) throws IOException;
+}
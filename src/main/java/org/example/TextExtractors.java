@@ -0,0 +1,49 @@
+package org.example;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Registry of {@link TextExtractor}s by file extension.
+ * Built-in extractors are registered first; ones found through ServiceLoader override them.
+ */
+public class TextExtractors {
+
+    private final Map<String, TextExtractor> byExtension = new LinkedHashMap<>();
+
+    public TextExtractors() {
+        register(new PlainTextExtractor());
+        register(new MarkdownExtractor());
+        register(new HtmlExtractor());
+
+        for (TextExtractor extractor : ServiceLoader.load(TextExtractor.class)) {
+            register(extractor);
+        }
+    }
+
+    public void register(TextExtractor extractor) {
+        for (String extension : extractor.extensions()) {
+            byExtension.put(extension.toLowerCase(Locale.ROOT), extractor);
+        }
+    }
+
+    /**
+     * @return the extractor for this file, or null if the format is not supported
+     */
+    public TextExtractor forFile(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        return byExtension.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    public Collection<String> supportedExtensions() {
+        return byExtension.keySet();
+    }
+}
@@ -0,0 +1,72 @@
+package org.example;
+
+/**
+ * Estimates how many model tokens a text takes, without the model's tokenizer.
+ *
+ * The base estimate counts Arabic letters and other non-space characters at different
+ * rates, since BPE vocabularies trained mostly on English split Arabic words into more
+ * pieces. A correction factor learns from the prompt_eval_count Ollama reports for each
+ * prompt, so the estimate follows the model actually in use.
+ */
+public class TokenEstimator {
+
+    // Characters per token before calibration
+    private static final double ARABIC_CHARS_PER_TOKEN = 2.5;
+    private static final double OTHER_CHARS_PER_TOKEN = 4.0;
+    // Weight of each new observation in the correction factor
+    private static final double LEARNING_RATE = 0.2;
+
+    private volatile double correction = 1.0;
+
+    public int estimate(CharSequence text) {
+        return (int) Math.ceil(rawEstimate(text) * correction);
+    }
+
+    /**
+     * Learn from the token count the model reported for a prompt. Ollama reports fewer
+     * tokens when it reuses a cached prompt prefix, so counts far off the estimate are ignored.
+     */
+    public void observe(CharSequence prompt, int actualTokens) {
+        double raw = rawEstimate(prompt);
+        if (raw < 1 || actualTokens <= 0) {
+            return;
+        }
+        double ratio = actualTokens / raw;
+        if (ratio < correction / 2 || ratio > correction * 2) {
+            return;
+        }
+        synchronized (this) {
+            correction += LEARNING_RATE * (ratio - correction);
+        }
+    }
+
+    public double getCorrection() {
+        return correction;
+    }
+
+    private static double rawEstimate(CharSequence text) {
+        int arabic = 0;
+        int other = 0;
+        int words = 0;
+        boolean inWord = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                inWord = false;
+                continue;
+            }
+            if (!inWord) {
+                words++;
+                inWord = true;
+            }
+            if (c >= '؀' && c <= 'ۿ') {
+                arabic++;
+            } else {
+                other++;
+            }
+        }
+        // At least one token per word: short words never share a token with the next one
+        return Math.max(words, arabic / ARABIC_CHARS_PER_TOKEN + other / OTHER_CHARS_PER_TOKEN);
+    }
+}
@@ -0,0 +1,87 @@
+package org.example;
+
+import java.util.List;
+
+/**
+ * Bounded min-heap of (score, id) keeping the k highest scores
+ */
+final class TopK {
+    private final float[] scores;
+    private final int[] ids;
+    private int size;
+
+    TopK(int k) {
+        scores = new float[k];
+        ids = new int[k];
+    }
+
+    void offer(float score, int id) {
+        if (size < scores.length) {
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] <= score) {
+                    break;
+                }
+                scores[i] = scores[parent];
+                ids[i] = ids[parent];
+                i = parent;
+            }
+            scores[i] = score;
+            ids[i] = id;
+        } else if (score > scores[0]) {
+            siftDown(score, id);
+        }
+    }
+
+    private void siftDown(float score, int id) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && scores[child + 1] < scores[child]) {
+                child++;
+            }
+            if (score <= scores[child]) {
+                break;
+            }
+            scores[i] = scores[child];
+            ids[i] = ids[child];
+            i = child;
+        }
+        scores[i] = score;
+        ids[i] = id;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int id(int index) {
+        return ids[index];
+    }
+
+    TopK merge(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.scores[i], other.ids[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Empty the heap into hits, highest score first
+     */
+    List<VectorStore.SearchHit> drain(List<String> texts) {
+        VectorStore.SearchHit[] hits = new VectorStore.SearchHit[size];
+        for (int i = size - 1; i >= 0; i--) {
+            hits[i] = new VectorStore.SearchHit(ids[0], texts.get(ids[0]), scores[0]);
+            size--;
+            if (size > 0) {
+                siftDown(scores[size], ids[size]);
+            }
+        }
+        return List.of(hits);
+    }
+}
@@ -0,0 +1,111 @@
+package org.example;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Allocation benchmark for the embedding hand-off from Embedder to Milvus.
+ *
+ * Follows every chunk from the model's float[] through the insert batch to the point
+ * where the SDK reads the vector element by element, and reports bytes allocated per
+ * chunk for the previous boxed {@code List<Float>} copy and for {@link EmbeddingVector}.
+ * The model output is pre-generated so only the hand-off itself is measured.
+ *
+ * Usage: VectorAllocationBenchmark [chunks] [dimension]
+ */
+public class VectorAllocationBenchmark {
+
+    private static final int BATCH_SIZE = 10;
+    private static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int chunks = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int dimension = args.length > 1 ? Integer.parseInt(args[1]) : 768;
+
+        Random random = new Random(42);
+        float[][] modelOutput = new float[BATCH_SIZE][dimension];
+        for (float[] vector : modelOutput) {
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = random.nextFloat() * 2 - 1;
+            }
+        }
+
+        System.out.printf("📊 Vector allocation benchmark: %d chunks, %d dimensions%n", chunks, dimension);
+
+        Result boxed = measure("boxed List<Float>", VectorAllocationBenchmark::boxedCopy, modelOutput, chunks);
+        Result primitive = measure("EmbeddingVector", EmbeddingVector::of, modelOutput, chunks);
+
+        System.out.println("━".repeat(60));
+        System.out.printf("%-20s %18s %14s%n", "representation", "bytes / chunk", "chunks / s");
+        boxed.print();
+        primitive.print();
+        System.out.println("━".repeat(60));
+        System.out.printf("Allocation: %.1fx less per chunk%n",
+                boxed.bytesPerChunk / Math.max(1.0, primitive.bytesPerChunk));
+    }
+
+    /**
+     * The conversion Embedder.embedTexts used to do for every vector
+     */
+    private static List<Float> boxedCopy(float[] vectorArray) {
+        List<Float> result = new ArrayList<>();
+        for (float value : vectorArray) {
+            result.add(value);
+        }
+        return result;
+    }
+
+    private static Result measure(String name, Function<float[], List<Float>> wrap,
+                                  float[][] modelOutput, int chunks) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            ingest(wrap, modelOutput, chunks);
+        }
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        double checksum = ingest(wrap, modelOutput, chunks);
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        if (Double.isNaN(checksum)) {
+            System.out.println("unexpected checksum");
+        }
+        return new Result(name, (double) allocated / chunks, chunks / (elapsed / 1e9));
+    }
+
+    /**
+     * Build insert batches and read them the way the SDK serializes a float vector field
+     */
+    private static double ingest(Function<float[], List<Float>> wrap, float[][] modelOutput, int chunks) {
+        double checksum = 0;
+        for (int done = 0; done < chunks; done += BATCH_SIZE) {
+            List<List<Float>> batch = new ArrayList<>(BATCH_SIZE);
+            for (float[] vector : modelOutput) {
+                batch.add(wrap.apply(vector));
+            }
+            for (List<Float> vector : batch) {
+                for (Float value : vector) {
+                    checksum += value;
+                }
+            }
+        }
+        return checksum;
+    }
+
+    private static long allocatedBytes() {
+        var threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean hotspot) {
+            return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private record Result(String name, double bytesPerChunk, double chunksPerSecond) {
+        void print() {
+            System.out.printf("%-20s %18.0f %14.0f%n", name, bytesPerChunk, chunksPerSecond);
+        }
+    }
+}
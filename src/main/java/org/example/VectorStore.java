@@ -0,0 +1,59 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Storage and similarity search for document embeddings.
+ *
+ * Implementations rank by cosine similarity and report it as the score, so results are
+ * interchangeable with a Milvus COSINE search. Failures are logged and reported through
+ * the return value (null ids, {@link #SEARCH_FAILED}, false), like the rest of the pipeline.
+ */
+public interface VectorStore extends AutoCloseable {
+
+    /**
+     * Returned by a search that failed. It is empty, so callers that only read hits need
+     * no check; compare by identity to tell a failure from "no matches".
+     */
+    List<SearchHit> SEARCH_FAILED = Collections.unmodifiableList(new ArrayList<>());
+
+    /**
+     * Store documents with their embeddings
+     * @return the ids assigned to the documents, in order, or null on failure
+     */
+    List<Long> add(List<String> texts, List<EmbeddingVector> vectors);
+
+    /**
+     * @return up to topK hits, most similar first, or {@link #SEARCH_FAILED}
+     */
+    List<SearchHit> search(float[] query, int topK);
+
+    /**
+     * Search for several queries at once; stores that can share work across queries
+     * (one RPC, one pass over the data) override this.
+     * @return one hit list per query, in query order ({@link #SEARCH_FAILED} where it failed)
+     */
+    default List<List<SearchHit>> searchBatch(List<float[]> queries, int topK) {
+        List<List<SearchHit>> results = new ArrayList<>(queries.size());
+        for (float[] query : queries) {
+            results.add(search(query, topK));
+        }
+        return results;
+    }
+
+    /**
+     * @return true if the documents are gone (or never existed)
+     */
+    boolean delete(List<Long> ids);
+
+    @Override
+    void close();
+
+    /**
+     * A matched document with its cosine similarity to the query
+     */
+    record SearchHit(long id, String text, float score) {
+    }
+}